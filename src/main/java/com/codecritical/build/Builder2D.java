@@ -9,7 +9,9 @@ import com.codecritical.lib.config.ConfigReader;
 import com.codecritical.lib.mapping.*;
 import com.codecritical.lib.model.BuildPrintSurface;
 import com.codecritical.lib.mapping.FastUnion;
+import com.codecritical.lib.model.HeightFieldMesher;
 import com.codecritical.lib.model.IBuildPrint;
+import com.codecritical.lib.model.IndexedMesh;
 import com.codecritical.parts.ExportStl;
 import com.codecritical.parts.Hemisphere;
 import com.google.common.collect.ImmutableList;
@@ -23,6 +25,7 @@ import eu.printingin3d.javascad.models.Cylinder;
 import eu.printingin3d.javascad.tranform.TransformationFactory;
 import eu.printingin3d.javascad.vrl.CSG;
 
+import java.nio.file.Path;
 import java.util.Comparator;
 import java.util.Optional;
 import java.util.OptionalDouble;
@@ -36,6 +39,8 @@ public class Builder2D {
     private Optional<IMapArray> plateauTextureMap = Optional.empty();
     private PlateauCollections plateauCollection;
     private ImmutableList.Builder<CSG> csg = ImmutableList.builder();
+    private Optional<IndexedMesh> mesh = Optional.empty();
+    private boolean isPrintWritten = false;
 
     public static Builder2D create(ConfigReader config, IMapArray map) {
         return new Builder2D(config, map);
@@ -44,7 +49,11 @@ public class Builder2D {
     private Builder2D(ConfigReader config, IMapArray map) {
         this.config = config;
         this.map = map;
-        logger.info("Map build, points=" + map.stream().count());
+        logger.info("Map build, points=" + map.size());
+    }
+
+    public IMapArray getMap() {
+        return map;
     }
 
     public Builder2D normalise() {
@@ -103,9 +112,16 @@ public class Builder2D {
         return this;
     }
 
-    public Builder2D buildPlateau() {
+    /** Plateaus and their texture, with the plateaus from the cache where it has them. */
+    public Builder2D buildPlateau(StageCache cache) {
 
-        plateauCollection = getPlateauCollection(map);
+        if (cache.isEnabled()) {
+            IMapArray ids = cache.map(StageCache.Stage.PLATEAUS,
+                    () -> getPlateauCollection(map).asIdMap(map.getISize(), map.getJSize()));
+            plateauCollection = PlateauCollections.fromIdMap(ids);
+        } else {
+            plateauCollection = getPlateauCollection(map);
+        }
 
         plateauTextureMap = new PlateauTexture(config, map, plateauCollection)
                 .getTexture();
@@ -129,6 +145,11 @@ public class Builder2D {
     }
 
     public Builder2D mapToCsg() {
+        if (useDirectMesh()) {
+            mesh = Optional.of(new HeightFieldMesher(config).mesh(map));
+            return this;
+        }
+
         IBuildPrint buildPrint = new BuildPrintSurface(config);
         ImmutableList<CSG> mapPrint = buildPrint.getPrint(map);
         logger.info("Print cells defined, count=" + mapPrint.size());
@@ -195,11 +216,10 @@ public class Builder2D {
     private PlateauCollections getPlateauCollection(IMapArray map) {
         double minPlateauSize = config.asDouble(Config.Fractal.Processing.MIN_PLATEAU_COEFFICIENT);
 
-        PlateauCollections plateauSet = new PlateauCollections(map);
+        PlateauCollections plateauSet = new PlateauCollections(map, minPlateauSize);
 
         plateauSet = new PlateauCollections(
                 plateauSet.stream()
-                        .filter(p -> p.sizeCoefficient() >= minPlateauSize)
                         .sorted(Comparator.comparingInt(Plateau::size).reversed())
         );
 
@@ -248,30 +268,46 @@ public class Builder2D {
         return this;
     }
 
+    private boolean useDirectMesh() {
+        if (!config.asBoolean(Config.StlPrint.DIRECT_MESH)) {
+            return false;
+        }
+        var baseShape = (BuildPrintSurface.BaseShape) config.asEnum(BuildPrintSurface.BaseShape.class, Config.StlPrint.SHAPE);
+        if (baseShape != BuildPrintSurface.BaseShape.SQUARE || !HeightFieldMesher.canMesh(map)) {
+            logger.warning("Direct mesh needs a SQUARE print with no missing cells, using CSG.");
+            return false;
+        }
+        return true;
+    }
+
     public Builder2D addBoundary() {
+        getBoundary(config).ifPresent(csg::add);
+        return this;
+    }
+
+    /** The border round the print, where it has one. */
+    static Optional<CSG> getBoundary(ConfigReader config) {
 
         OptionalDouble borderHeight = config.asOptionalDouble(Config.StlPrint.BORDER_HEIGHT);
         OptionalDouble borderWidth = config.asOptionalDouble(Config.StlPrint.BORDER_WIDTH);
 
         if (borderHeight.isEmpty() || borderWidth.isEmpty()) {
             logger.info("No boundary");
-            return this;
+            return Optional.empty();
         }
 
         var baseShape = (BuildPrintSurface.BaseShape) config.asEnum(BuildPrintSurface.BaseShape.class, Config.StlPrint.SHAPE);
         logger.info(String.format("Border width=%.1f height=%.1f shape=%s",
                 borderWidth.getAsDouble(), borderHeight.getAsDouble(), baseShape));
 
-        switch (baseShape) {
-            case SQUARE -> addBoundarySquare(borderHeight.getAsDouble(), borderWidth.getAsDouble());
-            case CIRCLE -> addBoundaryCircle(borderHeight.getAsDouble(), borderWidth.getAsDouble());
+        return switch (baseShape) {
+            case SQUARE -> Optional.of(getBoundarySquare(config, borderHeight.getAsDouble(), borderWidth.getAsDouble()));
+            case CIRCLE -> Optional.of(getBoundaryCircle(config, borderHeight.getAsDouble(), borderWidth.getAsDouble()));
             default -> throw new RuntimeException("Unhandled Option: " + baseShape);
-        }
-
-        return this;
+        };
     }
 
-    private void addBoundaryCircle(double borderHeight, double borderWidth) {
+    private static CSG getBoundaryCircle(ConfigReader config, double borderHeight, double borderWidth) {
         double xSize = config.asDouble(Config.StlPrint.X_SIZE) / 2;
         double ySize = config.asDouble(Config.StlPrint.Y_SIZE) / 2;
         var radiusInner = Radius.fromRadius(Math.min(xSize, ySize) + 0.1);
@@ -283,10 +319,10 @@ public class Builder2D {
         var border = cylinderOuter.difference(cylinderInner);
         border = border.transformed(TransformationFactory.getTranlationMatrix(new Coords3d(0, 0, borderHeight / 2)));
 
-        csg.add(border);
+        return border;
     }
 
-    private void addBoundarySquare(double borderHeight, double borderWidth) {
+    private static CSG getBoundarySquare(ConfigReader config, double borderHeight, double borderWidth) {
         double xSize = config.asDouble(Config.StlPrint.X_SIZE);
         double ySize = config.asDouble(Config.StlPrint.Y_SIZE);
 
@@ -307,9 +343,7 @@ public class Builder2D {
         leftBorder = leftBorder.transformed(TransformationFactory.getTranlationMatrix(new Coords3d(xSize / 2.0 + halfBorderWidth, 0, halfBorderHeight)));
         rightBorder = rightBorder.transformed(TransformationFactory.getTranlationMatrix(new Coords3d(-xSize / 2.0 - halfBorderWidth, 0, halfBorderHeight)));
 
-        var csgBorder = topBorder.union(leftBorder).union(rightBorder).union(bottomBorder);
-
-        csg.add(csgBorder);
+        return topBorder.union(leftBorder).union(rightBorder).union(bottomBorder);
     }
 
     /**
@@ -322,22 +356,48 @@ public class Builder2D {
 
     private static final String STL = ".stl";
 
-    @CanIgnoreReturnValue
-    public Builder2D savePrint() {
-
+    public static String getPrintFileName(ConfigReader config) {
         String fileName = config.asString(Config.OUTPUT_FILENAME);
 
         if (!fileName.toLowerCase().endsWith(STL)) {
             fileName = fileName + STL;
         }
+        return fileName;
+    }
+
+    /** Where ExportStl writes the print. */
+    public static Path getPrintPath(ConfigReader config) {
+        return ExportStl.getPath(getPrintFileName(config));
+    }
+
+    private int getUnionParallelism() {
+        return Parallel.getThreadCount(config, Config.StlPrint.UNION_PARALLELISM);
+    }
+
+    @CanIgnoreReturnValue
+    public Builder2D savePrint() {
+
+        String fileName = getPrintFileName(config);
+
+        if (mesh.isPresent()) {
+            // Other parts, such as the border, are written as separate shells.
+            isPrintWritten = ExportStl.export(fileName, mesh.get(), csg.build());
+            logger.info("STL file written to: " + fileName);
+            return this;
+        }
 
-        var csgUnion = FastUnion.fastUnion(csg.build());
+        var csgUnion = FastUnion.fastUnion(csg.build(), getUnionParallelism());
         logger.info("Union complete.");
 
-        ExportStl.export(fileName, csgUnion);
+        isPrintWritten = ExportStl.export(fileName, csgUnion);
         logger.info("STL file written to: " + fileName);
 
         return this;
     }
 
+    /** Whether savePrint() wrote the print, where a failed write leaves any earlier one in place. */
+    public boolean isPrintWritten() {
+        return isPrintWritten;
+    }
+
 }
@@ -8,8 +8,12 @@ import com.codecritical.build.juliasets3d.MandelbrotStandard3dMap;
 import com.codecritical.lib.config.Config;
 import com.codecritical.lib.config.ConfigReader;
 import com.codecritical.lib.mapping.FastUnion;
+import com.codecritical.lib.mapping.Parallel;
+import com.codecritical.lib.model.GreedyVoxelMesher;
+import com.codecritical.lib.model.IndexedMesh;
 import com.codecritical.lib.model.JuliaSet3D;
 import com.codecritical.lib.model.MapPoint3D;
+import com.codecritical.lib.model.MarchingTetrahedraMesher;
 import com.codecritical.parts.ExportStl;
 import com.google.common.collect.ImmutableList;
 import com.google.errorprone.annotations.CanIgnoreReturnValue;
@@ -21,6 +25,7 @@ import eu.printingin3d.javascad.tranform.TransformationFactory;
 import eu.printingin3d.javascad.vrl.CSG;
 
 import javax.annotation.ParametersAreNonnullByDefault;
+import java.util.Optional;
 import java.util.OptionalDouble;
 import java.util.logging.Logger;
 
@@ -29,12 +34,17 @@ public class Builder3D {
     static final Logger logger = Logger.getLogger("");
     private final ConfigReader config;
     private ImmutableList.Builder<CSG> csg = ImmutableList.builder();
+    private Optional<IndexedMesh> mesh = Optional.empty();
     private final JuliaSet3D map;
     private final double xRange, yRange, zRange;
     private final double xMin, xMax, yMin, yMax, zMin, zMax;
     private final double blockSize;
     private final Dims3d blockSize3D;
 
+    public enum SurfaceMode {
+        CSG, VOXEL_MESH, ISO_MESH
+    }
+
     public static Builder3D create(ConfigReader config, JuliaSet3D map) {
         return new Builder3D(config, map);
     }
@@ -59,6 +69,24 @@ public class Builder3D {
     }
 
     public Builder3D buildModel() {
+        var surfaceMode = getSurfaceMode();
+        if (surfaceMode == SurfaceMode.ISO_MESH) {
+            mesh = Optional.of(buildIsoMesh());
+            return this;
+        }
+
+        if (surfaceMode == SurfaceMode.VOXEL_MESH) {
+            double baseThickness = config.asOptionalDouble(Config.StlPrint.BASE_THICKNESS).orElse(0);
+            var mesher = new GreedyVoxelMesher(
+                    xMin, yMin, zMin,
+                    xRange / map.getVoxels().getISize(),
+                    yRange / map.getVoxels().getJSize(),
+                    zRange / map.getVoxels().getKSize(),
+                    -baseThickness);
+            mesh = Optional.of(mesher.mesh(map.getVoxels()));
+            return this;
+        }
+
         map.stream()
                 .map(this::translateCoordinateSet)
                 .map(this::mapPointToPillar)
@@ -67,6 +95,36 @@ public class Builder3D {
         return this;
     }
 
+    private IndexedMesh buildIsoMesh() {
+        double baseThickness = config.asOptionalDouble(Config.StlPrint.BASE_THICKNESS).orElse(0);
+        double sampleSize = config.asOptionalDouble(Config.StlPrint.Settings3D.SAMPLE_SIZE)
+                .orElse(config.asDouble(Config.StlPrint.BLOCK_SIZE_3D));
+
+        // Samples on both edges, so one more than the number of steps.
+        int iSamples = Math.max(2, (int) Math.round(xRange / sampleSize) + 1);
+        int jSamples = Math.max(2, (int) Math.round(yRange / sampleSize) + 1);
+        int kSamples = Math.max(2, (int) Math.round(zRange / sampleSize) + 1);
+        var field = map.sampleDensity(iSamples, jSamples, kSamples);
+
+        var mesher = new MarchingTetrahedraMesher(
+                xMin, yMin, zMin,
+                xRange / (iSamples - 1),
+                yRange / (jSamples - 1),
+                zRange / (kSamples - 1),
+                -baseThickness,
+                config.asDouble(Config.StlPrint.Settings3D.ISO_LEVEL));
+        return mesher.mesh(field);
+    }
+
+    private SurfaceMode getSurfaceMode() {
+        var surfaceMode = (SurfaceMode) config.asEnum(SurfaceMode.class, Config.StlPrint.Settings3D.SURFACE_MODE);
+        if (surfaceMode != SurfaceMode.CSG && hasTilt()) {
+            logger.warning("Tilt needs CSG, using " + SurfaceMode.CSG + " not " + surfaceMode);
+            return SurfaceMode.CSG;
+        }
+        return surfaceMode;
+    }
+
     private CSG mapPointToPillar(MapPoint3D point) {
         var cube = new Cube(blockSize3D).toCSG();
         if (point.iLength != 1) {
@@ -100,6 +158,10 @@ public class Builder3D {
 
     private static final String STL = ".stl";
 
+    private int getUnionParallelism() {
+        return Parallel.getThreadCount(config, Config.StlPrint.UNION_PARALLELISM);
+    }
+
     @CanIgnoreReturnValue
     public Builder3D savePrint() {
 
@@ -109,7 +171,14 @@ public class Builder3D {
             fileName = fileName + STL;
         }
 
-        var csgUnion = FastUnion.fastUnion(csg.build());
+        if (mesh.isPresent()) {
+            // The base and border are written as separate shells.
+            ExportStl.export(fileName, mesh.get(), csg.build());
+            logger.info("STL file written to: " + fileName);
+            return this;
+        }
+
+        var csgUnion = FastUnion.fastUnion(csg.build(), getUnionParallelism());
         logger.info("Union complete.");
 
         ExportStl.export(fileName, csgUnion);
@@ -154,7 +223,7 @@ public class Builder3D {
                     .map(this::setKZero)
                     .map(this::mapPointToPillar)
                     .toList();
-            var stlShadow = FastUnion.fastUnion(stlShadowPillars);
+            var stlShadow = FastUnion.fastUnion(stlShadowPillars, getUnionParallelism());
             stlShadow = stlShadow.transformed(TransformationFactory.getScaleMatrix(1, 1, shadowDepth / blockSize));
             stlShadow = stlShadow.transformed(TransformationFactory.getTranlationMatrix(new Coords3d(0, 0, -shadowDepth / 2.0)));
             //  csg.add(stlShadow);
@@ -211,13 +280,16 @@ public class Builder3D {
         return this;
     }
 
+    private boolean hasTilt() {
+        return config.isPresent(Config.StlPrint.Settings3D.TILT_DEGREES_IN_X)
+                && config.isPresent(Config.StlPrint.Settings3D.TILT_DEGREES_IN_Y)
+                && config.isPresent(Config.StlPrint.Settings3D.TILT_DEGREES_IN_Z)
+                && config.isPresent(Config.StlPrint.Settings3D.MODEL_MOVE);
+    }
+
     private CSG addTilt(CSG model) {
 
-        if (!config.isPresent(Config.StlPrint.Settings3D.TILT_DEGREES_IN_X)
-                || !config.isPresent(Config.StlPrint.Settings3D.TILT_DEGREES_IN_Y)
-                || !config.isPresent(Config.StlPrint.Settings3D.TILT_DEGREES_IN_Z)
-                || !config.isPresent(Config.StlPrint.Settings3D.MODEL_MOVE)
-        ) {
+        if (!hasTilt()) {
             return model;
         }
 
@@ -235,7 +307,12 @@ public class Builder3D {
 
     public Builder3D transformToCompleteModel() {
 
-        CSG csgModel = FastUnion.fastUnion(csg.build());
+        if (mesh.isPresent()) {
+            // Already complete, nothing below the base.
+            return this;
+        }
+
+        CSG csgModel = FastUnion.fastUnion(csg.build(), getUnionParallelism());
 
         csgModel = addTilt(csgModel);
 
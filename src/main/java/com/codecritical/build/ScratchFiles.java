@@ -0,0 +1,70 @@
+package com.codecritical.build;
+
+/*
+ * Chisel3D, (C) 2024 Ben Clewett & Code Critical Ltd
+ */
+
+import com.codecritical.lib.config.Config;
+import com.codecritical.lib.config.ConfigReader;
+import com.codecritical.parts.ExportStl;
+import com.google.common.base.MoreObjects;
+
+import javax.annotation.ParametersAreNonnullByDefault;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Logger;
+
+/**
+ * Full size maps of tiled prints, in Config.SCRATCH_DIRECTORY, or beside the print where that is empty.  They are
+ * kept out of the temporary directory, which may be held in memory, and are all deleted on close.
+ */
+@ParametersAreNonnullByDefault
+public class ScratchFiles implements AutoCloseable {
+    static final Logger logger = Logger.getLogger("");
+
+    private final Path directory;
+    private final List<Path> files = new ArrayList<>();
+
+    public ScratchFiles(ConfigReader config) {
+        this.directory = config.asOptionalString(Config.SCRATCH_DIRECTORY)
+                .map(Path::of)
+                .orElse(ExportStl.getPath(""));
+    }
+
+    /** A new empty file, deleted on close. */
+    public Path create(String name) {
+        try {
+            Files.createDirectories(directory);
+            Path path = Files.createTempFile(directory, "chisel3d-" + name + "-", ".map");
+            files.add(path);
+            return path;
+        } catch (IOException ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+
+    /** Maps still open on a file are kept by the operating system until they are unmapped. */
+    @Override
+    public void close() {
+        for (Path path : files) {
+            try {
+                Files.deleteIfExists(path);
+            } catch (IOException ex) {
+                logger.warning("Scratch file can't be deleted until exit: " + ex);
+                path.toFile().deleteOnExit();
+            }
+        }
+        files.clear();
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("directory", directory)
+                .add("files", files.size())
+                .toString();
+    }
+}
@@ -0,0 +1,256 @@
+package com.codecritical.build;
+
+/*
+ * Chisel3D, (C) 2024 Ben Clewett & Code Critical Ltd
+ */
+
+import com.codecritical.lib.config.Config;
+import com.codecritical.lib.config.ConfigReader;
+import com.codecritical.lib.mapping.HeightmapFile;
+import com.codecritical.lib.mapping.IMapArray;
+import com.google.common.base.MoreObjects;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+import javax.annotation.ParametersAreNonnullByDefault;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.Optional;
+import java.util.function.Supplier;
+import java.util.logging.Logger;
+
+/**
+ * Keeps the output of each stage of a 2D print in Config.CACHE_DIRECTORY, so a run re-uses the stages whose config is
+ * unchanged.  Maps are kept as HeightmapFile doubles, and memory mapped when read.
+ * <br>
+ * Each stage is filed under a SHA-256 of the config it reads, and the key of the stage before it.  So changing a
+ * smoothing or texture setting re-runs only the stages from there on, never the fractal.  The fractal's key also has
+ * the size and time of any heightmap it is loaded from.  An empty directory turns the cache off.
+ */
+@ParametersAreNonnullByDefault
+public class StageCache {
+    static final Logger logger = Logger.getLogger("");
+
+    public enum Stage {
+        /** The fractal, before any processing. */
+        RAW,
+        /** After normalise, scale and log. */
+        NORMALISED,
+        /** Plateau of each cell, as its index or -1. */
+        PLATEAUS,
+        /** The finished STL file. */
+        PRINT
+    }
+
+    private final Optional<Path> directory;
+    private final ImmutableMap<Stage, String> keys;
+
+    /** The source names what is built, such as the model, where the config alone does not. */
+    public StageCache(ConfigReader config, String source) {
+        this.directory = config.asOptionalString(Config.CACHE_DIRECTORY).map(Path::of);
+        if (directory.isEmpty()) {
+            this.keys = ImmutableMap.of();
+            return;
+        }
+
+        var builder = ImmutableMap.<Stage, String>builder();
+        String key = source;
+        for (Stage stage : Stage.values()) {
+            key = hash(stage, key, config);
+            builder.put(stage, key);
+        }
+        this.keys = builder.build();
+        logger.info(this.toString());
+    }
+
+    /** Config each stage reads, beyond that of the stages before it. */
+    static ImmutableList<Enum<?>> getConfigRead(Stage stage) {
+        var builder = ImmutableList.<Enum<?>>builder();
+        switch (stage) {
+            case RAW -> {
+                Arrays.stream(Config.Fractal.Model.values())
+                        .filter(c -> c != Config.Fractal.Model.THREAD_COUNT && c != Config.Fractal.Model.SHOW_ROUGH_MAP)
+                        .forEach(builder::add);
+                builder.add(Config.Fractal.JuliaSet.values());
+                builder.add(Config.Fractal.Buddha.values());
+                builder.add(Config.Fractal.Heightmap.LOAD);
+                builder.add(Config.StlPrint.X_SIZE, Config.StlPrint.Y_SIZE, Config.StlPrint.PIXEL_SIZE_XY);
+                builder.add(Config.RANDOM_SEED);
+            }
+            case NORMALISED -> builder.add(Config.Fractal.Processing.SCALE_POWER, Config.Fractal.Processing.APPLY_LOG);
+            case PLATEAUS -> builder.add(Config.Fractal.Processing.MIN_PLATEAU_COEFFICIENT);
+            case PRINT -> {
+                builder.add(Config.Fractal.Processing.values());
+                Arrays.stream(Config.StlPrint.values())
+                        .filter(c -> c != Config.StlPrint.UNION_PARALLELISM)
+                        .forEach(builder::add);
+            }
+            default -> throw new RuntimeException("Unhandled Option: " + stage);
+        }
+        return builder.build();
+    }
+
+    private static String hash(Stage stage, String previousKey, ConfigReader config) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            StringBuilder text = new StringBuilder()
+                    .append(stage).append('\n')
+                    .append(previousKey).append('\n');
+            for (Enum<?> name : getConfigRead(stage)) {
+                // Names not in the config file aren't read by the stage.
+                if (config.hasName(name)) {
+                    text.append(name.getDeclaringClass().getName()).append('.').append(name)
+                            .append('=').append(config.asOptionalString(name).orElse("").trim()).append('\n');
+                }
+            }
+            if (stage == Stage.RAW) {
+                text.append(getLoadedFile(config));
+            }
+            return HexFormat.of().formatHex(digest.digest(text.toString().getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+
+    /**
+     * The size and time of any heightmap the fractal is read from, so one replaced at the same path is read again.
+     * Heightmaps can be larger than memory, so aren't hashed.
+     */
+    private static String getLoadedFile(ConfigReader config) {
+        if (!config.hasName(Config.Fractal.Heightmap.LOAD)) {
+            return "";
+        }
+        Optional<Path> load = config.asOptionalString(Config.Fractal.Heightmap.LOAD).map(Path::of);
+        if (load.isEmpty()) {
+            return "";
+        }
+        try {
+            return "size=" + Files.size(load.get())
+                    + ", modified=" + Files.getLastModifiedTime(load.get()).toMillis() + '\n';
+        } catch (IOException ex) {
+            // Reading it then fails, so nothing is cached.
+            return "missing\n";
+        }
+    }
+
+    public boolean isEnabled() {
+        return directory.isPresent();
+    }
+
+    /** The cached map of the stage, or else one from build, which is then cached. */
+    public IMapArray map(Stage stage, Supplier<IMapArray> build) {
+        Optional<IMapArray> cached = getMap(stage);
+        if (cached.isPresent()) {
+            return cached.get();
+        }
+        IMapArray map = build.get();
+        putMap(stage, map);
+        return map;
+    }
+
+    /** The cached map of the stage, memory mapped from its heightmap file. */
+    public Optional<IMapArray> getMap(Stage stage) {
+        Optional<Path> path = getPath(stage);
+        if (path.isEmpty() || !Files.exists(path.get())) {
+            return Optional.empty();
+        }
+        try {
+            IMapArray map = HeightmapFile.read(path.get());
+            logger.info("Cached " + stage + " read from: " + path.get());
+            return Optional.of(map);
+        } catch (RuntimeException ex) {
+            logger.warning("Cached " + stage + " can't be read, rebuilding: " + ex);
+            return Optional.empty();
+        }
+    }
+
+    /** What the cached map of the stage is of. */
+    public Optional<HeightmapFile.Header> getHeader(Stage stage) {
+        Optional<Path> path = getPath(stage);
+        if (path.isEmpty() || !Files.exists(path.get())) {
+            return Optional.empty();
+        }
+        try {
+            return Optional.of(HeightmapFile.readHeader(path.get()));
+        } catch (RuntimeException ex) {
+            return Optional.empty();
+        }
+    }
+
+    public void putMap(Stage stage, IMapArray map) {
+        putMap(stage, HeightmapFile.Header.of(map), map);
+    }
+
+    public void putMap(Stage stage, HeightmapFile.Header header, IMapArray map) {
+        Optional<Path> path = getPath(stage);
+        if (path.isEmpty()) {
+            return;
+        }
+        write(stage, path.get(), temp -> HeightmapFile.write(temp, header, map, HeightmapFile.Encoding.DOUBLE));
+    }
+
+    /** Copies the cached file of the stage to target, returning false where there is none. */
+    public boolean restoreFile(Stage stage, Path target) {
+        Optional<Path> path = getPath(stage);
+        if (path.isEmpty() || !Files.exists(path.get())) {
+            return false;
+        }
+        try {
+            Files.copy(path.get(), target, StandardCopyOption.REPLACE_EXISTING);
+            logger.info("Cached " + stage + " copied to: " + target);
+            return true;
+        } catch (IOException ex) {
+            logger.warning("Cached " + stage + " can't be copied, rebuilding: " + ex);
+            return false;
+        }
+    }
+
+    public void putFile(Stage stage, Path source) {
+        Optional<Path> path = getPath(stage);
+        if (path.isEmpty()) {
+            return;
+        }
+        write(stage, path.get(), temp -> Files.copy(source, temp, StandardCopyOption.REPLACE_EXISTING));
+    }
+
+    private interface Writer {
+        void write(Path temp) throws IOException;
+    }
+
+    /** Written to a temporary file first, so another run never reads part of one. */
+    private void write(Stage stage, Path path, Writer writer) {
+        try {
+            Files.createDirectories(path.getParent());
+            Path temp = Files.createTempFile(path.getParent(), stage.name(), ".tmp");
+            try {
+                writer.write(temp);
+                Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+            logger.info("Cached " + stage + " written to: " + path);
+        } catch (IOException | RuntimeException ex) {
+            logger.warning("Cached " + stage + " can't be written: " + ex);
+        }
+    }
+
+    Optional<Path> getPath(Stage stage) {
+        String suffix = (stage == Stage.PRINT) ? ".stl" : ".map";
+        return directory.map(d -> d.resolve(stage.name().toLowerCase() + "-" + keys.get(stage) + suffix));
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("directory", directory.map(Path::toString).orElse("none"))
+                .add("keys", keys)
+                .toString();
+    }
+}
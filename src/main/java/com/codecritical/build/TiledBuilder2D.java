@@ -0,0 +1,270 @@
+package com.codecritical.build;
+
+/*
+ * Chisel3D, (C) 2024 Ben Clewett & Code Critical Ltd
+ */
+
+import com.codecritical.lib.config.Config;
+import com.codecritical.lib.config.ConfigReader;
+import com.codecritical.lib.mapping.*;
+import com.codecritical.lib.model.BuildPrintSurface;
+import com.codecritical.lib.model.HeightFieldMesher;
+import com.codecritical.lib.model.JuliaSet;
+import com.codecritical.parts.ExportStl;
+import com.google.common.base.MoreObjects;
+import com.google.common.collect.ImmutableList;
+import com.google.errorprone.annotations.CanIgnoreReturnValue;
+
+import javax.annotation.ParametersAreNonnullByDefault;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.DoubleSummaryStatistics;
+import java.util.OptionalDouble;
+import java.util.function.DoubleUnaryOperator;
+import java.util.logging.Logger;
+
+/**
+ * As Builder2D, for SQUARE prints too large for memory, a tile of rows at a time.
+ * <br>
+ * The map is read from a memory mapped HeightmapFile.  The stages up to the gaussian are applied to each value as it
+ * is read, each normalise taking a streaming pass for its min and max.  The gaussian reads each tile with a halo of
+ * rows either side as wide as its kernel, so the tiles join without seams, and is written to a scratch file.  The mesh
+ * is then streamed to the STL file.  So memory is bounded by the tile, not the print.
+ * <br>
+ * Plateaus are found over the whole map, so aren't used: there is no plateau texture, and plateaus are smoothed with
+ * the rest of the map.
+ */
+@ParametersAreNonnullByDefault
+public class TiledBuilder2D {
+    static final Logger logger = Logger.getLogger("");
+
+    private final ConfigReader config;
+    private final int iSize, jSize;
+    private final int[] tileBounds;
+    private final int threadCount;
+    private final ScratchFiles scratchFiles;
+
+    /** The map, on disk, and the stages applied to each value as it is read. */
+    private IMapArray source;
+    private DoubleUnaryOperator stages = DoubleUnaryOperator.identity();
+    private boolean isPrintWritten = false;
+
+    public static boolean isTiled(ConfigReader config) {
+        return config.asOptionalInt(Config.StlPrint.TILE_ROWS).isPresent();
+    }
+
+    /** Scratch maps are made in scratchFiles, which the caller closes once the print is written. */
+    public static TiledBuilder2D create(ConfigReader config, IMapArray map, ScratchFiles scratchFiles) {
+        return new TiledBuilder2D(config, map, scratchFiles);
+    }
+
+    private TiledBuilder2D(ConfigReader config, IMapArray map, ScratchFiles scratchFiles) {
+        this.config = config;
+        this.scratchFiles = scratchFiles;
+        this.source = map;
+        this.iSize = map.getISize();
+        this.jSize = map.getJSize();
+        this.tileBounds = getTileBounds(jSize, getTileRows(config));
+        this.threadCount = Parallel.getThreadCount(config, Config.Fractal.Model.THREAD_COUNT);
+
+        if (!PlateauTexture.TextureName.NONE.equals(PlateauTexture.getTextureName(config))) {
+            logger.warning("Plateau textures can't be used with tiled prints, plateaus are smoothed as other cells.");
+        }
+        logger.info(this.toString());
+    }
+
+    /** The fractal, built a tile of rows at a time into a scratch file, memory mapped from there. */
+    public static IMapArray buildRaw(ConfigReader config, JuliaSet fractal, ScratchFiles scratchFiles) {
+        var header = fractal.getHeader();
+        int[] bounds = getTileBounds(header.jSize, getTileRows(config));
+        Path scratch = scratchFiles.create("raw");
+
+        try (var writer = new HeightmapFile.Writer(scratch, header, HeightmapFile.Encoding.DOUBLE)) {
+            for (int t = 0; t < bounds.length - 1; t++) {
+                writer.writeRows(fractal.buildRows(bounds[t], bounds[t + 1]));
+                logger.info(String.format("Tile built, rows %d to %d of %d", bounds[t], bounds[t + 1], header.jSize));
+            }
+        }
+        return HeightmapFile.read(scratch);
+    }
+
+    private static int getTileRows(ConfigReader config) {
+        var baseShape = (BuildPrintSurface.BaseShape) config.asEnum(BuildPrintSurface.BaseShape.class, Config.StlPrint.SHAPE);
+        if (baseShape != BuildPrintSurface.BaseShape.SQUARE) {
+            throw new RuntimeException("Tiled prints must be SQUARE, not " + baseShape);
+        }
+        int tileRows = config.asInt(Config.StlPrint.TILE_ROWS);
+        if (tileRows < 2) {
+            throw new RuntimeException("Config.StlPrint.TILE_ROWS must be 2 or above.");
+        }
+        return tileRows;
+    }
+
+    /** First row of each tile, then jSize.  A last tile of one row is joined to the one before, as maps need two. */
+    static int[] getTileBounds(int jSize, int tileRows) {
+        int count = Math.max(1, (jSize + tileRows - 1) / tileRows);
+        if (count > 1 && jSize % tileRows == 1) {
+            count--;
+        }
+        int[] bounds = new int[count + 1];
+        for (int t = 0; t < count; t++) {
+            bounds[t] = t * tileRows;
+        }
+        bounds[count] = jSize;
+        return bounds;
+    }
+
+    public TiledBuilder2D normalise() {
+        normalise(false, 0.0, 1.0, "Normalise without zero (1% above zero)");
+        return this;
+    }
+
+    public TiledBuilder2D scale() {
+        IScale toPower = IScale.toPower(config.asDouble(Config.Fractal.Processing.SCALE_POWER));
+        stages = stages.andThen(toPower::scale);
+        normalise(true, 0.0, 1.0, "Scale");
+        return this;
+    }
+
+    public TiledBuilder2D applyLog() {
+        var expLnValue = (Builder2D.ExpLnValue) config.asOptionalEnum(Builder2D.ExpLnValue.class, Config.Fractal.Processing.APPLY_LOG)
+                .orElse(Builder2D.ExpLnValue.NONE);
+        switch (expLnValue) {
+            case NONE -> {
+                return this;
+            }
+            case EXP -> {
+                stages = stages.andThen(Math::exp);
+                normalise(true, 0.0, 1.0, "Apply e^z");
+            }
+            case LN -> {
+                normalise(true, 1.0, 10.0, "Range for ln(z)");
+                stages = stages.andThen(Math::log);
+                normalise(true, 0.0, 1.0, "Apply ln(z)");
+            }
+            default -> throw new RuntimeException("Unhandled Option: " + expLnValue);
+        }
+        return this;
+    }
+
+    /** Smoothed into a scratch file, which the print is then read from. */
+    public TiledBuilder2D applyGaussian() {
+        OptionalDouble gaussianRadius = config.asOptionalDouble(Config.Fractal.Processing.GAUSSIAN_RADIUS);
+
+        if (gaussianRadius.isPresent()) {
+            Path scratch = scratchFiles.create("gaussian");
+            int tileCount = tileBounds.length - 1;
+            int halo = Gaussian.getHalo(gaussianRadius.getAsDouble(), iSize, jSize);
+            logger.info("Gaussian by tile, halo rows=" + halo);
+
+            try (var writer = new HeightmapFile.Writer(scratch, HeightmapFile.Header.of(source), HeightmapFile.Encoding.DOUBLE)) {
+                // Tiles are smoothed a thread's worth at once, then written in order.
+                for (int first = 0; first < tileCount; first += threadCount) {
+                    int count = Math.min(threadCount, tileCount - first);
+                    int firstTile = first;
+                    double[][] tiles = new double[count][];
+                    Parallel.forEach(threadCount, count, t ->
+                            tiles[t] = smoothTile(firstTile + t, halo, gaussianRadius.getAsDouble()));
+                    for (int t = 0; t < count; t++) {
+                        int rows = tileBounds[first + t + 1] - tileBounds[first + t];
+                        writer.writeRows(new MapArray(iSize, rows, Arrays.stream(tiles[t])));
+                    }
+                }
+            }
+
+            source = HeightmapFile.read(scratch);
+            stages = DoubleUnaryOperator.identity();
+        }
+
+        normalise(true, 0.0, 1.0, "Gaussian");
+        return this;
+    }
+
+    private double[] smoothTile(int tile, int halo, double gaussianRadius) {
+        int jFrom = tileBounds[tile];
+        int jTo = tileBounds[tile + 1];
+        int jRegion = Math.max(0, jFrom - halo);
+        int jRegionTo = Math.min(jSize, jTo + halo);
+
+        double[] region = new double[(jRegionTo - jRegion) * iSize];
+        for (int j = jRegion; j < jRegionTo; j++) {
+            readRow(j, region, (j - jRegion) * iSize);
+        }
+        return Gaussian.applyToRows(region, jRegion, iSize, jSize, gaussianRadius, jFrom, jTo);
+    }
+
+    @CanIgnoreReturnValue
+    public TiledBuilder2D savePrint() {
+        String fileName = Builder2D.getPrintFileName(config);
+        var mesher = new HeightFieldMesher(config);
+        var parts = Builder2D.getBoundary(config)
+                .map(ImmutableList::of)
+                .orElse(ImmutableList.of());
+
+        // Other parts, such as the border, are written as separate shells.
+        isPrintWritten = ExportStl.export(fileName, stl -> mesher.write(stl::write, iSize, jSize, this::getRow), parts);
+        logger.info("STL file written to: " + fileName);
+        return this;
+    }
+
+    /** Whether savePrint() wrote the print. */
+    public boolean isPrintWritten() {
+        return isPrintWritten;
+    }
+
+    /** Row j with the stages so far. */
+    double[] getRow(int j) {
+        double[] row = new double[iSize];
+        readRow(j, row, 0);
+        return row;
+    }
+
+    private void readRow(int j, double[] out, int offset) {
+        for (int i = 0; i < iSize; i++) {
+            out[offset + i] = stages.applyAsDouble(source.get(i, j));
+        }
+    }
+
+    /** As Mapping.normalise(), with the min and max of the finite values from a streaming pass. */
+    private void normalise(boolean allowZero, double minOut, double maxOut, String stage) {
+        var statistics = getStatistics();
+        double min = (statistics.getCount() == 0) ? 0.0 : statistics.getMin();
+        double max = (statistics.getCount() == 0) ? 0.0 : statistics.getMax();
+        logger.info(String.format("%s: min=%.3f, max=%.3f, mean=%.3f", stage, min, max, statistics.getAverage()));
+
+        stages = stages.andThen(Mapping.normaliser(min, max, allowZero, minOut, maxOut));
+    }
+
+    /** Of the finite values with the stages so far, a tile on each thread. */
+    private DoubleSummaryStatistics getStatistics() {
+        int tileCount = tileBounds.length - 1;
+        var statistics = new DoubleSummaryStatistics[tileCount];
+        Parallel.forEach(threadCount, tileCount, t -> {
+            var tileStatistics = new DoubleSummaryStatistics();
+            double[] row = new double[iSize];
+            for (int j = tileBounds[t]; j < tileBounds[t + 1]; j++) {
+                readRow(j, row, 0);
+                for (double z : row) {
+                    if (Double.isFinite(z)) {
+                        tileStatistics.accept(z);
+                    }
+                }
+            }
+            statistics[t] = tileStatistics;
+        });
+
+        var all = new DoubleSummaryStatistics();
+        Arrays.stream(statistics).forEach(all::combine);
+        return all;
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("iSize", iSize)
+                .add("jSize", jSize)
+                .add("tiles", tileBounds.length - 1)
+                .add("threadCount", threadCount)
+                .toString();
+    }
+}
@@ -5,9 +5,12 @@ package com.codecritical.build.juliasets;
  */
 
 import com.codecritical.lib.config.ConfigReader;
+import com.codecritical.lib.model.DoubleDouble;
+import com.codecritical.lib.model.EscapeFormula;
 import com.codecritical.lib.model.JuliaSet;
 
 import javax.annotation.ParametersAreNonnullByDefault;
+import java.util.Optional;
 
 @ParametersAreNonnullByDefault
 public class BurningShipMap extends JuliaSet {
@@ -30,4 +33,31 @@ public class BurningShipMap extends JuliaSet {
 
         return (double)iterations;
     }
+
+    @Override
+    protected Optional<EscapeFormula> getEscapeFormula() {
+        return Optional.of(EscapeFormula.of(EscapeFormula.Kind.BURNING_SHIP));
+    }
+
+    @Override
+    protected boolean hasDoubleDouble() {
+        return true;
+    }
+
+    @Override
+    protected Double buildPoint(DoubleDouble rC, DoubleDouble iC, DoubleDouble[] work) {
+        int iterations = 0;
+
+        DoubleDouble rZ = work[2].set(0.0), iZ = work[3].set(0.0);
+        DoubleDouble rZ2 = work[4].set(0.0), iZ2 = work[5].set(0.0);
+        while (rZ2.doubleValue() + iZ2.doubleValue() <= 4 && iterations < maxIterations) {
+            iZ.multiply(rZ).multiply(2).abs().add(iC);
+            rZ.set(rZ2).subtract(iZ2).add(rC);
+            rZ2.set(rZ).square();
+            iZ2.set(iZ).square();
+            iterations++;
+        }
+
+        return (double)iterations;
+    }
 }
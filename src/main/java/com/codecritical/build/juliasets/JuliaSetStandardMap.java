@@ -6,10 +6,13 @@ package com.codecritical.build.juliasets;
 
 import com.codecritical.lib.config.Config;
 import com.codecritical.lib.config.ConfigReader;
+import com.codecritical.lib.model.DoubleDouble;
+import com.codecritical.lib.model.EscapeFormula;
 import com.codecritical.lib.model.JuliaSet;
 import com.google.common.base.MoreObjects;
 
 import javax.annotation.ParametersAreNonnullByDefault;
+import java.util.Optional;
 
 @ParametersAreNonnullByDefault
 public class JuliaSetStandardMap extends JuliaSet {
@@ -53,4 +56,30 @@ public class JuliaSetStandardMap extends JuliaSet {
                 .add("iC", this.iC)
                 .toString();
     }
+
+    @Override
+    protected Optional<EscapeFormula> getEscapeFormula() {
+        return Optional.of(EscapeFormula.julia(rC, iC));
+    }
+
+    @Override
+    protected boolean hasDoubleDouble() {
+        return true;
+    }
+
+    @Override
+    protected Double buildPoint(DoubleDouble rZ, DoubleDouble iZ, DoubleDouble[] work) {
+        int iterations = 0;
+
+        DoubleDouble rZ2 = work[2].set(rZ).square(), iZ2 = work[3].set(iZ).square();
+        while (rZ2.doubleValue() + iZ2.doubleValue() <= 4 && iterations < maxIterations) {
+            iZ.multiply(rZ).multiply(2).add(iC);
+            rZ.set(rZ2).subtract(iZ2).add(rC);
+            rZ2.set(rZ).square();
+            iZ2.set(iZ).square();
+            iterations++;
+        }
+
+        return (double)iterations;
+    }
 }
@@ -7,10 +7,18 @@ package com.codecritical.build.juliasets;
 
 import com.codecritical.Main;
 import com.codecritical.build.Builder2D;
+import com.codecritical.build.ScratchFiles;
+import com.codecritical.build.StageCache;
+import com.codecritical.build.TiledBuilder2D;
+import com.codecritical.lib.config.Config;
 import com.codecritical.lib.config.ConfigReader;
+import com.codecritical.lib.mapping.HeightmapFile;
 import com.codecritical.lib.mapping.IMapArray;
+import com.codecritical.lib.model.JuliaSet;
 
 import javax.annotation.ParametersAreNonnullByDefault;
+import java.nio.file.Path;
+import java.util.Optional;
 import java.util.logging.Logger;
 
 @ParametersAreNonnullByDefault
@@ -18,47 +26,128 @@ public class JuliaSetsBuilder {
 
     static final Logger logger = Logger.getLogger("");
     private final ConfigReader config;
+    private final StageCache cache;
+    private final ScratchFiles scratchFiles;
+    private boolean isHeightmapSaved = false;
 
     public JuliaSetsBuilder(ConfigReader config, Main.ModelName model) {
         this.config = config;
+        this.cache = new StageCache(config, model.name());
+        this.scratchFiles = new ScratchFiles(config);
 
         try {
-            IMapArray map = buildModel(model);
+            Path print = Builder2D.getPrintPath(config);
+            if (!cache.restoreFile(StageCache.Stage.PRINT, print)) {
+                buildPrint(model, print);
+            }
 
-            build(map);
+            // A cached print or map skips the fractal, which is then read or built to be saved as asked.
+            if (config.asOptionalString(Config.Fractal.Heightmap.SAVE).isPresent()
+                    && config.asOptionalString(Config.Fractal.Heightmap.LOAD).isEmpty()
+                    && !isHeightmapSaved) {
+                buildRaw(model);
+            }
         } catch (Exception ex) {
             logger.severe("Exception: " + ex);
             throw new RuntimeException(ex);
+        } finally {
+            scratchFiles.close();
         }
     }
 
-    private IMapArray buildModel(Main.ModelName model) {
+    private void buildPrint(Main.ModelName model, Path print) {
+        boolean isWritten = (TiledBuilder2D.isTiled(config))
+                ? buildTiled(model)
+                : build(buildNormalised(model));
+
+        // ExportStl leaves an earlier print in place where the write fails, which mustn't be cached for this one.
+        if (isWritten) {
+            cache.putFile(StageCache.Stage.PRINT, print);
+        } else {
+            logger.warning("Print not written, so not cached: " + print);
+        }
+    }
+
+    private JuliaSet buildModel(Main.ModelName model) {
         return switch (model) {
-            case MANDELBROT -> new MandelbrotStandardMap(config).getMap();
-            case MANDELBROT_CUBIC -> new MandelbrotCubicMap(config).getMap();
-            case MANDELBROT_BUDDHA -> new MandelbrotBuddhaMap(config).getMap();
-            case JULIA_SET -> new JuliaSetStandardMap(config).getMap();
-            case BURNING_SHIP -> new BurningShipMap(config).getMap();
-            case MANDELBROT_TRICORN -> new MandelbrotTricorn(config).getMap();
+            case MANDELBROT -> new MandelbrotStandardMap(config);
+            case MANDELBROT_CUBIC -> new MandelbrotCubicMap(config);
+            case MANDELBROT_BUDDHA -> new MandelbrotBuddhaMap(config);
+            case JULIA_SET -> new JuliaSetStandardMap(config);
+            case BURNING_SHIP -> new BurningShipMap(config);
+            case MANDELBROT_TRICORN -> new MandelbrotTricorn(config);
             default -> throw new RuntimeException("Unknown option: " + model);
         };
     }
 
-    private void build(IMapArray map) {
+    /** The fractal from a heightmap file, the cache, or else built, and saved where asked. */
+    private IMapArray buildRaw(Main.ModelName model) {
+        Optional<String> load = config.asOptionalString(Config.Fractal.Heightmap.LOAD);
+        if (load.isPresent()) {
+            logger.info("Heightmap read from: " + load.get());
+            return HeightmapFile.read(Path.of(load.get()));
+        }
+
+        IMapArray map;
+        HeightmapFile.Header header;
+        Optional<IMapArray> cached = cache.getMap(StageCache.Stage.RAW);
+        if (cached.isPresent()) {
+            map = cached.get();
+            header = cache.getHeader(StageCache.Stage.RAW).orElse(HeightmapFile.Header.of(map));
+        } else {
+            JuliaSet fractal = buildModel(model);
+            map = (TiledBuilder2D.isTiled(config))
+                    ? TiledBuilder2D.buildRaw(config, fractal, scratchFiles)
+                    : fractal.getMap();
+            header = fractal.getHeader();
+            cache.putMap(StageCache.Stage.RAW, header, map);
+        }
+
+        Optional<String> save = config.asOptionalString(Config.Fractal.Heightmap.SAVE);
+        if (save.isPresent()) {
+            var encoding = (HeightmapFile.Encoding) config.asEnum(HeightmapFile.Encoding.class,
+                    Config.Fractal.Heightmap.SAVE_ENCODING);
+            HeightmapFile.write(Path.of(save.get()), header, map, encoding);
+            logger.info("Heightmap written to: " + save.get());
+            isHeightmapSaved = true;
+        }
+        return map;
+    }
+
+    /** The fractal normalised and scaled, where the fractal is only built when neither is cached. */
+    private IMapArray buildNormalised(Main.ModelName model) {
+        return cache.map(StageCache.Stage.NORMALISED, () ->
+                Builder2D.create(config, buildRaw(model))
+                        .normalise()
+                        .scale()
+                        .applyLog()
+                        .getMap());
+    }
 
-        Builder2D.create(config, map)
+    /** As build(), a tile of rows at a time, for prints too large for memory. */
+    private boolean buildTiled(Main.ModelName model) {
+        return TiledBuilder2D.create(config, buildRaw(model), scratchFiles)
                 .normalise()
                 .scale()
                 .applyLog()
+                .applyGaussian()
+                .savePrint()
+                .isPrintWritten();
+    }
+
+    private boolean build(IMapArray map) {
+
+        return Builder2D.create(config, map)
                 .showRoughMap()
-                .buildPlateau()
+                .buildPlateau(cache)
                 .reportPlateau()
                 .applyPlateauTexture()
                 .applyGaussian()
                 // .trimOutsideBase()
                 .mapToCsg()
                 .addBoundary()
-                .savePrint();
+                .savePrint()
+                .isPrintWritten();
     }
 
 }
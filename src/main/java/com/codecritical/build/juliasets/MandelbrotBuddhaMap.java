@@ -4,26 +4,186 @@ package com.codecritical.build.juliasets;
  * Chisel3D, (C) 2024 Ben Clewett & Code Critical Ltd
  */
 
+import com.codecritical.lib.config.Config;
 import com.codecritical.lib.config.ConfigReader;
-import com.codecritical.lib.mapping.MapArray;
+import com.codecritical.lib.mapping.Parallel;
 import com.codecritical.lib.model.JuliaSet;
+import com.codecritical.lib.model.MandelbrotInterior;
+import com.google.common.base.MoreObjects;
 
 import javax.annotation.ParametersAreNonnullByDefault;
+import java.util.Random;
 
+/**
+ * A heat-map of the orbits of the points, rather than their iterations.
+ * <br>
+ * Every orbit is plotted over the whole map, so each worker counts into its own histogram, and these are added
+ * together at the end.  The counts are whole numbers, so the result is the same for any number of threads.
+ * <br>
+ * GRID takes c from each pixel and plots every orbit.  The other samplings take c from anywhere in the set, plotting
+ * only orbits which escape, as the classic Buddhabrot.
+ */
 @ParametersAreNonnullByDefault
 public class MandelbrotBuddhaMap extends JuliaSet {
 
+    public enum Sampling {
+        GRID, RANDOM, HALTON, METROPOLIS
+    }
+
+    /** Random samplings are split into this many chunks, each with its own seed, whatever the thread count. */
+    static final int CHUNK_COUNT = 64;
+
+    /** Samples of c are taken from the square |re|, |im| <= 2, which holds the set. */
+    static final double SAMPLE_RADIUS = 2.0;
+
+    /** Metropolis moves to a new random c this often, otherwise c moves a little. */
+    static final double METROPOLIS_NEW_SAMPLE_PROBABILITY = 0.2;
+
+    /** Size of a small Metropolis move, as a fraction of the window. */
+    static final double METROPOLIS_MUTATION_SCALE = 0.05;
+
+    /** Tries to find a first Metropolis sample with an orbit in the window. */
+    static final int METROPOLIS_START_TRIES = 100_000;
+
+    private final Sampling sampling;
+    private final long sampleCount;
+    private final long seed;
+
     public MandelbrotBuddhaMap(ConfigReader config) {
-        super(config, true);
+        super(config, false);
+
+        this.sampling = (Sampling) config.asEnum(Sampling.class, Config.Fractal.Buddha.SAMPLING);
+        this.sampleCount = config.asOptionalLong(Config.Fractal.Buddha.SAMPLE_COUNT)
+                .orElse((long) iCount * jCount);
+        this.seed = config.asLong(Config.RANDOM_SEED);
+
+        logger.info(this.toString());
+        buildMap();
     }
 
     @Override
-    protected Double buildPoint(double rC, double iC) {
+    protected void buildMap() {
+        int chunks = (sampling == Sampling.GRID)
+                ? jCount
+                : (int) Math.max(1, Math.min(CHUNK_COUNT, sampleCount));
+        int workers = Math.max(1, Math.min(threadCount, chunks));
+        logger.info("Building orbit histograms, sampling=" + sampling + ", threads=" + workers);
+
+        // Worker w takes every w'th chunk, so deep rows are shared out.
+        long[][] histograms = new long[workers][];
+        Parallel.forEach(workers, workers, w -> {
+            long[] histogram = new long[iCount * jCount];
+            int[][] traces = new int[][] {new int[maxIterations], new int[maxIterations]};
+            for (int chunk = w; chunk < chunks; chunk += workers) {
+                buildChunk(chunk, chunks, histogram, traces);
+            }
+            histograms[w] = histogram;
+        });
+
+        for (int n = 0; n < iCount * jCount; n++) {
+            long hits = 0;
+            for (long[] histogram : histograms) {
+                hits += histogram[n];
+            }
+            map.set(n, (double) hits);
+        }
+    }
+
+    private void buildChunk(int chunk, int chunks, long[] histogram, int[][] traces) {
+        long first = sampleCount * chunk / chunks;
+        long last = sampleCount * (chunk + 1) / chunks;
+        Random random = new Random(seed + chunk);
+
+        switch (sampling) {
+            case GRID -> {
+                for (int i = 0; i < iCount; i++) {
+                    double[] p = getPoint(i, chunk);
+                    addOrbit(p[0], p[1], histogram);
+                }
+            }
+            case RANDOM -> {
+                for (long n = first; n < last; n++) {
+                    plot(traces[0], traceOrbit(randomSample(random), randomSample(random), traces[0]), histogram);
+                }
+            }
+            case HALTON -> {
+                for (long n = first; n < last; n++) {
+                    double rC = (radicalInverse(n + 1, 2) * 2 - 1) * SAMPLE_RADIUS;
+                    double iC = (radicalInverse(n + 1, 3) * 2 - 1) * SAMPLE_RADIUS;
+                    plot(traces[0], traceOrbit(rC, iC, traces[0]), histogram);
+                }
+            }
+            case METROPOLIS -> buildMetropolisChunk(last - first, random, histogram, traces);
+        }
+    }
+
+    /**
+     * Metropolis-Hastings, walking c in proportion to the number of its orbit points in the window.
+     * <br>
+     * This spends the samples where they show, so brightens detail in a zoomed window rather than being an exact
+     * density.
+     */
+    private void buildMetropolisChunk(long samples, Random random, long[] histogram, int[][] traces) {
+        if (samples <= 0) {
+            return;
+        }
+
+        double rC = 0, iC = 0;
+        int hits = -1;
+        for (int n = 0; n < METROPOLIS_START_TRIES && hits <= 0; n++) {
+            rC = randomSample(random);
+            iC = randomSample(random);
+            hits = traceOrbit(rC, iC, traces[0]);
+        }
+        if (hits <= 0) {
+            logger.warning("No Buddhabrot orbits found in the window.");
+            return;
+        }
+
+        double mutation = Math.max(i1 - i0, j1 - j0) * METROPOLIS_MUTATION_SCALE;
+        int current = 0;
+        for (long n = 0; n < samples; n++) {
+            double rNext, iNext;
+            if (random.nextDouble() < METROPOLIS_NEW_SAMPLE_PROBABILITY) {
+                rNext = randomSample(random);
+                iNext = randomSample(random);
+            } else {
+                rNext = rC + random.nextGaussian() * mutation;
+                iNext = iC + random.nextGaussian() * mutation;
+            }
+
+            int nextHits = traceOrbit(rNext, iNext, traces[1 - current]);
+            if (nextHits > 0 && random.nextDouble() * hits < nextHits) {
+                rC = rNext;
+                iC = iNext;
+                hits = nextHits;
+                current = 1 - current;
+            }
+            plot(traces[current], hits, histogram);
+        }
+    }
+
+    private static double randomSample(Random random) {
+        return (random.nextDouble() * 2 - 1) * SAMPLE_RADIUS;
+    }
+
+    /** n'th of the van der Corput sequence in the base, which over two prime bases gives the Halton sequence. */
+    static double radicalInverse(long n, int base) {
+        double result = 0;
+        double fraction = 1.0 / base;
+        while (n > 0) {
+            result += (n % base) * fraction;
+            n /= base;
+            fraction /= base;
+        }
+        return result;
+    }
+
+    /** Counts each point of the orbit of c that lands on the map. */
+    private void addOrbit(double rC, double iC, long[] histogram) {
         // With complex numbers: z = z^2 + c
         // Iterate until exit circle, or give up.
 
-        // This version does not return the iterations.  Rather is builds up a heat-map of the orbits of the points.
-
         int iterations = 0;
 
         double rZ = 0, iZ = 0, iZtmp;
@@ -33,16 +193,88 @@ public class MandelbrotBuddhaMap extends JuliaSet {
             rZ = iZtmp;
             iterations++;
 
-            plotOnMap(rZ, iZ, d -> d + 1);
+            int index = indexOf(rZ, iZ);
+            if (index >= 0) {
+                histogram[index]++;
+            }
+        }
+    }
+
+    /**
+     * Map indexes of the orbit of c into trace, returning how many, or -1 where the orbit doesn't escape.  Points in
+     * the cardioid, period 2 bulb, or an exact cycle are known not to, without iterating to the end.
+     */
+    private int traceOrbit(double rC, double iC, int[] trace) {
+        if (MandelbrotInterior.isInterior(rC, iC)) {
+            return -1;
+        }
+
+        int iterations = 0, hits = 0;
+
+        double rSaved = 0, iSaved = 0;
+        int period = 0, power = 1;
+
+        double rZ = 0, iZ = 0, iZtmp;
+        while (rZ * rZ + iZ * iZ <= 4) {
+            if (iterations == maxIterations) {
+                return -1;
+            }
+            iZtmp = rZ * rZ - iZ * iZ + rC;
+            iZ = 2 * rZ * iZ + iC;
+            rZ = iZtmp;
+            iterations++;
+
+            int index = indexOf(rZ, iZ);
+            if (index >= 0) {
+                trace[hits++] = index;
+            }
+
+            if (rZ == rSaved && iZ == iSaved) {
+                return -1;
+            }
+            if (++period == power) {
+                rSaved = rZ;
+                iSaved = iZ;
+                period = 0;
+                power *= 2;
+            }
         }
+        return hits;
+    }
 
-        return null;
+    private static void plot(int[] trace, int hits, long[] histogram) {
+        for (int n = 0; n < hits; n++) {
+            histogram[trace[n]]++;
+        }
     }
 
-    private void plotOnMap(double rZ, double iZ, MapArray map) {
+    /** Index of the pixel holding z, or -1 where it is off the map. */
+    private int indexOf(double rZ, double iZ) {
+        int i = (int)((rZ - i0) / iDelta);
+        int j = (int)((iZ - j0) / jDelta);
+        if (i < 0 || i >= iCount || j < 0 || j >= jCount) {
+            return -1;
+        }
+        return i + j * iCount;
+    }
 
-        int i = (int)rZ;
-        int j = (int)iZ;
+    @Override
+    protected Double buildPoint(double rC, double iC) {
+        throw new RuntimeException("Built from orbit histograms, not by point.");
+    }
 
+    @Override
+    protected boolean isParallelSafe() {
+        // Every orbit is plotted over the whole map.
+        return false;
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .addValue(super.toString())
+                .add("sampling", sampling)
+                .add("sampleCount", sampleCount)
+                .toString();
     }
 }
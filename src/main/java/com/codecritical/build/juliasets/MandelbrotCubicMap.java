@@ -5,6 +5,7 @@ package com.codecritical.build.juliasets;
  */
 
 import com.codecritical.lib.config.ConfigReader;
+import com.codecritical.lib.model.DoubleDouble;
 import com.codecritical.lib.model.JuliaSet;
 
 import javax.annotation.ParametersAreNonnullByDefault;
@@ -42,4 +43,27 @@ public class MandelbrotCubicMap extends JuliaSet {
         return (double)iterations;
     }
 
+    @Override
+    protected boolean hasDoubleDouble() {
+        return true;
+    }
+
+    @Override
+    protected Double buildPoint(DoubleDouble rC, DoubleDouble iC, DoubleDouble[] work) {
+        int iterations = 0;
+
+        // Real:       rZ (rZ^2 - 3 iZ^2) + rC
+        // Imaginary:  iZ (3 rZ^2 - iZ^2) + iC
+        DoubleDouble rZ = work[2].set(0.0), iZ = work[3].set(0.0);
+        DoubleDouble rZ2 = work[4].set(0.0), iZ2 = work[5].set(0.0), tmp = work[6];
+        while (rZ2.doubleValue() + iZ2.doubleValue() <= 4 && iterations < maxIterations) {
+            rZ.multiply(tmp.set(iZ2).multiply(-3).add(rZ2)).add(rC);
+            iZ.multiply(tmp.set(rZ2).multiply(3).subtract(iZ2)).add(iC);
+            rZ2.set(rZ).square();
+            iZ2.set(iZ).square();
+            iterations++;
+        }
+
+        return (double)iterations;
+    }
 }
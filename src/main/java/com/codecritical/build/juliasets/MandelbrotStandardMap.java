@@ -5,15 +5,67 @@ package com.codecritical.build.juliasets;
  */
 
 import com.codecritical.lib.config.ConfigReader;
+import com.codecritical.lib.model.DoubleDouble;
+import com.codecritical.lib.model.EscapeFormula;
 import com.codecritical.lib.model.JuliaSet;
+import com.codecritical.lib.model.MandelbrotInterior;
+import com.codecritical.lib.model.Perturbation;
+import com.google.common.base.MoreObjects;
 
 import javax.annotation.ParametersAreNonnullByDefault;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
 
 @ParametersAreNonnullByDefault
 public class MandelbrotStandardMap extends JuliaSet {
 
+    /** Present for deep zooms, pixels are then differences from the centre pixel. */
+    private final Optional<Perturbation> perturbation;
+    private final int iRef, jRef;
+    private final double iPixel, jPixel;
+
     public MandelbrotStandardMap(ConfigReader config) {
-        super(config, true);
+        super(config, false);
+
+        this.iRef = iCount / 2;
+        this.jRef = jCount / 2;
+        this.iPixel = i1Exact.subtract(i0Exact).doubleValue() / iCount;
+        this.jPixel = j1Exact.subtract(j0Exact).doubleValue() / jCount;
+        this.perturbation = (getPrecision() == Precision.PERTURBATION)
+                ? Optional.of(new Perturbation(getExactI(iRef), getExactJ(jRef),
+                        Math.min(iPixel, jPixel), maxIterations))
+                : Optional.empty();
+        perturbation.ifPresent(this::approximateSeries);
+
+        logger.info(this.toString());
+        buildMap();
+    }
+
+    /** Series for the whole window, checked at the corners and the middle of each edge. */
+    private void approximateSeries(Perturbation p) {
+        int[] iProbes = new int[] {0, iRef, iCount - 1};
+        int[] jProbes = new int[] {0, jRef, jCount - 1};
+        List<double[]> probes = new ArrayList<>();
+        for (int i : iProbes) {
+            for (int j : jProbes) {
+                if (i != iRef || j != jRef) {
+                    probes.add(new double[] {(i - iRef) * iPixel, (j - jRef) * jPixel});
+                }
+            }
+        }
+        double radius = Math.hypot(
+                Math.max(iRef, iCount - 1 - iRef) * iPixel,
+                Math.max(jRef, jCount - 1 - jRef) * jPixel);
+        p.approximateSeries(radius, probes.toArray(new double[0][]));
+    }
+
+    @Override
+    protected Double buildPixel(int i, int j) {
+        if (perturbation.isEmpty()) {
+            return super.buildPixel(i, j);
+        }
+        return (double) perturbation.get().iterate((i - iRef) * iPixel, (j - jRef) * jPixel);
     }
 
     @Override
@@ -22,16 +74,75 @@ public class MandelbrotStandardMap extends JuliaSet {
         // With complex numbers: z = z^2 + c
         // Iterate until exit circle, or give up.
 
+        if (MandelbrotInterior.isInterior(rC, iC)) {
+            return (double)maxIterations;
+        }
+
         int iterations = 0;
 
+        // Brent's cycle check: compare with a saved z, saved again at each power of two.  A z seen before repeats
+        // for ever, so it can never escape.
+        double rSaved = 0, iSaved = 0;
+        int period = 0, power = 1;
+
         double rZ = 0, iZ = 0, iZtmp;
         while (rZ * rZ + iZ * iZ <= 4 && iterations < maxIterations) {
             iZtmp = rZ * rZ - iZ * iZ + rC;
             iZ = 2 * rZ * iZ + iC;
             rZ = iZtmp;
             iterations++;
+
+            if (rZ == rSaved && iZ == iSaved) {
+                return (double)maxIterations;
+            }
+            if (++period == power) {
+                rSaved = rZ;
+                iSaved = iZ;
+                period = 0;
+                power *= 2;
+            }
         }
 
         return (double)iterations;
     }
+
+    @Override
+    protected boolean hasPerturbation() {
+        return true;
+    }
+
+    @Override
+    protected Optional<EscapeFormula> getEscapeFormula() {
+        return Optional.of(EscapeFormula.of(EscapeFormula.Kind.MANDELBROT));
+    }
+
+    @Override
+    protected boolean hasDoubleDouble() {
+        return true;
+    }
+
+    @Override
+    protected Double buildPoint(DoubleDouble rC, DoubleDouble iC, DoubleDouble[] work) {
+        int iterations = 0;
+
+        DoubleDouble rZ = work[2].set(0.0), iZ = work[3].set(0.0);
+        DoubleDouble rZ2 = work[4].set(0.0), iZ2 = work[5].set(0.0);
+        while (rZ2.doubleValue() + iZ2.doubleValue() <= 4 && iterations < maxIterations) {
+            iZ.multiply(rZ).multiply(2).add(iC);
+            rZ.set(rZ2).subtract(iZ2).add(rC);
+            rZ2.set(rZ).square();
+            iZ2.set(iZ).square();
+            iterations++;
+        }
+
+        return (double)iterations;
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .addValue(super.toString())
+                .add("perturbation", perturbation.isPresent())
+                .toString();
+    }
 }
@@ -6,6 +6,7 @@ package com.codecritical.build.juliasets3d;
 
 import com.codecritical.lib.config.ConfigReader;
 import com.codecritical.lib.model.JuliaSet3D;
+import com.codecritical.lib.model.MandelbrotInterior;
 
 import javax.annotation.ParametersAreNonnullByDefault;
 
@@ -19,18 +20,49 @@ public class MandelbrotStandard3dMap extends JuliaSet3D {
     @Override
     protected boolean buildPoint(double rC, double iC, double k) {
         // With complex numbers: z = z^2 + c
-        // Iterate until exit circle, or give up.
+        // Iterate until exit circle, or give up.  Escaped points always smooth to less than 1.
+        return buildDensity(rC, iC, k) == 1.0;
+    }
+
+    /** 1 inside, otherwise the smoothed escape count as a fraction of the maximum. */
+    @Override
+    protected double buildDensity(double rC, double iC, double k) {
+        // The k = 0 slice starts from z = 0, the 2D set, with its known interior.
+        if (k == 0 && MandelbrotInterior.isInterior(rC, iC)) {
+            return 1.0;
+        }
 
         int iterations = 0;
 
+        // Brent's cycle check, a z seen before repeats for ever, so can never escape.
+        double rSaved = 0, iSaved = k;
+        int period = 0, power = 1;
+
         double rZ = 0, iZ = k, iZtmp;
         while (rZ * rZ + iZ * iZ <= 4 && iterations < maxIterations) {
             iZtmp = rZ * rZ - iZ * iZ + rC;
             iZ = 2 * rZ * iZ + iC;
             rZ = iZtmp;
             iterations++;
+
+            if (rZ == rSaved && iZ == iSaved) {
+                return 1.0;
+            }
+            if (++period == power) {
+                rSaved = rZ;
+                iSaved = iZ;
+                period = 0;
+                power *= 2;
+            }
+        }
+
+        if (iterations == maxIterations) {
+            return 1.0;
         }
 
-        return (iterations == maxIterations);
+        // Continuous count, log2(log|z|) falls smoothly as the escape gets later.
+        double logZ = Math.log(rZ * rZ + iZ * iZ) / 2;
+        double smooth = iterations + 1 - Math.log(logZ / Math.log(2)) / Math.log(2);
+        return Math.max(0.0, Math.min(smooth / maxIterations, 1.0));
     }
 }
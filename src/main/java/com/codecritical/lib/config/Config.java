@@ -6,7 +6,9 @@ package com.codecritical.lib.config;
 
 public enum Config {
     RANDOM_SEED,
-    OUTPUT_FILENAME;
+    OUTPUT_FILENAME,
+    CACHE_DIRECTORY,
+    SCRATCH_DIRECTORY;
 
     public enum StlPrint {
         X_SIZE,
@@ -19,7 +21,10 @@ public enum Config {
         SHAPE,
         BORDER_HEIGHT,
         BORDER_WIDTH,
-        BLOCK_SIZE_3D;
+        BLOCK_SIZE_3D,
+        DIRECT_MESH,
+        UNION_PARALLELISM,
+        TILE_ROWS;
 
         public enum Settings3D {
             TILT_DEGREES_IN_X,
@@ -28,7 +33,10 @@ public enum Config {
             MODEL_MOVE,
             SHADOW,
             SHADOW_Z,
-            SHADOW_DEPTH
+            SHADOW_DEPTH,
+            SURFACE_MODE,
+            SAMPLE_SIZE,
+            ISO_LEVEL
         }
 
     }
@@ -51,7 +59,10 @@ public enum Config {
             K_SHIFT,
             POLAR_COORDINATES,
             INSIDE_OUT,
-            SHOW_ROUGH_MAP
+            SHOW_ROUGH_MAP,
+            THREAD_COUNT,
+            PRECISION,
+            RENDERER
         }
 
         public enum Processing {
@@ -72,6 +83,17 @@ public enum Config {
             IC,
             RC
         }
+
+        public enum Buddha {
+            SAMPLING,
+            SAMPLE_COUNT
+        }
+
+        public enum Heightmap {
+            LOAD,
+            SAVE,
+            SAVE_ENCODING
+        }
     }
 
     public enum InfiniteMachineConfig {
@@ -9,6 +9,7 @@ import eu.printingin3d.javascad.coords.Coords3d;
 import eu.printingin3d.javascad.coords.Dims3d;
 
 import javax.annotation.ParametersAreNonnullByDefault;
+import java.math.BigDecimal;
 import java.util.*;
 import java.util.logging.Logger;
 
@@ -106,6 +107,15 @@ public class ConfigReader {
         return Double.parseDouble(i.get());
     }
 
+    /** Every digit as written, for values a double cannot hold. */
+    public BigDecimal asBigDecimal(Enum config) {
+        var i = get(config);
+        if (i.isEmpty()) {
+            throw new RuntimeException("Missing value for: " + config);
+        }
+        return new BigDecimal(i.get().trim());
+    }
+
     public Dims3d asDims3d(Enum config) {
         var l = asImmutableList(config);
         if (3 != l.size()) {
@@ -171,10 +181,19 @@ public class ConfigReader {
         return Optional.of(builder.build());
     }
 
-    private Optional<String> get(Enum config) {
+    /** True where the config file has the name, even with an empty value. */
+    public boolean hasName(Enum config) {
+        return properties.containsKey(getKey(config));
+    }
+
+    private static String getKey(Enum config) {
         String key = config.getClass().getName() + "." + config;
         key = key.replace("$", ".");
-        key = key.substring(key.indexOf("Config"));
+        return key.substring(key.indexOf("Config"));
+    }
+
+    private Optional<String> get(Enum config) {
+        String key = getKey(config);
         if (!properties.containsKey(key)) {
             logger.severe("Missing config: " + key);
             throw new RuntimeException("Missing config: " + key);
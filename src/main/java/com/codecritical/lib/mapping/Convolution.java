@@ -0,0 +1,167 @@
+package com.codecritical.lib.mapping;
+
+/*
+ * Chisel3D, (C) 2024 Ben Clewett & Code Critical Ltd
+ */
+
+import javax.annotation.ParametersAreNonnullByDefault;
+import java.util.Arrays;
+
+/**
+ * Separable convolution of a map, held as a flat array indexed i + j * iSize, by a symmetric 1D kernel.
+ * <br>
+ * Cells outside the map count as zero.  Short kernels are applied directly, long kernels by FFT.
+ */
+@ParametersAreNonnullByDefault
+public class Convolution {
+
+    /** Kernels of this length or longer are applied by FFT. */
+    static final int FFT_KERNEL_SIZE = 64;
+
+    // Static Class
+    private Convolution() {}
+
+    /** Two passes of the same odd-length symmetric kernel, along i then along j. */
+    public static double[] convolveSeparable(double[] map, int iSize, int jSize, double[] kernel) {
+        double[] rows = convolveLines(map, iSize, jSize, 1, iSize, kernel);
+        return convolveLines(rows, jSize, iSize, iSize, 1, kernel);
+    }
+
+    /**
+     * Convolve each of the lines in the map.
+     *
+     * @param length     cells in a line
+     * @param lineCount  number of lines
+     * @param stride     index step between cells of a line
+     * @param lineStride index step between the first cells of adjacent lines
+     */
+    static double[] convolveLines(double[] map, int length, int lineCount, int stride, int lineStride, double[] kernel) {
+        return (kernel.length >= FFT_KERNEL_SIZE)
+                ? convolveLinesFft(map, length, lineCount, stride, lineStride, kernel)
+                : convolveLinesDirect(map, length, lineCount, stride, lineStride, kernel);
+    }
+
+    static double[] convolveLinesDirect(double[] map, int length, int lineCount, int stride, int lineStride, double[] kernel) {
+        double[] out = new double[map.length];
+        int r = kernel.length / 2;
+        for (int line = 0; line < lineCount; line++) {
+            int base = line * lineStride;
+            for (int n = 0; n < length; n++) {
+                int d0 = Math.max(-r, -n);
+                int d1 = Math.min(r, length - 1 - n);
+                double sum = 0;
+                for (int d = d0; d <= d1; d++) {
+                    sum += map[base + (n + d) * stride] * kernel[d + r];
+                }
+                out[base + n * stride] = sum;
+            }
+        }
+        return out;
+    }
+
+    /** Two real lines are packed into one complex FFT, one as the real and one as the imaginary part. */
+    static double[] convolveLinesFft(double[] map, int length, int lineCount, int stride, int lineStride, double[] kernel) {
+        double[] out = new double[map.length];
+        int r = kernel.length / 2;
+
+        // Large enough that the kernel never wraps onto the line.
+        int size = Integer.highestOneBit(length + kernel.length - 1);
+        if (size < length + kernel.length - 1) {
+            size <<= 1;
+        }
+
+        // Kernel spectrum, with the kernel centred on zero.
+        double[] kRe = new double[size];
+        double[] kIm = new double[size];
+        for (int d = -r; d <= r; d++) {
+            kRe[(d + size) % size] = kernel[d + r];
+        }
+        fft(kRe, kIm, false);
+
+        double[] re = new double[size];
+        double[] im = new double[size];
+        for (int line = 0; line < lineCount; line += 2) {
+            int baseA = line * lineStride;
+            int baseB = (line + 1) * lineStride;
+            boolean hasB = line + 1 < lineCount;
+
+            Arrays.fill(re, 0.0);
+            Arrays.fill(im, 0.0);
+            for (int n = 0; n < length; n++) {
+                re[n] = map[baseA + n * stride];
+                if (hasB) {
+                    im[n] = map[baseB + n * stride];
+                }
+            }
+
+            fft(re, im, false);
+            for (int f = 0; f < size; f++) {
+                double a = re[f] * kRe[f] - im[f] * kIm[f];
+                double b = re[f] * kIm[f] + im[f] * kRe[f];
+                re[f] = a;
+                im[f] = b;
+            }
+            fft(re, im, true);
+
+            for (int n = 0; n < length; n++) {
+                out[baseA + n * stride] = re[n];
+                if (hasB) {
+                    out[baseB + n * stride] = im[n];
+                }
+            }
+        }
+        return out;
+    }
+
+    /** In place radix-2 FFT.  The length must be a power of two.  The inverse is scaled by 1/length. */
+    static void fft(double[] re, double[] im, boolean inverse) {
+        int size = re.length;
+
+        // Bit reversal permutation
+        for (int n = 1, m = 0; n < size; n++) {
+            int bit = size >> 1;
+            for (; (m & bit) != 0; bit >>= 1) {
+                m ^= bit;
+            }
+            m ^= bit;
+            if (n < m) {
+                double t = re[n];
+                re[n] = re[m];
+                re[m] = t;
+                t = im[n];
+                im[n] = im[m];
+                im[m] = t;
+            }
+        }
+
+        for (int len = 2; len <= size; len <<= 1) {
+            double angle = 2 * Math.PI / len * (inverse ? 1 : -1);
+            double wRe = Math.cos(angle);
+            double wIm = Math.sin(angle);
+            int half = len / 2;
+            for (int start = 0; start < size; start += len) {
+                double uRe = 1.0, uIm = 0.0;
+                for (int k = 0; k < half; k++) {
+                    int a = start + k;
+                    int b = a + half;
+                    double tRe = re[b] * uRe - im[b] * uIm;
+                    double tIm = re[b] * uIm + im[b] * uRe;
+                    re[b] = re[a] - tRe;
+                    im[b] = im[a] - tIm;
+                    re[a] += tRe;
+                    im[a] += tIm;
+                    double nextRe = uRe * wRe - uIm * wIm;
+                    uIm = uRe * wIm + uIm * wRe;
+                    uRe = nextRe;
+                }
+            }
+        }
+
+        if (inverse) {
+            for (int n = 0; n < size; n++) {
+                re[n] /= size;
+                im[n] /= size;
+            }
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package com.codecritical.lib.mapping;
+
+/*
+ * Chisel3D, (C) 2024 Ben Clewett & Code Critical Ltd
+ */
+
+import javax.annotation.ParametersAreNonnullByDefault;
+
+/**
+ * Exact squared euclidean distance transform, in linear time.
+ * <br>
+ * For each cell, the squared distance to the nearest feature cell.  One pass along i then one along j, each taking
+ * the lower envelope of parabolas (Felzenszwalb and Huttenlocher).  Cells are indexed i + j * iSize, as MapArray.
+ */
+@ParametersAreNonnullByDefault
+public class DistanceTransform {
+
+    /** Distance when there is no feature. */
+    public static final double INFINITY = Double.POSITIVE_INFINITY;
+
+    // Static Class
+    private DistanceTransform() {}
+
+    public static double[] squared(boolean[] feature, int iSize, int jSize) {
+        double[] d = new double[iSize * jSize];
+        for (int n = 0; n < d.length; n++) {
+            d[n] = feature[n] ? 0.0 : INFINITY;
+        }
+
+        int length = Math.max(iSize, jSize);
+        double[] f = new double[length];
+        double[] out = new double[length];
+        int[] v = new int[length];
+        double[] z = new double[length + 1];
+
+        for (int j = 0; j < jSize; j++) {
+            transformLine(d, j * iSize, 1, iSize, f, out, v, z);
+        }
+        for (int i = 0; i < iSize; i++) {
+            transformLine(d, i, iSize, jSize, f, out, v, z);
+        }
+        return d;
+    }
+
+    /** One dimensional transform of a line in place, using the work arrays given. */
+    private static void transformLine(double[] d, int base, int stride, int length,
+                                      double[] f, double[] out, int[] v, double[] z) {
+        int k = -1;
+        for (int q = 0; q < length; q++) {
+            f[q] = d[base + q * stride];
+            if (f[q] == INFINITY) {
+                continue;
+            }
+            // Add the parabola rooted at q, removing those it hides.
+            double s = 0;
+            while (k >= 0) {
+                s = ((f[q] + (double) q * q) - (f[v[k]] + (double) v[k] * v[k])) / (2.0 * (q - v[k]));
+                if (s > z[k]) {
+                    break;
+                }
+                k--;
+            }
+            k++;
+            v[k] = q;
+            z[k] = (k == 0) ? Double.NEGATIVE_INFINITY : s;
+            z[k + 1] = Double.POSITIVE_INFINITY;
+        }
+
+        if (k < 0) {
+            // No feature on this line.
+            return;
+        }
+
+        int envelope = 0;
+        for (int q = 0; q < length; q++) {
+            while (z[envelope + 1] < q) {
+                envelope++;
+            }
+            double dq = q - v[envelope];
+            out[q] = dq * dq + f[v[envelope]];
+        }
+        for (int q = 0; q < length; q++) {
+            d[base + q * stride] = out[q];
+        }
+    }
+}
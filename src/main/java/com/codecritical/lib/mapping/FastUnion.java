@@ -6,31 +6,53 @@ package com.codecritical.lib.mapping;
 
 import com.google.common.base.Verify;
 import com.google.common.collect.ImmutableList;
+import eu.printingin3d.javascad.coords.Coords3d;
 import eu.printingin3d.javascad.vrl.CSG;
+import eu.printingin3d.javascad.vrl.Polygon;
 
-import javax.annotation.CheckForNull;
 import javax.annotation.ParametersAreNonnullByDefault;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Comparator;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
 import java.util.logging.Logger;
-import java.util.stream.Collectors;
 
+/**
+ * Unions parts as a tree of pairs.
+ * <br>
+ * Parts are first put in Morton order of their bounding box centres, so that pairs are near each other.  Where the
+ * bounding boxes of a pair do not meet the polygons are joined without a BSP union.
+ */
 @ParametersAreNonnullByDefault
 public class FastUnion {
     static final Logger logger = Logger.getLogger("");
 
-    private static final int UNION_CHUNK_SIZE = 2;
+    /** Bits per axis in the Morton code. */
+    private static final int MORTON_BITS = 10;
 
     // Static Class
     private FastUnion() {}
 
     /** Unions a large number of parts at some speed. */
     public static CSG fastUnion(Collection<CSG> parts) {
-        return fastUnion(parts.stream().collect(ImmutableList.toImmutableList()));
+        return fastUnion(parts, 1);
+    }
+
+    /** Unions a large number of parts at some speed, with up to parallelism unions at once. */
+    public static CSG fastUnion(Collection<CSG> parts, int parallelism) {
+        return fastUnion(parts.stream().collect(ImmutableList.toImmutableList()), parallelism);
     }
 
     /** Unions a large number of parts at some speed. */
     public static CSG fastUnion(ImmutableList<CSG> parts) {
+        return fastUnion(parts, 1);
+    }
+
+    /** Unions a large number of parts at some speed, with up to parallelism unions at once. */
+    public static CSG fastUnion(ImmutableList<CSG> parts, int parallelism) {
 
         Verify.verify(!parts.isEmpty(), "No parts.");
 
@@ -39,52 +61,148 @@ public class FastUnion {
 
         int i = 0;
 
-        var partList = parts.stream()
+        var partList = sortByLocality(parts.stream()
                 .filter(p -> !p.getPolygons().isEmpty())
-                .collect(ImmutableList.toImmutableList());
+                .map(p -> new Part(p, Box.of(p)))
+                .collect(ImmutableList.toImmutableList()));
 
         Verify.verify(!partList.isEmpty(), "No valid parts.");
 
-        do {
-            logger.info("Loop " + i + ", outstanding count: " + partList.size() + ", polygons: " +
-                    partList.stream().mapToInt(u -> u.getPolygons().size()).sum());
-            partList = union(partList);
-            i++;
-        } while (partList.size() > 1);
+        ForkJoinPool pool = new ForkJoinPool(Math.max(1, parallelism));
+        try {
+            do {
+                logger.info("Loop " + i + ", outstanding count: " + partList.size() + ", polygons: " +
+                        partList.stream().mapToInt(u -> u.csg.getPolygons().size()).sum());
+                partList = union(pool, partList);
+                i++;
+            } while (partList.size() > 1);
+        } finally {
+            pool.shutdown();
+        }
 
         logger.info("Loop " + i + ", outstanding count: " + partList.size() + ", polygons: " +
-                partList.stream().mapToInt(u -> u.getPolygons().size()).sum());
+                partList.stream().mapToInt(u -> u.csg.getPolygons().size()).sum());
 
-        return partList.get(0);
+        return partList.get(0).csg;
     }
 
-    /** Unions a list of parts into another list of half the size */
-    private static ImmutableList<CSG> union(List<CSG> parts) {
-
-        ImmutableList.Builder<CSG> newUnions = ImmutableList.builder();
-        @CheckForNull CSG union = null;
-        int count = 0;
+    /** Unions a list of parts into another list of half the size, each pair on the pool. */
+    private static ImmutableList<Part> union(ForkJoinPool pool, List<Part> parts) {
+
+        List<Callable<Part>> pairs = new ArrayList<>();
+        for (int n = 0; n < parts.size(); n += 2) {
+            Part part0 = parts.get(n);
+            if (n + 1 == parts.size()) {
+                pairs.add(() -> part0);
+            } else {
+                Part part1 = parts.get(n + 1);
+                pairs.add(() -> union(part0, part1));
+            }
+        }
 
-        for (var part : parts) {
-            union = (union == null) ? part : union.union(part);
-            count++;
-            if (count > 0 && union.getPolygons().isEmpty()) {
-                // Bug, sometimes small sized unions break the model.  Just loose them and hope it's not too bad.
-                union = part;
-                count = 0;
+        try {
+            ImmutableList.Builder<Part> newUnions = ImmutableList.builder();
+            for (var future : pool.invokeAll(pairs)) {
+                newUnions.add(future.get());
             }
+            return newUnions.build();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(ex);
+        } catch (ExecutionException ex) {
+            throw new RuntimeException(ex.getCause());
+        }
+    }
+
+    private static Part union(Part part0, Part part1) {
+        Box box = part0.box.add(part1.box);
+
+        if (part0.box.isDisjoint(part1.box)) {
+            // Nothing to cut, just join the polygons.
+            List<Polygon> polygons = new ArrayList<>(part0.csg.getPolygons());
+            polygons.addAll(part1.csg.getPolygons());
+            return new Part(new CSG(polygons), box);
+        }
 
-            if (count == UNION_CHUNK_SIZE) {
-                newUnions.add(union);
-                union = null;
-                count = 0;
+        CSG union = part0.csg.union(part1.csg);
+        if (union.getPolygons().isEmpty()) {
+            // Bug, sometimes small sized unions break the model.  Just loose them and hope it's not too bad.
+            return part1;
+        }
+        return new Part(union, box);
+    }
+
+    //region Spatial ordering
+
+    private static ImmutableList<Part> sortByLocality(ImmutableList<Part> parts) {
+        if (parts.size() < 3) {
+            return parts;
+        }
+        Box all = parts.stream()
+                .map(Part::box)
+                .reduce(Box::add)
+                .orElseThrow();
+        return parts.stream()
+                .sorted(Comparator.comparingLong(p -> mortonCode(p.box, all)))
+                .collect(ImmutableList.toImmutableList());
+    }
+
+    /** Interleaved bits of the box centre, as a fraction of all. */
+    private static long mortonCode(Box box, Box all) {
+        long x = quantise((box.x0 + box.x1) / 2, all.x0, all.x1);
+        long y = quantise((box.y0 + box.y1) / 2, all.y0, all.y1);
+        long z = quantise((box.z0 + box.z1) / 2, all.z0, all.z1);
+        long code = 0;
+        for (int bit = 0; bit < MORTON_BITS; bit++) {
+            code |= ((x >> bit) & 1L) << (3 * bit);
+            code |= ((y >> bit) & 1L) << (3 * bit + 1);
+            code |= ((z >> bit) & 1L) << (3 * bit + 2);
+        }
+        return code;
+    }
+
+    private static long quantise(double v, double min, double max) {
+        long steps = (1L << MORTON_BITS) - 1;
+        return (max > min) ? Math.round((v - min) / (max - min) * steps) : 0;
+    }
+
+    //endregion
+
+    private record Part(CSG csg, Box box) {}
+
+    /** Axis aligned bounding box. */
+    private record Box(double x0, double y0, double z0, double x1, double y1, double z1) {
+
+        static Box of(CSG csg) {
+            double x0, y0, z0, x1, y1, z1;
+            x0 = y0 = z0 = Double.POSITIVE_INFINITY;
+            x1 = y1 = z1 = Double.NEGATIVE_INFINITY;
+            for (var polygon : csg.getPolygons()) {
+                for (var facet : polygon.toFacets()) {
+                    for (Coords3d c : facet.getTriangle().getPoints()) {
+                        x0 = Math.min(x0, c.getX());
+                        y0 = Math.min(y0, c.getY());
+                        z0 = Math.min(z0, c.getZ());
+                        x1 = Math.max(x1, c.getX());
+                        y1 = Math.max(y1, c.getY());
+                        z1 = Math.max(z1, c.getZ());
+                    }
+                }
             }
+            return new Box(x0, y0, z0, x1, y1, z1);
         }
 
-        if (union != null) {
-            newUnions.add(union);
+        Box add(Box b) {
+            return new Box(
+                    Math.min(x0, b.x0), Math.min(y0, b.y0), Math.min(z0, b.z0),
+                    Math.max(x1, b.x1), Math.max(y1, b.y1), Math.max(z1, b.z1));
         }
 
-        return newUnions.build();
+        /** Strictly apart, touching boxes still need a union to merge shared faces. */
+        boolean isDisjoint(Box b) {
+            return x1 < b.x0 || b.x1 < x0
+                    || y1 < b.y0 || b.y1 < y0
+                    || z1 < b.z0 || b.z1 < z0;
+        }
     }
 }
@@ -8,9 +8,9 @@ import com.google.common.annotations.VisibleForTesting;
 
 import javax.annotation.CheckForNull;
 import javax.annotation.ParametersAreNonnullByDefault;
+import java.util.Arrays;
 import java.util.Optional;
 import java.util.OptionalDouble;
-import java.util.stream.IntStream;
 
 @ParametersAreNonnullByDefault
 public class Gaussian {
@@ -31,115 +31,211 @@ public class Gaussian {
             return map;
         }
 
-        // Normalise for the size of the map
-        double radius = gaussianRadius.getAsDouble() * Math.sqrt(map.getISize() * map.getISize() + map.getJSize() * map.getJSize());
+        double radius = getRadius(gaussianRadius.getAsDouble(), map.getISize(), map.getJSize());
+        double[] kernel = createGaussianKernel(radius);
 
-        return getGaussianMapped(map, radius, plateauSet, plateauTextureMap, smoothTextureHollowInside);
+        boolean[] keep = getUnsmoothedCells(map, kernel.length / 2, plateauSet, plateauTextureMap, smoothTextureHollowInside);
+        double[] out = smoothRows(map.doubleStream().toArray(), 0, map.getISize(), map.getJSize(), kernel, keep,
+                0, map.getJSize());
+
+        return new MapArray(map.getISize(), map.getJSize(), Arrays.stream(out));
     }
 
-    private static IMapArray getGaussianMapped(
-            IMapArray map,
-            double radiusConst,
-            @CheckForNull PlateauCollections plateauSet,
-            Optional<IMapArray> plateauTextureMap,
-            boolean smoothTextureHollowInside
+    /** Rows either side of a tile which applyToRows() reads, for a map of iSize by jSize. */
+    public static int getHalo(double gaussianRadius, int iSize, int jSize) {
+        return createGaussianKernel(getRadius(gaussianRadius, iSize, jSize)).length / 2;
+    }
+
+    /**
+     * As applyToMap() without plateaus, for rows jFrom to jTo - 1 of a map of iSize by jSize.
+     * <br>
+     * The region holds the rows of the map from jRegion, and must reach getHalo() rows either side of the tile, or
+     * the edge of the map.  Tiles then join without seams.
+     */
+    public static double[] applyToRows(
+            double[] region,
+            int jRegion,
+            int iSize,
+            int jSize,
+            double gaussianRadius,
+            int jFrom,
+            int jTo
     ) {
+        double[] kernel = createGaussianKernel(getRadius(gaussianRadius, iSize, jSize));
+        int halo = kernel.length / 2;
+        int regionRows = region.length / iSize;
+        if (jRegion > Math.max(0, jFrom - halo) || jRegion + regionRows < Math.min(jSize, jTo + halo)) {
+            throw new RuntimeException("Region of rows " + jRegion + " to " + (jRegion + regionRows)
+                    + " doesn't cover the halo of rows " + jFrom + " to " + jTo);
+        }
+        return smoothRows(region, jRegion, iSize, jSize, kernel, new boolean[region.length], jFrom, jTo);
+    }
 
-        MapArray newMap = new MapArray(map);
+    /** Normalised for the size of the map. */
+    private static double getRadius(double gaussianRadius, int iSize, int jSize) {
+        return gaussianRadius * Math.sqrt((double) iSize * iSize + (double) jSize * jSize);
+    }
 
-        var gaussianMap = createGaussianMap(radiusConst);
+    /**
+     * Rows jFrom to jTo - 1 of the smoothed map, from a region of it holding the rows from jRegion.
+     * <br>
+     * The 2D gaussian is separable, so is applied as two 1D passes.  Cells outside the map take the mean of
+     * the in-range cells under the kernel, added as (mean * kernel weight outside the map).
+     */
+    private static double[] smoothRows(
+            double[] region,
+            int jRegion,
+            int iSize,
+            int jSize,
+            double[] kernel,
+            boolean[] keep,
+            int jFrom,
+            int jTo
+    ) {
+        int radius = kernel.length / 2;
+        int regionRows = region.length / iSize;
 
-        map.streamPoints().forEach(p -> newMap.set(p.i, p.j,
-                sumGaussian(
-                        map,
-                        p,
-                        gaussianMap,
-                        plateauSet,
-                        plateauTextureMap,
-                        smoothTextureHollowInside))
-        );
+        double[] convolved = Convolution.convolveSeparable(region, iSize, regionRows, kernel);
+        double[] iWeight = getInRangeWeights(kernel, iSize);
+        double[] jWeight = getInRangeWeights(kernel, jSize);
+        SummedArea sums = new SummedArea(region, iSize, regionRows);
 
-        return newMap;
+        double[] out = new double[(jTo - jFrom) * iSize];
+        for (int j = jFrom; j < jTo; j++) {
+            int j0 = Math.max(0, j - radius) - jRegion;
+            int j1 = Math.min(jSize - 1, j + radius) - jRegion;
+            for (int i = 0; i < iSize; i++) {
+                int n = i + (j - jRegion) * iSize;
+                int m = i + (j - jFrom) * iSize;
+                if (keep[n]) {
+                    out[m] = region[n];
+                    continue;
+                }
+                int i0 = Math.max(0, i - radius);
+                int i1 = Math.min(iSize - 1, i + radius);
+                double mean = sums.sum(i0, i1, j0, j1) / ((i1 - i0 + 1) * (j1 - j0 + 1));
+                out[m] = convolved[n] + mean * (1.0 - iWeight[i] * jWeight[j]);
+            }
+        }
+        return out;
     }
 
-    private static double sumGaussian(
+    /** Plateau cells keep their height, unless they are on the edge of a hollow that is to be smoothed. */
+    private static boolean[] getUnsmoothedCells(
             IMapArray map,
-            MapArray.Point p,
-            IMapArray gaussianMap,
+            int radius,
             @CheckForNull PlateauCollections plateauSet,
             Optional<IMapArray> plateauTextureMap,
-            boolean smoothTextureHollowInside) {
-
-        int radius = gaussianMap.getISize() / 2;
-
-        boolean smoothHollowEdge =
-                smoothTextureHollowInside &&
-                        onHollowEdge(p, plateauSet, radius, plateauTextureMap);
-
-        if (!smoothHollowEdge && plateauSet != null && plateauSet.isPlateau(p)) {
-            return map.get(p);
+            boolean smoothTextureHollowInside
+    ) {
+        int iSize = map.getISize();
+        int jSize = map.getJSize();
+        boolean[] keep = new boolean[map.size()];
+        if (plateauSet == null) {
+            return keep;
         }
 
-        double mean = getMean(p, map, radius);
+        boolean[] plateau = new boolean[map.size()];
+        for (int j = 0; j < jSize; j++) {
+            for (int i = 0; i < iSize; i++) {
+                plateau[i + j * iSize] = plateauSet.isPlateau(i, j);
+            }
+        }
 
-        return getGaussianSum(map, p, gaussianMap, radius, mean);
-    }
+        if (!smoothTextureHollowInside || plateauTextureMap.isEmpty()) {
+            return plateau;
+        }
 
-    private static boolean onHollowEdge(MapArray.Point p, @CheckForNull PlateauCollections plateauSet, int r, Optional<IMapArray> plateauTextureMap) {
-        if (plateauSet == null || plateauTextureMap.isEmpty()) {
-            return false;
+        // On a hollow edge when the kernel covers both high and low plateau texture.
+        double[] high = new double[map.size()];
+        double[] low = new double[map.size()];
+        for (int n = 0; n < plateau.length; n++) {
+            if (plateau[n]) {
+                if (1.0 == plateauTextureMap.get().get(n)) {
+                    high[n] = 1.0;
+                } else {
+                    low[n] = 1.0;
+                }
+            }
         }
+        SummedArea highSums = new SummedArea(high, iSize, jSize);
+        SummedArea lowSums = new SummedArea(low, iSize, jSize);
 
-        boolean onHollowHigh = false, onHollowLow = false;
-
-        for (int i = -r; i < r + 1; i++) {
-            for (int j = -r; j < r + 1; j++) {
-                if (plateauSet.isPlateau(i + p.i, j + p.j)) {
-                    if (1.0 == plateauTextureMap.get().get(i + p.i, j + p.j)) {
-                        onHollowHigh = true;
-                    } else {
-                        onHollowLow = true;
-                    }
-                    if (onHollowLow && onHollowHigh) {
-                        return true;
-                    }
+        for (int j = 0; j < jSize; j++) {
+            int j0 = Math.max(0, j - radius);
+            int j1 = Math.min(jSize - 1, j + radius);
+            for (int i = 0; i < iSize; i++) {
+                int n = i + j * iSize;
+                if (!plateau[n]) {
+                    continue;
                 }
+                int i0 = Math.max(0, i - radius);
+                int i1 = Math.min(iSize - 1, i + radius);
+                boolean onHollowEdge = highSums.sum(i0, i1, j0, j1) > 0.0 && lowSums.sum(i0, i1, j0, j1) > 0.0;
+                keep[n] = !onHollowEdge;
             }
         }
-        return false;
+        return keep;
     }
 
-    private static double getGaussianSum(IMapArray map, MapArray.Point p, IMapArray gaussianMap, int r, double mean) {
-        return IntStream.range(-r, r + 1)
-                .mapToDouble(i -> IntStream.range(-r, r + 1)
-                        .mapToDouble(
-                                j -> map.getIfInRange(i + p.i, j + p.j).orElse(mean)
-                                        * gaussianMap.get(i + r, j + r)
-                        ).sum()
-                ).sum();
+    /** For each cell in a line, the total kernel weight which falls inside the line. */
+    private static double[] getInRangeWeights(double[] kernel, int size) {
+        int r = kernel.length / 2;
+        double[] weights = new double[size];
+        for (int n = 0; n < size; n++) {
+            for (int d = Math.max(-r, -n); d <= Math.min(r, size - 1 - n); d++) {
+                weights[n] += kernel[d + r];
+            }
+        }
+        return weights;
     }
 
-    private static double getMean(MapArray.Point p, IMapArray map, int gaussianMapRadius) {
-        double mean = 0;
-        int count = 0;
-        for (int i = p.i - gaussianMapRadius; i <= p.i + gaussianMapRadius; i++) {
-            for (int j = p.j - gaussianMapRadius; j <= p.j + gaussianMapRadius; j++) {
-                var z = map.getIfInRange(i, j);
-                if (z.isPresent()) {
-                    mean += z.getAsDouble();
-                    count++;
+    /** Summed area table, for the sum of any rectangle in constant time. */
+    private static class SummedArea {
+        private final double[] table;
+        private final int width;
+
+        SummedArea(double[] values, int iSize, int jSize) {
+            this.width = iSize + 1;
+            this.table = new double[width * (jSize + 1)];
+            for (int j = 0; j < jSize; j++) {
+                double row = 0;
+                for (int i = 0; i < iSize; i++) {
+                    row += values[i + j * iSize];
+                    table[(i + 1) + (j + 1) * width] = table[(i + 1) + j * width] + row;
                 }
             }
         }
-        if (count != 0) {
-            mean /= count;
+
+        /** Sum of the cells i0..i1, j0..j1 inclusive. */
+        double sum(int i0, int i1, int j0, int j1) {
+            return table[(i1 + 1) + (j1 + 1) * width]
+                    - table[i0 + (j1 + 1) * width]
+                    - table[(i1 + 1) + j0 * width]
+                    + table[i0 + j0 * width];
         }
-        return mean;
     }
 
+    /** One axis of the gaussian map, normalised so total == 1. */
     @VisibleForTesting
-    static IMapArray createGaussianMap(double radiusConst) {
+    static double[] createGaussianKernel(double radiusConst) {
+
+        int mapSize = getGaussianMapSize(radiusConst);
+        int mapMiddle = mapSize / 2;
+
+        double[] kernel = new double[mapSize];
+        double sum = 0;
+        for (int n = 0; n < mapSize; n++) {
+            kernel[n] = gaussianFunction(Math.abs(n - mapMiddle) / radiusConst);
+            sum += kernel[n];
+        }
+        for (int n = 0; n < mapSize; n++) {
+            kernel[n] /= sum;
+        }
+        return kernel;
+    }
 
+    private static int getGaussianMapSize(double radiusConst) {
         int mapSize = (int)(radiusConst * 5);
         if (mapSize < 3) {
             mapSize = 3;
@@ -149,6 +245,13 @@ public class Gaussian {
         if (mapSize % 2 == 0) {
             mapSize += 1;
         }
+        return mapSize;
+    }
+
+    @VisibleForTesting
+    static IMapArray createGaussianMap(double radiusConst) {
+
+        int mapSize = getGaussianMapSize(radiusConst);
         int mapMiddle = (int)(mapSize / 2.0);
 
         MapArray map = new MapArray(mapSize, mapSize);
@@ -158,7 +261,7 @@ public class Gaussian {
         });
 
         // Normalise so total == 1
-        var sum = map.stream().mapToDouble(Double::doubleValue).sum();
+        var sum = map.doubleStream().sum();
         MapArray mapN = new MapArray(mapSize, mapSize);
         map.streamPoints().forEach(p -> mapN.set(p.i, p.j, p.z / sum));
 
@@ -0,0 +1,336 @@
+package com.codecritical.lib.mapping;
+
+/*
+ * Chisel3D, (C) 2024 Ben Clewett & Code Critical Ltd
+ */
+
+import com.google.common.base.MoreObjects;
+
+import javax.annotation.ParametersAreNonnullByDefault;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Binary file of a map of heights, all little-endian:
+ * <pre>
+ *   0  "CHISELHM"        magic
+ *   8  int version       1
+ *  12  int iSize
+ *  16  int jSize
+ *  20  int valueBytes    8 for double, 4 for float
+ *  24  int tileRows      0 for raw values, otherwise rows per deflated tile
+ *  28  int maxIterations 0 where unknown
+ *  32  double i0, i1, j0, j1, the window of the fractal, NaN where unknown
+ *  64  values, index i + j * iSize, or for deflated tiles: the int length then bytes of each tile
+ * </pre>
+ * Raw files are memory mapped when read, so a large map isn't copied onto the heap.  Maps too large to build in
+ * memory are written a band of rows at a time by a Writer.
+ */
+@ParametersAreNonnullByDefault
+public class HeightmapFile {
+
+    private static final byte[] MAGIC = "CHISELHM".getBytes(StandardCharsets.US_ASCII);
+    private static final int VERSION = 1;
+    static final int HEADER_BYTES = 64;
+
+    /** Rows in each deflated tile. */
+    static final int TILE_ROWS = 64;
+
+    public enum Encoding {
+        DOUBLE, FLOAT, DOUBLE_DEFLATE, FLOAT_DEFLATE;
+
+        int valueBytes() {
+            return (this == DOUBLE || this == DOUBLE_DEFLATE) ? Double.BYTES : Float.BYTES;
+        }
+
+        boolean isDeflated() {
+            return this == DOUBLE_DEFLATE || this == FLOAT_DEFLATE;
+        }
+    }
+
+    /** What the map is of, as far as known. */
+    public static class Header {
+        public final int iSize, jSize, maxIterations;
+        public final double i0, i1, j0, j1;
+
+        public Header(int iSize, int jSize, int maxIterations, double i0, double i1, double j0, double j1) {
+            this.iSize = iSize;
+            this.jSize = jSize;
+            this.maxIterations = maxIterations;
+            this.i0 = i0;
+            this.i1 = i1;
+            this.j0 = j0;
+            this.j1 = j1;
+        }
+
+        /** Size alone, for maps not straight from a fractal. */
+        public static Header of(IMapArray map) {
+            return new Header(map.getISize(), map.getJSize(), 0, Double.NaN, Double.NaN, Double.NaN, Double.NaN);
+        }
+
+        @Override
+        public String toString() {
+            return MoreObjects.toStringHelper(this)
+                    .add("iSize", iSize)
+                    .add("jSize", jSize)
+                    .add("maxIterations", maxIterations)
+                    .add("i0", i0)
+                    .add("i1", i1)
+                    .add("j0", j0)
+                    .add("j1", j1)
+                    .toString();
+        }
+    }
+
+    // Static Class
+    private HeightmapFile() {}
+
+    public static void write(Path path, Header header, IMapArray map, Encoding encoding) {
+        if (header.iSize != map.getISize() || header.jSize != map.getJSize()) {
+            throw new RuntimeException("Header " + header + " doesn't match map " + map);
+        }
+        try (Writer writer = new Writer(path, header, encoding)) {
+            writer.writeRows(map);
+        }
+    }
+
+    /**
+     * Writes a map a band of rows at a time, top to bottom, for maps built in tiles.  Only a tile of rows is held
+     * before it is written.
+     */
+    public static class Writer implements AutoCloseable {
+        private final FileChannel channel;
+        private final Header header;
+        private final Encoding encoding;
+        private final int rowsPerTile;
+        private final ByteBuffer tile;
+        private final Deflater deflater = new Deflater();
+        private int rowsInTile = 0, rowsWritten = 0;
+
+        public Writer(Path path, Header header, Encoding encoding) {
+            this.header = header;
+            this.encoding = encoding;
+            // A tile at a time, raw or deflated.
+            this.rowsPerTile = encoding.isDeflated()
+                    ? TILE_ROWS
+                    : Math.max(1, (1 << 20) / Math.max(1, header.iSize));
+            this.tile = ByteBuffer.allocate(rowsPerTile * header.iSize * encoding.valueBytes())
+                    .order(ByteOrder.LITTLE_ENDIAN);
+
+            try {
+                this.channel = FileChannel.open(path,
+                        StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+
+                ByteBuffer head = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+                head.put(MAGIC)
+                        .putInt(VERSION)
+                        .putInt(header.iSize)
+                        .putInt(header.jSize)
+                        .putInt(encoding.valueBytes())
+                        .putInt(encoding.isDeflated() ? TILE_ROWS : 0)
+                        .putInt(header.maxIterations)
+                        .putDouble(header.i0)
+                        .putDouble(header.i1)
+                        .putDouble(header.j0)
+                        .putDouble(header.j1);
+                writeFully(channel, head.flip());
+            } catch (IOException ex) {
+                deflater.end();
+                throw new RuntimeException(ex);
+            }
+        }
+
+        /** All rows of the map, which follow those already written. */
+        public void writeRows(IMapArray map) {
+            if (map.getISize() != header.iSize || rowsWritten + map.getJSize() > header.jSize) {
+                throw new RuntimeException("Rows " + map + " don't fit header " + header);
+            }
+            for (int j = 0; j < map.getJSize(); j++) {
+                for (int i = 0; i < header.iSize; i++) {
+                    if (encoding.valueBytes() == Double.BYTES) {
+                        tile.putDouble(map.get(i, j));
+                    } else {
+                        tile.putFloat((float) map.get(i, j));
+                    }
+                }
+                rowsWritten++;
+                if (++rowsInTile == rowsPerTile) {
+                    flush();
+                }
+            }
+        }
+
+        private void flush() {
+            if (rowsInTile == 0) {
+                return;
+            }
+            tile.flip();
+            try {
+                if (encoding.isDeflated()) {
+                    byte[] compressed = deflate(deflater, tile);
+                    writeFully(channel, ByteBuffer.allocate(Integer.BYTES).order(ByteOrder.LITTLE_ENDIAN)
+                            .putInt(compressed.length).flip());
+                    writeFully(channel, ByteBuffer.wrap(compressed));
+                } else {
+                    writeFully(channel, tile);
+                }
+            } catch (IOException ex) {
+                throw new RuntimeException(ex);
+            }
+            tile.clear();
+            rowsInTile = 0;
+        }
+
+        @Override
+        public void close() {
+            try {
+                flush();
+                if (rowsWritten != header.jSize) {
+                    throw new RuntimeException("Heightmap closed after " + rowsWritten + " of " + header.jSize + " rows.");
+                }
+            } finally {
+                deflater.end();
+                try {
+                    channel.close();
+                } catch (IOException ex) {
+                    throw new RuntimeException(ex);
+                }
+            }
+        }
+    }
+
+    public static Header readHeader(Path path) {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return readHeader(path, readFully(channel, HEADER_BYTES));
+        } catch (IOException ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+
+    /** The map, memory mapped where the values are raw, otherwise inflated onto the heap. */
+    public static IMapArray read(Path path) {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer head = readFully(channel, HEADER_BYTES);
+            Header header = readHeader(path, head);
+            int valueBytes = head.getInt(20);
+            int tileRows = head.getInt(24);
+            if (valueBytes != Double.BYTES && valueBytes != Float.BYTES) {
+                throw new RuntimeException("Unknown value size " + valueBytes + " in " + path);
+            }
+
+            if ((long) header.iSize * header.jSize > Integer.MAX_VALUE) {
+                throw new RuntimeException("Heightmap has too many cells: " + header);
+            }
+
+            long payloadBytes = (long) header.iSize * header.jSize * valueBytes;
+            if (tileRows == 0) {
+                if (channel.size() < HEADER_BYTES + payloadBytes) {
+                    throw new RuntimeException("Heightmap is cut short: " + path);
+                }
+                // A buffer can't map 2 GB or more, so large maps are mapped in segments of whole rows.
+                int rowBytes = header.iSize * valueBytes;
+                int segmentRows = Math.max(1, Integer.MAX_VALUE / rowBytes);
+                ByteBuffer[] segments = new ByteBuffer[(header.jSize + segmentRows - 1) / segmentRows];
+                for (int s = 0; s < segments.length; s++) {
+                    int rows = Math.min(segmentRows, header.jSize - s * segmentRows);
+                    segments[s] = channel.map(FileChannel.MapMode.READ_ONLY,
+                            HEADER_BYTES + (long) s * segmentRows * rowBytes, (long) rows * rowBytes);
+                }
+                return new MappedMapArray(header.iSize, header.jSize, segments, segmentRows, valueBytes);
+            }
+
+            double[] values = new double[header.iSize * header.jSize];
+            Inflater inflater = new Inflater();
+            try {
+                for (int j0 = 0; j0 < header.jSize; j0 += tileRows) {
+                    int j1 = Math.min(header.jSize, j0 + tileRows);
+                    int length = readFully(channel, Integer.BYTES).getInt();
+                    byte[] compressed = new byte[length];
+                    readFully(channel, length).get(compressed);
+                    ByteBuffer tile = inflate(inflater, compressed, (j1 - j0) * header.iSize * valueBytes);
+                    int offset = j0 * header.iSize;
+                    for (int n = 0; n < (j1 - j0) * header.iSize; n++) {
+                        values[offset + n] = (valueBytes == Double.BYTES) ? tile.getDouble() : tile.getFloat();
+                    }
+                }
+            } finally {
+                inflater.end();
+            }
+            return new MapArray(header.iSize, header.jSize, Arrays.stream(values));
+        } catch (IOException ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+
+    private static Header readHeader(Path path, ByteBuffer head) {
+        byte[] magic = new byte[MAGIC.length];
+        head.get(0, magic);
+        if (!Arrays.equals(magic, MAGIC) || head.getInt(8) != VERSION) {
+            throw new RuntimeException("Not a version " + VERSION + " heightmap: " + path);
+        }
+        return new Header(head.getInt(12), head.getInt(16), head.getInt(28),
+                head.getDouble(32), head.getDouble(40), head.getDouble(48), head.getDouble(56));
+    }
+
+    private static byte[] deflate(Deflater deflater, ByteBuffer tile) {
+        deflater.reset();
+        deflater.setInput(tile.array(), 0, tile.limit());
+        deflater.finish();
+        byte[] buffer = new byte[tile.limit() + 64];
+        int length = 0;
+        while (!deflater.finished()) {
+            if (length == buffer.length) {
+                buffer = Arrays.copyOf(buffer, buffer.length * 2);
+            }
+            length += deflater.deflate(buffer, length, buffer.length - length);
+        }
+        return Arrays.copyOf(buffer, length);
+    }
+
+    private static ByteBuffer inflate(Inflater inflater, byte[] compressed, int bytes) {
+        inflater.reset();
+        inflater.setInput(compressed);
+        byte[] tile = new byte[bytes];
+        try {
+            int length = 0;
+            while (length < bytes && !inflater.finished()) {
+                int n = inflater.inflate(tile, length, bytes - length);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                length += n;
+            }
+            if (length != bytes) {
+                throw new RuntimeException("Heightmap tile is cut short.");
+            }
+        } catch (DataFormatException ex) {
+            throw new RuntimeException(ex);
+        }
+        return ByteBuffer.wrap(tile).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private static ByteBuffer readFully(FileChannel channel, int bytes) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(bytes).order(ByteOrder.LITTLE_ENDIAN);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                throw new IOException("Heightmap is cut short.");
+            }
+        }
+        return buffer.flip();
+    }
+}
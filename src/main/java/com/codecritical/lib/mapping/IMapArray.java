@@ -6,11 +6,15 @@ package com.codecritical.lib.mapping;
 
 import javax.annotation.ParametersAreNonnullByDefault;
 import java.util.OptionalDouble;
+import java.util.stream.DoubleStream;
 import java.util.stream.Stream;
 
 @ParametersAreNonnullByDefault
 public interface IMapArray {
     double get(int i, int j);
+    /** Get by index, where index = indexOf(i, j). */
+    double get(int index);
+    int indexOf(int i, int j);
     MapArray.Point getPoint(int i, int j);
     double get(MapArray.Point p);
     boolean isNull(int i, int j);
@@ -24,6 +28,8 @@ public interface IMapArray {
 
     Stream<Double> stream();
 
+    DoubleStream doubleStream();
+
     Stream<MapArray.Point> streamPoints();
 
     OptionalDouble getIfInRange(int i, int j);
@@ -10,26 +10,28 @@ import com.google.common.hash.Hashing;
 
 import javax.annotation.CheckForNull;
 import javax.annotation.ParametersAreNonnullByDefault;
-import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.List;
 import java.util.Objects;
 import java.util.OptionalDouble;
-import java.util.function.Consumer;
-import java.util.function.Function;
+import java.util.function.DoubleUnaryOperator;
+import java.util.stream.DoubleStream;
+import java.util.stream.IntStream;
 import java.util.stream.Stream;
 
+/**
+ * A 2D map of heights held in a primitive array.  A missing (null) height is held as NaN.
+ */
 @ParametersAreNonnullByDefault
 public class MapArray implements IMapArray {
-    private final Double[] mapArray;
+    private final double[] mapArray;
     private final int iSize;
     private final int jSize;
 
     public MapArray(int iSize, int jSize) {
-        this(iSize, jSize, null);
+        this(iSize, jSize, (DoubleStream)null);
     }
 
-    public MapArray(int iSize, int jSize, @CheckForNull Stream<Double> map) {
+    public MapArray(int iSize, int jSize, @CheckForNull DoubleStream map) {
         this.iSize = iSize;
         if (this.iSize < 2) {
             throw new RuntimeException("xRange must be 2 or above.");
@@ -39,25 +41,38 @@ public class MapArray implements IMapArray {
             throw new RuntimeException("yRange must be 2 or above");
         }
         this.mapArray = (map == null)
-                ? new Double[iSize * jSize]
-                : map.toArray(Double[]::new);
-        for (int n = 0; n < mapArray.length; n++) {
-            if (mapArray[n] == null) {
-                mapArray[n] = 0.0;
-            }
-        }
+                ? new double[iSize * jSize]
+                : map.toArray();
+    }
+
+    /** Nulls in the stream are set to 0.0. */
+    public MapArray(int iSize, int jSize, @CheckForNull Stream<Double> map) {
+        this(iSize, jSize, (map == null)
+                ? null
+                : map.mapToDouble(z -> (z == null) ? 0.0 : z));
     }
 
     public MapArray(IMapArray map) {
         this.iSize = map.getISize();
         this.jSize = map.getJSize();
-        this.mapArray = map.stream().toArray(Double[]::new);
+        this.mapArray = map.doubleStream().toArray();
     }
 
     @Override
     public double get(int i, int j) {
         return mapArray[i + j * iSize];
     }
+
+    @Override
+    public double get(int index) {
+        return mapArray[index];
+    }
+
+    @Override
+    public int indexOf(int i, int j) {
+        return i + j * iSize;
+    }
+
     @Override
     public MapArray.Point getPoint(int i, int j) {
         return new Point(i, j, mapArray[i + j * iSize]);
@@ -65,7 +80,7 @@ public class MapArray implements IMapArray {
 
     @Override
     public boolean isNull(int i, int j) {
-        return (mapArray[i + j * iSize] == null);
+        return Double.isNaN(mapArray[i + j * iSize]);
     }
 
     public double get(Point p) {
@@ -75,10 +90,20 @@ public class MapArray implements IMapArray {
     public void set(Point p) {
         set(p.i, p.j, p.z);
     }
-    public void set(int i, int j, @CheckForNull Double z) {
+
+    public void set(int i, int j, double z) {
         mapArray[i + j * iSize] = z;
     }
 
+    /** A null z removes the point from the map. */
+    public void set(int i, int j, @CheckForNull Double z) {
+        mapArray[i + j * iSize] = (z == null) ? Double.NaN : z;
+    }
+
+    public void set(int index, double z) {
+        mapArray[index] = z;
+    }
+
     public int getISize() {
         return iSize;
     }
@@ -93,38 +118,38 @@ public class MapArray implements IMapArray {
 
     @Override
     public Stream<Double> stream() {
+        return Arrays.stream(mapArray).boxed();
+    }
+
+    @Override
+    public DoubleStream doubleStream() {
         return Arrays.stream(mapArray);
     }
 
+    /** Points are created as the stream is read, in the order i then j. */
     @Override
     public Stream<Point> streamPoints() {
-        List<Point> l = new ArrayList<>();
-        for (int i = 0; i < iSize; i++) {
-            for (int j = 0; j < jSize; j++) {
-                l.add(new Point(i, j, get(i, j)));
-            }
-        }
-        return l.stream();
+        return IntStream.range(0, mapArray.length)
+                .mapToObj(n -> getPoint(n / jSize, n % jSize));
     }
 
     public double getMax() {
-        return Arrays.stream(mapArray)
-                .filter(Objects::nonNull)
-                .max(Double::compareTo)
+        return doubleStream()
+                .filter(z -> !Double.isNaN(z))
+                .max()
                 .orElse(0.0);
     }
 
     public double getMin() {
-        return Arrays.stream(mapArray)
-                .filter(Objects::nonNull)
-                .min(Double::compareTo)
+        return doubleStream()
+                .filter(z -> !Double.isNaN(z))
+                .min()
                 .orElse(0.0);
     }
 
     public double getMean() {
-        return Arrays.stream(mapArray)
-                .filter(Objects::nonNull)
-                .mapToDouble(Double::doubleValue)
+        return doubleStream()
+                .filter(z -> !Double.isNaN(z))
                 .summaryStatistics()
                 .getAverage();
     }
@@ -134,9 +159,9 @@ public class MapArray implements IMapArray {
         return this;
     }
 
-    public void map(int i, int j, Function<Double, Double> action) {
+    public void map(int i, int j, DoubleUnaryOperator action) {
         int z = i + j * iSize;
-        mapArray[z] = action.apply(mapArray[z]);
+        mapArray[z] = action.applyAsDouble(mapArray[z]);
     }
 
     public static class Point {
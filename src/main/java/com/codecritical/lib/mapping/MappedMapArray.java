@@ -0,0 +1,153 @@
+package com.codecritical.lib.mapping;
+
+/*
+ * Chisel3D, (C) 2024 Ben Clewett & Code Critical Ltd
+ */
+
+import com.google.common.base.MoreObjects;
+
+import javax.annotation.ParametersAreNonnullByDefault;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.OptionalDouble;
+import java.util.stream.DoubleStream;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * A read only map of heights held in a file, as written by HeightmapFile, and paged in by the operating system as
+ * it is read.  Values are little-endian doubles or floats, in segments of whole rows, as a buffer can't map 2 GB.
+ */
+@ParametersAreNonnullByDefault
+public class MappedMapArray implements IMapArray {
+    private final ByteBuffer[] segments;
+    private final int iSize;
+    private final int jSize;
+    private final int segmentSize;
+    private final int valueBytes;
+
+    /** Each segment holds segmentRows whole rows, the last maybe fewer. */
+    MappedMapArray(int iSize, int jSize, ByteBuffer[] segments, int segmentRows, int valueBytes) {
+        this.iSize = iSize;
+        this.jSize = jSize;
+        this.segments = segments;
+        for (ByteBuffer segment : segments) {
+            segment.order(ByteOrder.LITTLE_ENDIAN);
+        }
+        this.segmentSize = segmentRows * iSize;
+        this.valueBytes = valueBytes;
+    }
+
+    @Override
+    public double get(int i, int j) {
+        return get(i + j * iSize);
+    }
+
+    @Override
+    public double get(int index) {
+        ByteBuffer segment = segments[index / segmentSize];
+        int offset = index % segmentSize;
+        return (valueBytes == Double.BYTES)
+                ? segment.getDouble(offset * Double.BYTES)
+                : segment.getFloat(offset * Float.BYTES);
+    }
+
+    @Override
+    public int indexOf(int i, int j) {
+        return i + j * iSize;
+    }
+
+    @Override
+    public MapArray.Point getPoint(int i, int j) {
+        return new MapArray.Point(i, j, get(i, j));
+    }
+
+    @Override
+    public double get(MapArray.Point p) {
+        return get(p.i, p.j);
+    }
+
+    @Override
+    public boolean isNull(int i, int j) {
+        return Double.isNaN(get(i, j));
+    }
+
+    @Override
+    public int getISize() {
+        return iSize;
+    }
+
+    @Override
+    public int getJSize() {
+        return jSize;
+    }
+
+    @Override
+    public double getMax() {
+        return doubleStream()
+                .filter(z -> !Double.isNaN(z))
+                .max()
+                .orElse(0.0);
+    }
+
+    @Override
+    public double getMin() {
+        return doubleStream()
+                .filter(z -> !Double.isNaN(z))
+                .min()
+                .orElse(0.0);
+    }
+
+    @Override
+    public double getMean() {
+        return doubleStream()
+                .filter(z -> !Double.isNaN(z))
+                .summaryStatistics()
+                .getAverage();
+    }
+
+    @Override
+    public int size() {
+        return iSize * jSize;
+    }
+
+    @Override
+    public Stream<Double> stream() {
+        return doubleStream().boxed();
+    }
+
+    @Override
+    public DoubleStream doubleStream() {
+        return IntStream.range(0, size()).mapToDouble(this::get);
+    }
+
+    /** Points in the order i then j, as MapArray. */
+    @Override
+    public Stream<MapArray.Point> streamPoints() {
+        return IntStream.range(0, size())
+                .mapToObj(n -> getPoint(n / jSize, n % jSize));
+    }
+
+    @Override
+    public OptionalDouble getIfInRange(int i, int j) {
+        if (!isInRange(i, j)) {
+            return OptionalDouble.empty();
+        }
+        return OptionalDouble.of(get(i, j));
+    }
+
+    @Override
+    public boolean isInRange(int i, int j) {
+        return (i >= 0 && j >= 0 && i < iSize && j < jSize);
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("i", iSize)
+                .add("j", jSize)
+                .add("valueBytes", valueBytes)
+                .add("segments", segments.length)
+                .toString();
+    }
+}
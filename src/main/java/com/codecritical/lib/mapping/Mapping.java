@@ -5,9 +5,9 @@ package com.codecritical.lib.mapping;
  */
 
 import javax.annotation.ParametersAreNonnullByDefault;
-import java.util.Comparator;
 import java.util.HashSet;
 import java.util.Set;
+import java.util.function.DoubleUnaryOperator;
 import java.util.function.Function;
 import java.util.stream.IntStream;
 
@@ -24,39 +24,45 @@ public class Mapping {
     }
     public static IMapArray normalise(IMapArray map, boolean allowZero, double minOut, double maxOut) {
 
-        var max = map.stream()
-                .filter(z -> !z.isNaN() && !z.isInfinite())
-                .max(Comparator.naturalOrder())
+        var max = map.doubleStream()
+                .filter(Double::isFinite)
+                .max()
                 .orElse(0.0);
 
-        var min = map.stream()
-                .filter(z -> !z.isNaN() && !z.isInfinite())
-                .min(Comparator.naturalOrder())
+        var min = map.doubleStream()
+                .filter(Double::isFinite)
+                .min()
                 .orElse(0.0);
 
+        return new MapArray(
+                map.getISize(),
+                map.getJSize(),
+                map.doubleStream().map(normaliser(min, max, allowZero, minOut, maxOut)));
+    }
+
+    /** The function of normalise(), for a map whose finite values run from min to max. */
+    public static DoubleUnaryOperator normaliser(double min, double max, boolean allowZero, double minOut, double maxOut) {
+
         var min2 = (allowZero)
                 ? min
                 : min - (max - min) * MIN_WHEN_NO_ZERO;
 
         var range = max - min2;
 
-        return new MapArray(
-                map.getISize(),
-                map.getJSize(),
-                map.stream().map(p -> {
-                    if (p.isNaN() || p.isInfinite()) {
-                        return min;
-                    } else {
-                        return ((p - min2) / range) * (maxOut - minOut) + minOut;
-                    }
-                }));
+        return p -> {
+            if (!Double.isFinite(p)) {
+                return min;
+            } else {
+                return ((p - min2) / range) * (maxOut - minOut) + minOut;
+            }
+        };
     }
 
     public static IMapArray scale(IMapArray map, IScale toPower) {
         return new MapArray(
                 map.getISize(),
                 map.getJSize(),
-                map.stream().map(toPower::scale)
+                map.doubleStream().map(toPower::scale)
         );
     }
 
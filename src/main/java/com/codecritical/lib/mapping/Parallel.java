@@ -0,0 +1,74 @@
+package com.codecritical.lib.mapping;
+
+/*
+ * Chisel3D, (C) 2024 Ben Clewett & Code Critical Ltd
+ */
+
+import com.codecritical.lib.config.ConfigReader;
+
+import javax.annotation.ParametersAreNonnullByDefault;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntConsumer;
+
+/** Runs independent, indexed, work items over a fixed number of threads. */
+@ParametersAreNonnullByDefault
+public class Parallel {
+
+    // Static Class
+    private Parallel() {}
+
+    /** Thread count from config, where an empty value means one thread per processor. */
+    public static int getThreadCount(ConfigReader config, Enum configName) {
+        int threadCount = config.asOptionalInt(configName)
+                .orElse(Runtime.getRuntime().availableProcessors());
+        return Math.max(1, threadCount);
+    }
+
+    /**
+     * Calls the action once for each index in [0, count).
+     * <br>
+     * Indexes are handed out one at a time, so expensive rows (deep inside a fractal) are balanced over the threads.
+     * With one thread the indexes are run in order on the calling thread.
+     */
+    public static void forEach(int threadCount, int count, IntConsumer action) {
+
+        int workers = Math.min(threadCount, count);
+
+        if (workers <= 1) {
+            for (int n = 0; n < count; n++) {
+                action.accept(n);
+            }
+            return;
+        }
+
+        AtomicInteger next = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(workers);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int w = 0; w < workers; w++) {
+                futures.add(executor.submit(() -> {
+                    int n;
+                    while ((n = next.getAndIncrement()) < count) {
+                        action.accept(n);
+                    }
+                }));
+            }
+            for (var future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(ex);
+        } catch (ExecutionException ex) {
+            throw new RuntimeException(ex.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -7,35 +7,56 @@ package com.codecritical.lib.mapping;
 import com.google.common.base.MoreObjects;
 
 import javax.annotation.ParametersAreNonnullByDefault;
-import java.util.HashSet;
+import java.util.Arrays;
 import java.util.Objects;
+import java.util.stream.IntStream;
 import java.util.stream.Stream;
 
 /** A selection of one or more adjacent points which are at max-iterations height. */
 @ParametersAreNonnullByDefault
 public class Plateau {
 
-    final HashSet<PlateauBit> plateau = new HashSet<>();
-    final int mapSize;
-
-    public Plateau(int mapSize) {
-        this.mapSize = mapSize;
+    /**
+     * Cells indexed i + j * iSize, as MapArray, in order.  Held sparsely, as only the cells of this plateau, so that
+     * many plateaus don't each take the size of the map.
+     */
+    private int[] cells = new int[16];
+    final int iSize, jSize;
+    int size = 0;
+
+    public Plateau(int iSize, int jSize) {
+        this.iSize = iSize;
+        this.jSize = jSize;
     }
 
+    /** Cells are most quickly added in index order, as a map is scanned. */
     public boolean add(int i, int j) {
-        return plateau.add(new PlateauBit(i, j));
+        int n = i + j * iSize;
+        int at = (size == 0 || cells[size - 1] < n) ? size : Arrays.binarySearch(cells, 0, size, n);
+        if (at < 0) {
+            at = -at - 1;
+        } else if (at < size) {
+            return false;
+        }
+        if (size == cells.length) {
+            cells = Arrays.copyOf(cells, size * 2);
+        }
+        System.arraycopy(cells, at, cells, at + 1, size - at);
+        cells[at] = n;
+        size++;
+        return true;
     }
 
     public boolean isSet(int i, int j) {
-        return plateau.contains(new PlateauBit(i, j));
+        return i >= 0 && i < iSize && j >= 0 && j < jSize && Arrays.binarySearch(cells, 0, size, i + j * iSize) >= 0;
     }
 
     public int size() {
-        return plateau.size();
+        return size;
     }
 
     public double sizeCoefficient() {
-        return (double)plateau.size() / mapSize;
+        return (double)size / (iSize * jSize);
     }
 
     @Override
@@ -47,7 +68,12 @@ public class Plateau {
     }
 
     public Stream<PlateauBit> steam() {
-        return plateau.stream();
+        return indexStream().mapToObj(n -> new PlateauBit(n % iSize, n / iSize));
+    }
+
+    /** Cell indexes, i + j * iSize. */
+    IntStream indexStream() {
+        return Arrays.stream(cells, 0, size);
     }
 
     static class PlateauBit {
@@ -8,94 +8,86 @@ import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.MoreObjects;
 import com.google.common.collect.ImmutableList;
 
-import javax.annotation.CheckForNull;
-import javax.annotation.Nonnull;
 import javax.annotation.ParametersAreNonnullByDefault;
 import java.util.Arrays;
-import java.util.function.BiConsumer;
+import java.util.Objects;
 import java.util.stream.Stream;
 
 @ParametersAreNonnullByDefault
 public class PlateauCollections {
 
     private final static double MIN = 0.0, MAX = 1.0;
+    public static final int NONE = -1;
+
     private final ImmutableList<Plateau> plateaus;
 
+    /** Plateau index + 1 at each cell, i + j * iSize, or 0 when not on a plateau. */
+    private final int[] index;
+    private final int iSize, jSize;
+
     /** Clone a plateau set */
     public PlateauCollections(Stream<Plateau> plateauStream) {
         plateaus = plateauStream.collect(ImmutableList.toImmutableList());
+        iSize = plateaus.isEmpty() ? 0 : plateaus.get(0).iSize;
+        jSize = plateaus.isEmpty() ? 0 : plateaus.get(0).jSize;
+        index = buildIndex(plateaus, iSize, jSize);
     }
 
     /** Create new plateau set from map. */
     public PlateauCollections(IMapArray map) {
-        plateaus = buildPlateaus(map);
+        this(map, 0.0);
     }
 
-    private ImmutableList<Plateau> buildPlateaus(IMapArray map) {
-        ImmutableList.Builder<Plateau> builder = new ImmutableList.Builder<>();
-
-        Plateau[] plateau = new Plateau[1];
-        Plateau allMap = new Plateau(map.size());
-
-        var max = map.getMax();
-
-        map.streamPoints().forEach(p -> {
-            plateau[0] = null;
-            Square square = Square.getUnfoundSquare(allMap, p);
-            if (square != null) {
-                testSquare(allMap, builder, map, plateau, square, max);
-            }
-        });
-
-        return builder.build();
+    /** Create new plateau set from map, of the plateaus covering at least minSizeCoefficient of the map. */
+    public PlateauCollections(IMapArray map, double minSizeCoefficient) {
+        iSize = map.getISize();
+        jSize = map.getJSize();
+        plateaus = buildPlateaus(new PlateauLabels(map), minSizeCoefficient);
+        index = buildIndex(plateaus, iSize, jSize);
     }
 
-    private void testSquare(Plateau allMap, ImmutableList.Builder<Plateau> builder, IMapArray map, Plateau[] plateau, @Nonnull Square s, double max) {
+    private static ImmutableList<Plateau> buildPlateaus(PlateauLabels labels, double minSizeCoefficient) {
 
-        if (!map.isInRange(s.i0, s.j0) || !map.isInRange(s.i1, s.j1)) {
-            // Not a square on the grid.
-            return;
+        Plateau[] byLabel = new Plateau[labels.count() + 1];
+        for (int label = 1; label <= labels.count(); label++) {
+            if (labels.sizeCoefficient(label) >= minSizeCoefficient) {
+                byLabel[label] = new Plateau(labels.getISize(), labels.getJSize());
+            }
         }
 
-        int countMiss = 0;
-        for (Plateau.PlateauBit p : s.getPlateauBits()) {
-            if (map.get(p.i, p.j) != max) {
-                // Fallen off the plateau.  End of tree here.
-                return;
-            }
-            boolean hitOnThisPlateau = (plateau[0] != null && plateau[0].isSet(p.i, p.j));
-            if (!hitOnThisPlateau && allMap.isSet(p.i, p.j)) {
-                // Owned by another plateau.
-                return;
+        for (int j = 0; j < labels.getJSize(); j++) {
+            for (int i = 0; i < labels.getISize(); i++) {
+                Plateau plateau = byLabel[labels.get(i, j)];
+                if (plateau != null) {
+                    plateau.add(i, j);
+                }
             }
-            // Ensure there are new cells to check
-            countMiss += (!hitOnThisPlateau) ? 1 : 0;
         }
-        if (countMiss == 0) {
-            // Been here before.
-            return;
-        }
-
-        // Hit, we are on a plateau and valid
 
-        s.forEach(allMap::add);
+        return Arrays.stream(byLabel)
+                .filter(Objects::nonNull)
+                .collect(ImmutableList.toImmutableList());
+    }
 
-        if (plateau[0] == null) {
-            plateau[0] = new Plateau(map.size());
-            builder.add(plateau[0]);
+    private static int[] buildIndex(ImmutableList<Plateau> plateaus, int iSize, int jSize) {
+        int[] index = new int[iSize * jSize];
+        for (int id = 0; id < plateaus.size(); id++) {
+            int value = id + 1;
+            plateaus.get(id).indexStream().forEach(n -> index[n] = value);
         }
-        s.forEach(plateau[0]::add);
-
-        // Recursive call
-        testSquare(allMap, builder, map, plateau, new Square(s.i0 - 1, s.i1 - 1, s.j0, s.j1), max);
-        testSquare(allMap, builder, map, plateau, new Square(s.i0 + 1, s.i1 + 1, s.j0, s.j1), max);
-        testSquare(allMap, builder, map, plateau, new Square(s.i0, s.i1, s.j0 - 1, s.j1 - 1), max);
-        testSquare(allMap, builder, map, plateau, new Square(s.i0, s.i1, s.j0 + 1, s.j1 + 1), max);
+        return index;
     }
 
     public boolean isPlateau(int i, int j) {
-        return plateaus.stream()
-                .anyMatch(p -> p.isSet(i, j));
+        return getPlateauId(i, j) != NONE;
+    }
+
+    /** Index of the plateau at a cell, as in stream(), or NONE. */
+    public int getPlateauId(int i, int j) {
+        if (i < 0 || i >= iSize || j < 0 || j >= jSize) {
+            return NONE;
+        }
+        return index[i + j * iSize] - 1;
     }
 
     public boolean isPlateau(MapArray.Point p) {
@@ -117,6 +109,34 @@ public class PlateauCollections {
                 .toString();
     }
 
+    /** Index of the plateau at each cell, or NONE, from which fromIdMap() makes the same collection. */
+    public IMapArray asIdMap(int iSize, int jSize) {
+        var map = new MapArray(iSize, jSize);
+        for (int j = 0; j < jSize; j++) {
+            for (int i = 0; i < iSize; i++) {
+                map.set(i, j, getPlateauId(i, j));
+            }
+        }
+        return map;
+    }
+
+    public static PlateauCollections fromIdMap(IMapArray map) {
+        int count = (int) Math.max(0, map.getMax() + 1);
+        Plateau[] plateaus = new Plateau[count];
+        for (int id = 0; id < count; id++) {
+            plateaus[id] = new Plateau(map.getISize(), map.getJSize());
+        }
+        for (int j = 0; j < map.getJSize(); j++) {
+            for (int i = 0; i < map.getISize(); i++) {
+                int id = (int) map.get(i, j);
+                if (id != NONE) {
+                    plateaus[id].add(i, j);
+                }
+            }
+        }
+        return new PlateauCollections(Arrays.stream(plateaus));
+    }
+
     @VisibleForTesting
     public IMapArray asMapArray() {
         var max = new int[] {0,0};
@@ -134,46 +154,4 @@ public class PlateauCollections {
         );
         return map;
     }
-
-    record Square(int i0, int i1, int j0, int j1) {
-
-        @CheckForNull
-        public static Square getUnfoundSquare(Plateau allMap, MapArray.Point p) {
-            int i0 = p.i;
-            int i1 = i0 + 1;
-            int j0 = p.j;
-            int j1 = j0 + 1;
-            if (allMap.isSet(i0, j0) || allMap.isSet(i0, j1) || allMap.isSet(i1, j0) || allMap.isSet(i1, j1)) {
-                return null;
-            } else {
-                return new Square(i0, i1, j0, j1);
-            }
-        }
-
-        @Override
-        public String toString() {
-            return MoreObjects.toStringHelper(this)
-                    .add("i0", i0)
-                    .add("i1", i1)
-                    .add("j0", j0)
-                    .add("j1", j1)
-                    .toString();
-        }
-
-        public void forEach(BiConsumer<Integer, Integer> action) {
-            action.accept(i0, j0);
-            action.accept(i0, j1);
-            action.accept(i1, j0);
-            action.accept(i1, j1);
-        }
-
-        public Iterable<? extends Plateau.PlateauBit> getPlateauBits() {
-            return Arrays.stream(new Plateau.PlateauBit[] {
-                    new Plateau.PlateauBit(i0, j0),
-                    new Plateau.PlateauBit(i0, j1),
-                    new Plateau.PlateauBit(i1, j0),
-                    new Plateau.PlateauBit(i1, j1),
-            }).toList();
-        }
-    }
 }
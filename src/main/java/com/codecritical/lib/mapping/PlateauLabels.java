@@ -0,0 +1,139 @@
+package com.codecritical.lib.mapping;
+
+/*
+ * Chisel3D, (C) 2024 Ben Clewett & Code Critical Ltd
+ */
+
+import com.google.common.base.MoreObjects;
+
+import javax.annotation.ParametersAreNonnullByDefault;
+import java.util.Arrays;
+
+/**
+ * Connected component labelling of the plateaus in a map.
+ * <br>
+ * A cell is on a plateau when it is a corner of a 2x2 square whose four cells are all at the map max.  Squares
+ * which share a cell are on the same plateau.  Labels are 1..count, 0 is not a plateau.
+ * <br>
+ * Cells are indexed i + j * iSize, as MapArray.
+ */
+@ParametersAreNonnullByDefault
+public class PlateauLabels {
+
+    public static final int NONE = 0;
+
+    private final int iSize, jSize;
+    private final int[] labels;
+    private final int[] sizes;
+
+    public PlateauLabels(IMapArray map) {
+        this.iSize = map.getISize();
+        this.jSize = map.getJSize();
+        this.labels = new int[iSize * jSize];
+
+        // Pass 1, union the cells of each square at max.
+        int[] parent = new int[iSize * jSize];
+        Arrays.fill(parent, -1);
+        double max = map.getMax();
+        for (int j = 0; j < jSize - 1; j++) {
+            for (int i = 0; i < iSize - 1; i++) {
+                int n = i + j * iSize;
+                if (map.get(n) != max || map.get(n + 1) != max
+                        || map.get(n + iSize) != max || map.get(n + iSize + 1) != max) {
+                    continue;
+                }
+                add(parent, n, n);
+                add(parent, n, n + 1);
+                add(parent, n, n + iSize);
+                add(parent, n, n + iSize + 1);
+            }
+        }
+
+        // Pass 2, number the roots in scan order and count the cells.
+        int[] rootLabel = new int[parent.length];
+        int count = 0;
+        for (int n = 0; n < parent.length; n++) {
+            if (parent[n] == -1) {
+                continue;
+            }
+            int root = find(parent, n);
+            if (rootLabel[root] == NONE) {
+                rootLabel[root] = ++count;
+            }
+            labels[n] = rootLabel[root];
+        }
+
+        this.sizes = new int[count + 1];
+        for (int label : labels) {
+            sizes[label]++;
+        }
+        sizes[NONE] = 0;
+    }
+
+    private static void add(int[] parent, int root, int n) {
+        if (parent[n] == -1) {
+            parent[n] = n;
+        }
+        union(parent, root, n);
+    }
+
+    private static int find(int[] parent, int n) {
+        int root = n;
+        while (parent[root] != root) {
+            root = parent[root];
+        }
+        // Path compression
+        while (parent[n] != root) {
+            int next = parent[n];
+            parent[n] = root;
+            n = next;
+        }
+        return root;
+    }
+
+    private static void union(int[] parent, int a, int b) {
+        int rootA = find(parent, a);
+        int rootB = find(parent, b);
+        if (rootA != rootB) {
+            // Keep the earliest cell as root, so labels follow scan order.
+            parent[Math.max(rootA, rootB)] = Math.min(rootA, rootB);
+        }
+    }
+
+    /** Label at a cell, or NONE. */
+    public int get(int i, int j) {
+        return labels[i + j * iSize];
+    }
+
+    public int getISize() {
+        return iSize;
+    }
+
+    public int getJSize() {
+        return jSize;
+    }
+
+    /** Number of plateaus. */
+    public int count() {
+        return sizes.length - 1;
+    }
+
+    /** Cells in a plateau. */
+    public int size(int label) {
+        return sizes[label];
+    }
+
+    /** Fraction of the map covered by a plateau. */
+    public double sizeCoefficient(int label) {
+        return (double) sizes[label] / labels.length;
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("iSize", iSize)
+                .add("jSize", jSize)
+                .add("count", count())
+                .toString();
+    }
+}
@@ -7,12 +7,10 @@ package com.codecritical.lib.mapping;
 import com.codecritical.lib.config.Config;
 import com.codecritical.lib.config.ConfigReader;
 import com.google.common.base.MoreObjects;
-import com.google.common.collect.ImmutableList;
 
 import javax.annotation.ParametersAreNonnullByDefault;
 import java.util.Optional;
 import java.util.logging.Logger;
-import java.util.stream.IntStream;
 
 /**
  * Return a texture map, or any object, to sit in plateau space rather than a flat surface.
@@ -80,39 +78,31 @@ public class PlateauTexture {
 
         var mapOut = new MapArray(map.getISize(), map.getJSize());
 
-        var circle = getCircleOfPoints();
+        // Including the edge, the whole plateau is hollow.
+        double[] distanceSquared = plateauHollowIncludeEdge ? null : getDistanceSquaredToEdge(map);
+        double maxRadiusSquared = iHoleRadiosCountOnMap * jHoleRadiosCountOnMap;
 
-        map.streamPoints().forEach(p -> mapOut.set(p.i, p.j, getHollowDepth(p, circle, hollowDepth)));
+        for (int j = 0; j < map.getJSize(); j++) {
+            for (int i = 0; i < map.getISize(); i++) {
+                int n = i + j * map.getISize();
+                boolean hollow = plateauCollection.isPlateau(i, j)
+                        && (distanceSquared == null || distanceSquared[n] > maxRadiusSquared);
+                mapOut.set(n, hollow ? hollowDepth : HIGH_Z);
+            }
+        }
 
         return mapOut;
     }
 
-    private Double getHollowDepth(MapArray.Point p, ImmutableList<MapPoint> circle, double hollowDepth) {
-        return (inHollowPlateau(p.i, p.j, circle))
-                ? hollowDepth
-                : HIGH_Z;
-    }
-
-    private boolean inHollowPlateau(int i, int j, ImmutableList<MapPoint> circle) {
-        if (!plateauCollection.isPlateau(i, j)) {
-            return false;
+    /** Squared distance from each cell to the nearest cell on the map which is not plateau. */
+    private double[] getDistanceSquaredToEdge(IMapArray map) {
+        boolean[] edge = new boolean[map.size()];
+        for (int j = 0; j < map.getJSize(); j++) {
+            for (int i = 0; i < map.getISize(); i++) {
+                edge[i + j * map.getISize()] = !plateauCollection.isPlateau(i, j);
+            }
         }
-        return circle.stream()
-                .filter(c -> map.isInRange(c.i + i, c.j + j) && !plateauHollowIncludeEdge)
-                .allMatch(c -> plateauCollection.isPlateau(c.i + i, c.j + j));
-    }
-
-    private ImmutableList<MapPoint> getCircleOfPoints() {
-        ImmutableList.Builder<MapPoint> builder = new ImmutableList.Builder<>();
-        double maxRadiusSquared = iHoleRadiosCountOnMap * jHoleRadiosCountOnMap;
-        IntStream.range(-iHoleRadiosCountOnMap, iHoleRadiosCountOnMap + 1).forEach(i ->
-                IntStream.range(-jHoleRadiosCountOnMap, jHoleRadiosCountOnMap + 1).forEach(j -> {
-                    if (i*i + j*j <= maxRadiusSquared) {
-                        builder.add(new MapPoint(i, j));
-                    }
-                })
-        );
-        return builder.build();
+        return DistanceTransform.squared(edge, map.getISize(), map.getJSize());
     }
 
     //endregion
@@ -127,16 +117,6 @@ public class PlateauTexture {
         return new MapArray(map.getISize(), map.getJSize()).setAllValues(HIGH_Z);
     }
 
-    record MapPoint(int i, int j) {
-        @Override
-        public String toString() {
-            return MoreObjects.toStringHelper(this)
-                    .add("i", i)
-                    .add("j", j)
-                    .toString();
-        }
-    }
-
     @Override
     public String toString() {
         return MoreObjects.toStringHelper(this)
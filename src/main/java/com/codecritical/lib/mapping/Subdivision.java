@@ -0,0 +1,127 @@
+package com.codecritical.lib.mapping;
+
+/*
+ * Chisel3D, (C) 2024 Ben Clewett & Code Critical Ltd
+ */
+
+import javax.annotation.ParametersAreNonnullByDefault;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Fills a map by rectangle subdivision (Mariani-Silver).
+ * <br>
+ * Where every pixel on the border of a tile has the same value, the inside is filled with that value without being
+ * calculated.  Otherwise the tile is cut in two across its longer side and each half is tried again.  This relies on
+ * areas of one value having no holes, true of the Mandelbrot set, and near enough for other escape time fractals.
+ * <br>
+ * Tiles are run on a work stealing pool, as their cost is very uneven.
+ */
+@ParametersAreNonnullByDefault
+public class Subdivision {
+
+    /** Below this many inside pixels a tile is calculated in full. */
+    static final int MIN_TILE_AREA = 16;
+
+    @FunctionalInterface
+    public interface Pixel {
+        double get(int i, int j);
+    }
+
+    // Static Class
+    private Subdivision() {}
+
+    public static void fill(int threadCount, MapArray map, Pixel pixel) {
+        int i1 = map.getISize() - 1;
+        int j1 = map.getJSize() - 1;
+        for (int i = 0; i <= i1; i++) {
+            map.set(i, 0, pixel.get(i, 0));
+            map.set(i, j1, pixel.get(i, j1));
+        }
+        for (int j = 1; j < j1; j++) {
+            map.set(0, j, pixel.get(0, j));
+            map.set(i1, j, pixel.get(i1, j));
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(Math.max(1, threadCount));
+        try {
+            pool.invoke(new Tile(map, pixel, 0, 0, i1, j1));
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /** Pixels i0 to i1 and j0 to j1 inclusive, where the border is already set. */
+    private static class Tile extends RecursiveAction {
+        private final MapArray map;
+        private final Pixel pixel;
+        private final int i0, j0, i1, j1;
+
+        Tile(MapArray map, Pixel pixel, int i0, int j0, int i1, int j1) {
+            this.map = map;
+            this.pixel = pixel;
+            this.i0 = i0;
+            this.j0 = j0;
+            this.i1 = i1;
+            this.j1 = j1;
+        }
+
+        @Override
+        protected void compute() {
+            int iInside = i1 - i0 - 1;
+            int jInside = j1 - j0 - 1;
+            if (iInside <= 0 || jInside <= 0) {
+                return;
+            }
+
+            if (iInside * jInside <= MIN_TILE_AREA) {
+                for (int j = j0 + 1; j < j1; j++) {
+                    for (int i = i0 + 1; i < i1; i++) {
+                        map.set(i, j, pixel.get(i, j));
+                    }
+                }
+                return;
+            }
+
+            if (isBorderFlat()) {
+                double z = map.get(i0, j0);
+                for (int j = j0 + 1; j < j1; j++) {
+                    for (int i = i0 + 1; i < i1; i++) {
+                        map.set(i, j, z);
+                    }
+                }
+                return;
+            }
+
+            // The cut line becomes a border of both halves.
+            if (iInside >= jInside) {
+                int iMid = (i0 + i1) / 2;
+                for (int j = j0 + 1; j < j1; j++) {
+                    map.set(iMid, j, pixel.get(iMid, j));
+                }
+                invokeAll(new Tile(map, pixel, i0, j0, iMid, j1), new Tile(map, pixel, iMid, j0, i1, j1));
+            } else {
+                int jMid = (j0 + j1) / 2;
+                for (int i = i0 + 1; i < i1; i++) {
+                    map.set(i, jMid, pixel.get(i, jMid));
+                }
+                invokeAll(new Tile(map, pixel, i0, j0, i1, jMid), new Tile(map, pixel, i0, jMid, i1, j1));
+            }
+        }
+
+        private boolean isBorderFlat() {
+            double z = map.get(i0, j0);
+            for (int i = i0; i <= i1; i++) {
+                if (map.get(i, j0) != z || map.get(i, j1) != z) {
+                    return false;
+                }
+            }
+            for (int j = j0; j <= j1; j++) {
+                if (map.get(i0, j) != z || map.get(i1, j) != z) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -316,10 +316,11 @@ public class BuildPrintSurface implements IBuildPrint {
     }
 
     private Coords3d projectCoord3dFromCentrePoint(Coords3d c) {
+        return projectFromCentrePoint(projectCentreSphere.orElseThrow(), baseThickness, c);
+    }
 
-        // Project from origin, o, through plane of z = BASE_THICKNESS.
-
-        Coords3d o = projectCentreSphere.orElseThrow();
+    /** Project from origin, o, through plane of z = baseThickness. */
+    static Coords3d projectFromCentrePoint(Coords3d o, double baseThickness, Coords3d c) {
 
         // Angle along a vertical projection
         double alpha = Math.atan2(
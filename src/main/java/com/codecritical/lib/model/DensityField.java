@@ -0,0 +1,61 @@
+package com.codecritical.lib.model;
+
+/*
+ * Chisel3D, (C) 2024 Ben Clewett & Code Critical Ltd
+ */
+
+import com.google.common.base.MoreObjects;
+
+import javax.annotation.ParametersAreNonnullByDefault;
+
+/**
+ * Regular grid of samples, 1 inside a model falling towards 0 outside.
+ * <br>
+ * Samples outside the grid are 0, so a surface through them is closed.  Samples for different j are held apart, so
+ * j slices may be set from different threads.
+ */
+@ParametersAreNonnullByDefault
+public class DensityField {
+
+    private final int iSize, jSize, kSize;
+    private final float[] values;
+
+    public DensityField(int iSize, int jSize, int kSize) {
+        this.iSize = iSize;
+        this.jSize = jSize;
+        this.kSize = kSize;
+        this.values = new float[iSize * jSize * kSize];
+    }
+
+    public int getISize() {
+        return iSize;
+    }
+
+    public int getJSize() {
+        return jSize;
+    }
+
+    public int getKSize() {
+        return kSize;
+    }
+
+    public void set(int i, int j, int k, double value) {
+        values[i + (k + j * kSize) * iSize] = (float) value;
+    }
+
+    public double get(int i, int j, int k) {
+        if (i < 0 || i >= iSize || j < 0 || j >= jSize || k < 0 || k >= kSize) {
+            return 0.0;
+        }
+        return values[i + (k + j * kSize) * iSize];
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("iSize", iSize)
+                .add("jSize", jSize)
+                .add("kSize", kSize)
+                .toString();
+    }
+}
@@ -0,0 +1,133 @@
+package com.codecritical.lib.model;
+
+/*
+ * Chisel3D, (C) 2024 Ben Clewett & Code Critical Ltd
+ */
+
+import javax.annotation.ParametersAreNonnullByDefault;
+import java.math.BigDecimal;
+
+/**
+ * Number held as the unevaluated sum of two doubles, hi + lo, for about 106 bits of precision.
+ * <br>
+ * Mutable, each operation updates this value and returns it, so an iteration loop makes no objects.  Products use
+ * Math.fma for their exact error.
+ */
+@ParametersAreNonnullByDefault
+public final class DoubleDouble {
+
+    private double hi, lo;
+
+    public DoubleDouble() {
+        this(0.0);
+    }
+
+    public DoubleDouble(double d) {
+        this.hi = d;
+        this.lo = 0.0;
+    }
+
+    public DoubleDouble(BigDecimal d) {
+        this.hi = d.doubleValue();
+        this.lo = d.subtract(new BigDecimal(hi)).doubleValue();
+    }
+
+    public DoubleDouble(DoubleDouble d) {
+        this.hi = d.hi;
+        this.lo = d.lo;
+    }
+
+    public DoubleDouble set(double d) {
+        this.hi = d;
+        this.lo = 0.0;
+        return this;
+    }
+
+    public DoubleDouble set(DoubleDouble d) {
+        this.hi = d.hi;
+        this.lo = d.lo;
+        return this;
+    }
+
+    public DoubleDouble add(DoubleDouble d) {
+        return add(d.hi, d.lo);
+    }
+
+    public DoubleDouble add(double d) {
+        double s = hi + d;
+        double sb = s - hi;
+        double e = (hi - (s - sb)) + (d - sb);
+        return normalise(s, e + lo, 0.0);
+    }
+
+    public DoubleDouble subtract(DoubleDouble d) {
+        return add(-d.hi, -d.lo);
+    }
+
+    /** Sum of both parts, with the rounding error of each kept. */
+    private DoubleDouble add(double dHi, double dLo) {
+        double s = hi + dHi;
+        double sb = s - hi;
+        double e = (hi - (s - sb)) + (dHi - sb);
+        double t = lo + dLo;
+        double tb = t - lo;
+        double f = (lo - (t - tb)) + (dLo - tb);
+        e += t;
+        return normalise(s, e, f);
+    }
+
+    public DoubleDouble multiply(DoubleDouble d) {
+        double p = hi * d.hi;
+        double e = Math.fma(hi, d.hi, -p) + (hi * d.lo + lo * d.hi);
+        return normalise(p, e, 0.0);
+    }
+
+    public DoubleDouble multiply(double d) {
+        double p = hi * d;
+        double e = Math.fma(hi, d, -p) + lo * d;
+        return normalise(p, e, 0.0);
+    }
+
+    public DoubleDouble square() {
+        double p = hi * hi;
+        double e = Math.fma(hi, hi, -p) + 2 * hi * lo;
+        return normalise(p, e, 0.0);
+    }
+
+    public DoubleDouble abs() {
+        if (hi < 0) {
+            hi = -hi;
+            lo = -lo;
+        }
+        return this;
+    }
+
+    public DoubleDouble negate() {
+        hi = -hi;
+        lo = -lo;
+        return this;
+    }
+
+    /** s + e + f, where e is small next to s, and f smaller again. */
+    private DoubleDouble normalise(double s, double e, double f) {
+        double t = s + e;
+        e = e - (t - s);
+        e += f;
+        hi = t + e;
+        lo = e - (hi - t);
+        return this;
+    }
+
+    public double doubleValue() {
+        return hi + lo;
+    }
+
+    public BigDecimal toBigDecimal() {
+        return new BigDecimal(hi).add(new BigDecimal(lo));
+    }
+
+    @Override
+    public String toString() {
+        return toBigDecimal().toString();
+    }
+}
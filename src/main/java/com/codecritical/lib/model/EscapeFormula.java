@@ -0,0 +1,56 @@
+package com.codecritical.lib.model;
+
+/*
+ * Chisel3D, (C) 2024 Ben Clewett & Code Critical Ltd
+ */
+
+import com.google.common.base.MoreObjects;
+
+import javax.annotation.ParametersAreNonnullByDefault;
+
+/**
+ * An escape time formula, z = z^2 + c or a variant, as the vector kernel can run it.  Each gives exactly the iteration
+ * count of the fractal's own buildPoint().
+ */
+@ParametersAreNonnullByDefault
+public final class EscapeFormula {
+
+    public enum Kind {
+        /** z from 0, c the pixel. */
+        MANDELBROT,
+        /** z from the pixel, c fixed. */
+        JULIA,
+        /** As MANDELBROT, with the imaginary part of z^2 made positive. */
+        BURNING_SHIP,
+        /** As MANDELBROT, with z conjugated before squaring. */
+        TRICORN
+    }
+
+    final Kind kind;
+    final double rC, iC;
+
+    private EscapeFormula(Kind kind, double rC, double iC) {
+        this.kind = kind;
+        this.rC = rC;
+        this.iC = iC;
+    }
+
+    public static EscapeFormula of(Kind kind) {
+        if (kind == Kind.JULIA) {
+            throw new RuntimeException(kind + " needs a value of c");
+        }
+        return new EscapeFormula(kind, 0.0, 0.0);
+    }
+
+    public static EscapeFormula julia(double rC, double iC) {
+        return new EscapeFormula(Kind.JULIA, rC, iC);
+    }
+
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("kind", kind)
+                .add("rC", rC)
+                .add("iC", iC)
+                .toString();
+    }
+}
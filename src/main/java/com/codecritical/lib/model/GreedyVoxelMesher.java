@@ -0,0 +1,240 @@
+package com.codecritical.lib.model;
+
+/*
+ * Chisel3D, (C) 2024 Ben Clewett & Code Critical Ltd
+ */
+
+import com.google.common.base.MoreObjects;
+
+import javax.annotation.ParametersAreNonnullByDefault;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+
+/**
+ * Mesh of the surface of a voxel grid.
+ * <br>
+ * Only faces between an occupied and an empty cell are made.  In each slice these are merged into the largest
+ * rectangles that can be found (greedy meshing).  Vertices are shared, and where the corner of one rectangle lies
+ * on the edge of another, that edge is split there, so the mesh is watertight.  Cell (i, j, k) is centred on
+ * origin + (i, j, k) * size.
+ */
+@ParametersAreNonnullByDefault
+public class GreedyVoxelMesher {
+    static final Logger logger = Logger.getLogger("");
+
+    private final double[] origin;
+    private final double[] size;
+    private final double zFloor;
+
+    /**
+     * @param zFloor nothing is made below this z, faces below are moved up to it.
+     */
+    public GreedyVoxelMesher(double x0, double y0, double z0, double xSize, double ySize, double zSize, double zFloor) {
+        this.origin = new double[] {x0, y0, z0};
+        this.size = new double[] {xSize, ySize, zSize};
+        this.zFloor = zFloor;
+    }
+
+    public IndexedMesh mesh(IVoxels voxels) {
+        int[] dims = new int[] {voxels.getISize(), voxels.getJSize(), voxels.getKSize()};
+        List<Rectangle> rectangles = new ArrayList<>();
+
+        for (int d = 0; d < 3; d++) {
+            int u = (d + 1) % 3;
+            int v = (d + 2) % 3;
+            int[] mask = new int[dims[u] * dims[v]];
+            int[] cell = new int[3];
+
+            // Each boundary between slice s - 1 and s.
+            for (int s = 0; s <= dims[d]; s++) {
+                for (int b = 0; b < dims[v]; b++) {
+                    for (int a = 0; a < dims[u]; a++) {
+                        cell[u] = a;
+                        cell[v] = b;
+                        cell[d] = s - 1;
+                        boolean behind = voxels.isSet(cell[0], cell[1], cell[2]);
+                        cell[d] = s;
+                        boolean front = voxels.isSet(cell[0], cell[1], cell[2]);
+                        // +1 faces +d, -1 faces -d.
+                        mask[a + b * dims[u]] = (behind == front) ? 0 : (behind ? 1 : -1);
+                    }
+                }
+                addRectangles(rectangles, mask, dims[u], dims[v], d, s);
+            }
+        }
+
+        // Corners are shared by every rectangle meeting there.
+        var mesh = IndexedMesh.builder();
+        var corners = new Corners(mesh, dims);
+        for (Rectangle rectangle : rectangles) {
+            rectangle.forEachCorner(corners::add);
+        }
+        for (Rectangle rectangle : rectangles) {
+            addRectangle(mesh, corners, rectangle);
+        }
+
+        var out = mesh.build();
+        logger.info("Voxel mesh built: " + out);
+        return out;
+    }
+
+    /** Greedy merge of the mask into rectangles, clearing the mask as it goes. */
+    private static void addRectangles(List<Rectangle> rectangles, int[] mask, int uSize, int vSize, int d, int s) {
+        for (int b = 0; b < vSize; b++) {
+            for (int a = 0; a < uSize; ) {
+                int face = mask[a + b * uSize];
+                if (face == 0) {
+                    a++;
+                    continue;
+                }
+
+                int width = 1;
+                while (a + width < uSize && mask[a + width + b * uSize] == face) {
+                    width++;
+                }
+
+                int height = 1;
+                grow:
+                while (b + height < vSize) {
+                    for (int w = 0; w < width; w++) {
+                        if (mask[a + w + (b + height) * uSize] != face) {
+                            break grow;
+                        }
+                    }
+                    height++;
+                }
+
+                for (int h = 0; h < height; h++) {
+                    for (int w = 0; w < width; w++) {
+                        mask[a + w + (b + h) * uSize] = 0;
+                    }
+                }
+
+                rectangles.add(new Rectangle(face, d, s, a, b, width, height));
+                a += width;
+            }
+        }
+    }
+
+    /**
+     * Two triangles, or where corners of other rectangles lie on its edges, a fan from its centre through each of
+     * them.  So edges are always shared whole, with no T-junctions.
+     */
+    private void addRectangle(IndexedMesh.Builder mesh, Corners corners, Rectangle rectangle) {
+        List<Integer> ring = new ArrayList<>();
+        int[] from = new int[3];
+        int[] to = new int[3];
+        for (int c = 0; c < 4; c++) {
+            rectangle.getCorner(c, from);
+            rectangle.getCorner((c + 1) % 4, to);
+            ring.add(corners.get(from));
+            // Any corners between, in order along the edge.
+            int axis = (from[rectangle.u] != to[rectangle.u]) ? rectangle.u : rectangle.v;
+            int step = Integer.signum(to[axis] - from[axis]);
+            for (int n = from[axis] + step; n != to[axis]; n += step) {
+                from[axis] = n;
+                if (corners.contains(from)) {
+                    ring.add(corners.get(from));
+                }
+            }
+        }
+
+        // u x v = d, so anti-clockwise in (u, v) faces +d.
+        if (ring.size() == 4) {
+            addTriangle(mesh, rectangle.face, ring.get(0), ring.get(1), ring.get(2));
+            addTriangle(mesh, rectangle.face, ring.get(0), ring.get(2), ring.get(3));
+            return;
+        }
+        int centre = addCentre(mesh, rectangle);
+        for (int n = 0; n < ring.size(); n++) {
+            addTriangle(mesh, rectangle.face, centre, ring.get(n), ring.get((n + 1) % ring.size()));
+        }
+    }
+
+    private static void addTriangle(IndexedMesh.Builder mesh, int face, int v0, int v1, int v2) {
+        if (face > 0) {
+            mesh.addTriangle(v0, v1, v2);
+        } else {
+            mesh.addTriangle(v0, v2, v1);
+        }
+    }
+
+    private int addCentre(IndexedMesh.Builder mesh, Rectangle rectangle) {
+        double[] p = new double[3];
+        p[rectangle.d] = boundary(rectangle.d, rectangle.s);
+        p[rectangle.u] = (boundary(rectangle.u, rectangle.a) + boundary(rectangle.u, rectangle.a + rectangle.width)) / 2;
+        p[rectangle.v] = (boundary(rectangle.v, rectangle.b) + boundary(rectangle.v, rectangle.b + rectangle.height)) / 2;
+        return mesh.addVertex(p[0], p[1], Math.max(p[2], zFloor));
+    }
+
+    /** Coordinate of the boundary on the low side of a cell. */
+    private double boundary(int axis, int index) {
+        return origin[axis] + (index - 0.5) * size[axis];
+    }
+
+    /** Merged faces, in slice s of axis d, over cells a to a + width of axis u, and b to b + height of axis v. */
+    private record Rectangle(int face, int d, int u, int v, int s, int a, int b, int width, int height) {
+        Rectangle(int face, int d, int s, int a, int b, int width, int height) {
+            this(face, d, (d + 1) % 3, (d + 2) % 3, s, a, b, width, height);
+        }
+
+        /** Corner c, anti-clockwise in (u, v) from (a, b), as a point of the boundary grid. */
+        void getCorner(int c, int[] point) {
+            point[d] = s;
+            point[u] = (c == 1 || c == 2) ? a + width : a;
+            point[v] = (c == 2 || c == 3) ? b + height : b;
+        }
+
+        void forEachCorner(Consumer<int[]> action) {
+            int[] point = new int[3];
+            for (int c = 0; c < 4; c++) {
+                getCorner(c, point);
+                action.accept(point);
+            }
+        }
+    }
+
+    /** A vertex for each point of the boundary grid used by a corner. */
+    private class Corners {
+        private final IndexedMesh.Builder mesh;
+        private final Map<Long, Integer> vertices = new HashMap<>();
+        private final long iPoints, jPoints;
+
+        Corners(IndexedMesh.Builder mesh, int[] dims) {
+            this.mesh = mesh;
+            this.iPoints = dims[0] + 1L;
+            this.jPoints = dims[1] + 1L;
+        }
+
+        void add(int[] point) {
+            vertices.computeIfAbsent(getKey(point), key -> mesh.addVertex(
+                    boundary(0, point[0]), boundary(1, point[1]), Math.max(boundary(2, point[2]), zFloor)));
+        }
+
+        boolean contains(int[] point) {
+            return vertices.containsKey(getKey(point));
+        }
+
+        int get(int[] point) {
+            return vertices.get(getKey(point));
+        }
+
+        private long getKey(int[] point) {
+            return point[0] + iPoints * (point[1] + jPoints * point[2]);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("origin", Arrays.toString(origin))
+                .add("size", Arrays.toString(size))
+                .add("zFloor", zFloor)
+                .toString();
+    }
+}
@@ -0,0 +1,295 @@
+package com.codecritical.lib.model;
+
+/*
+ * Chisel3D, (C) 2024 Ben Clewett & Code Critical Ltd
+ */
+
+import com.codecritical.lib.config.Config;
+import com.codecritical.lib.config.ConfigReader;
+import com.codecritical.lib.mapping.IMapArray;
+import com.google.common.base.MoreObjects;
+import eu.printingin3d.javascad.coords.Coords3d;
+
+import javax.annotation.ParametersAreNonnullByDefault;
+import java.io.IOException;
+import java.util.Optional;
+import java.util.logging.Logger;
+
+/**
+ * Builds a closed square print straight from the map, as an indexed mesh, without javascad polygons.
+ * <br>
+ * The same shape as BuildPrintSurface in SQUARE mode: the surface, walls down to the floor, and the floor.
+ */
+@ParametersAreNonnullByDefault
+public class HeightFieldMesher {
+    static final Logger logger = Logger.getLogger("");
+
+    private final double xMin, yMin, zMin;
+    private final double xRange, yRange, zRange;
+    private final double baseThickness;
+    private final Optional<Coords3d> projectCentreSphere;
+
+    public HeightFieldMesher(ConfigReader config) {
+        this.xRange = config.asDouble(Config.StlPrint.X_SIZE);
+        this.yRange = config.asDouble(Config.StlPrint.Y_SIZE);
+        this.xMin = -xRange / 2;
+        this.yMin = -yRange / 2;
+        this.zMin = 0.0;
+        this.zRange = config.asDouble(Config.StlPrint.Z_SIZE) - zMin;
+        this.baseThickness = config.asInt(Config.StlPrint.BASE_THICKNESS);
+        this.projectCentreSphere = config.asOptionalCoors3d(Config.Fractal.Processing.PROJECT_CENTRE_SPHERE);
+
+        logger.info(this.toString());
+    }
+
+    /** True where the map can be meshed, which needs every cell to be present. */
+    public static boolean canMesh(IMapArray map) {
+        return map.getISize() >= 2 && map.getJSize() >= 2
+                && map.doubleStream().noneMatch(Double::isNaN);
+    }
+
+    public IndexedMesh mesh(IMapArray map) {
+        if (!canMesh(map)) {
+            throw new RuntimeException("Map can not be meshed, it has missing cells or is too small.");
+        }
+
+        int iSize = map.getISize();
+        int jSize = map.getJSize();
+        var mesh = IndexedMesh.builder();
+
+        // Surface, vertex index i + j * iSize
+        for (int j = 0; j < jSize; j++) {
+            for (int i = 0; i < iSize; i++) {
+                addSurfaceVertex(mesh, mapX(i, iSize), mapY(j, jSize), mapZ(map.get(i, j)));
+            }
+        }
+        for (int j = 1; j < jSize; j++) {
+            for (int i = 1; i < iSize; i++) {
+                int v00 = (i - 1) + (j - 1) * iSize;
+                int v10 = i + (j - 1) * iSize;
+                int v11 = i + j * iSize;
+                int v01 = (i - 1) + j * iSize;
+                mesh.addTriangle(v00, v10, v11);
+                mesh.addTriangle(v00, v11, v01);
+            }
+        }
+
+        // Perimeter anti-clockwise from above, as surface vertex indexes.
+        int[] perimeter = getPerimeter(iSize, jSize);
+
+        // Walls, surface to top of base to floor.
+        int[] base = new int[perimeter.length];
+        int[] floor = new int[perimeter.length];
+        for (int n = 0; n < perimeter.length; n++) {
+            int i = perimeter[n] % iSize;
+            int j = perimeter[n] / iSize;
+            double x = mapX(i, iSize);
+            double y = mapY(j, jSize);
+            // Where the surface sits on the base, share the vertex so the wall has no area.
+            base[n] = (map.get(i, j) == 0.0 && projectCentreSphere.isEmpty())
+                    ? perimeter[n]
+                    : mesh.addVertex(x, y, baseThickness + zMin);
+            floor[n] = mesh.addVertex(x, y, zMin);
+        }
+        addWall(mesh, base, perimeter);
+        addWall(mesh, floor, base);
+
+        // Floor, as a fan round the centre.
+        int centre = mesh.addVertex(xMin + xRange / 2, yMin + yRange / 2, zMin);
+        for (int n = 0; n < floor.length; n++) {
+            mesh.addTriangle(centre, floor[(n + 1) % floor.length], floor[n]);
+        }
+
+        var out = mesh.build();
+        logger.info("Mesh built: " + out);
+        return out;
+    }
+
+    /** Takes each triangle, corners anti-clockwise when seen from outside, as StlWriter. */
+    @FunctionalInterface
+    public interface TriangleWriter {
+        void write(float x0, float y0, float z0, float x1, float y1, float z1, float x2, float y2, float z2)
+                throws IOException;
+    }
+
+    /** Row j of a map, asked for in order from the first. */
+    @FunctionalInterface
+    public interface RowSource {
+        double[] getRow(int j);
+    }
+
+    /**
+     * As mesh(), written straight out as the rows are read, so only two rows and the edge of the map are
+     * held.  The triangles are those of mesh(), in the same order.
+     */
+    public void write(TriangleWriter stl, int iSize, int jSize, RowSource rows) throws IOException {
+        if (iSize < 2 || jSize < 2) {
+            throw new RuntimeException("Map can not be meshed, it is too small.");
+        }
+
+        // Surface, and the edge of it, held for the walls.
+        float[][] bottom = null, top = null;
+        float[][] left = new float[jSize][], right = new float[jSize][];
+        double[] bottomZ = null, topZ = null;
+        double[] leftZ = new double[jSize], rightZ = new double[jSize];
+        float[][] previous = null;
+        for (int j = 0; j < jSize; j++) {
+            double[] row = rows.getRow(j);
+            float[][] vertices = new float[iSize][];
+            for (int i = 0; i < iSize; i++) {
+                if (Double.isNaN(row[i])) {
+                    throw new RuntimeException("Map can not be meshed, it has missing cells.");
+                }
+                vertices[i] = getSurfaceVertex(mapX(i, iSize), mapY(j, jSize), mapZ(row[i]));
+            }
+            if (previous != null) {
+                for (int i = 1; i < iSize; i++) {
+                    writeTriangle(stl, previous[i - 1], previous[i], vertices[i]);
+                    writeTriangle(stl, previous[i - 1], vertices[i], vertices[i - 1]);
+                }
+            }
+            if (j == 0) {
+                bottom = vertices;
+                bottomZ = row.clone();
+            }
+            if (j == jSize - 1) {
+                top = vertices;
+                topZ = row.clone();
+            }
+            left[j] = vertices[0];
+            right[j] = vertices[iSize - 1];
+            leftZ[j] = row[0];
+            rightZ[j] = row[iSize - 1];
+            previous = vertices;
+        }
+
+        // Walls, surface to top of base to floor, round the perimeter as mesh().
+        int[] perimeter = getPerimeter(iSize, jSize);
+        float[][] surface = new float[perimeter.length][];
+        float[][] base = new float[perimeter.length][];
+        float[][] floor = new float[perimeter.length][];
+        for (int n = 0; n < perimeter.length; n++) {
+            int i = perimeter[n] % iSize;
+            int j = perimeter[n] / iSize;
+            double z;
+            if (j == 0) {
+                surface[n] = bottom[i];
+                z = bottomZ[i];
+            } else if (j == jSize - 1) {
+                surface[n] = top[i];
+                z = topZ[i];
+            } else if (i == 0) {
+                surface[n] = left[j];
+                z = leftZ[j];
+            } else {
+                surface[n] = right[j];
+                z = rightZ[j];
+            }
+            double x = mapX(i, iSize);
+            double y = mapY(j, jSize);
+            base[n] = (z == 0.0 && projectCentreSphere.isEmpty())
+                    ? surface[n]
+                    : getVertex(x, y, baseThickness + zMin);
+            floor[n] = getVertex(x, y, zMin);
+        }
+        writeWall(stl, base, surface);
+        writeWall(stl, floor, base);
+
+        float[] centre = getVertex(xMin + xRange / 2, yMin + yRange / 2, zMin);
+        for (int n = 0; n < floor.length; n++) {
+            writeTriangle(stl, centre, floor[(n + 1) % floor.length], floor[n]);
+        }
+    }
+
+    private static void writeWall(TriangleWriter stl, float[][] lower, float[][] upper) throws IOException {
+        for (int n = 0; n < lower.length; n++) {
+            int m = (n + 1) % lower.length;
+            writeTriangle(stl, lower[n], lower[m], upper[m]);
+            writeTriangle(stl, lower[n], upper[m], upper[n]);
+        }
+    }
+
+    /** As IndexedMesh, triangles which repeat a vertex have no area and are dropped. */
+    private static void writeTriangle(TriangleWriter stl, float[] v0, float[] v1, float[] v2) throws IOException {
+        if (v0 == v1 || v1 == v2 || v2 == v0) {
+            return;
+        }
+        stl.write(v0[0], v0[1], v0[2], v1[0], v1[1], v1[2], v2[0], v2[1], v2[2]);
+    }
+
+    private void addSurfaceVertex(IndexedMesh.Builder mesh, double x, double y, double z) {
+        float[] v = getSurfaceVertex(x, y, z);
+        mesh.addVertex(v[0], v[1], v[2]);
+    }
+
+    private float[] getSurfaceVertex(double x, double y, double z) {
+        if (projectCentreSphere.isPresent()) {
+            var c = BuildPrintSurface.projectFromCentrePoint(projectCentreSphere.get(), baseThickness, new Coords3d(x, y, z));
+            return getVertex(c.getX(), c.getY(), c.getZ());
+        }
+        return getVertex(x, y, z);
+    }
+
+    /** As held by IndexedMesh, as floats. */
+    private static float[] getVertex(double x, double y, double z) {
+        return new float[] {(float) x, (float) y, (float) z};
+    }
+
+    /** Join two rings of vertices, lower and upper, both anti-clockwise from above, facing outwards. */
+    private static void addWall(IndexedMesh.Builder mesh, int[] lower, int[] upper) {
+        for (int n = 0; n < lower.length; n++) {
+            int m = (n + 1) % lower.length;
+            mesh.addTriangle(lower[n], lower[m], upper[m]);
+            mesh.addTriangle(lower[n], upper[m], upper[n]);
+        }
+    }
+
+    /** The edge of the grid, anti-clockwise seen from above, as indexes i + j * iSize. */
+    private static int[] getPerimeter(int iSize, int jSize) {
+        int[] perimeter = new int[2 * (iSize - 1) + 2 * (jSize - 1)];
+        int n = 0;
+        for (int i = 0; i < iSize - 1; i++) {
+            perimeter[n++] = i;
+        }
+        for (int j = 0; j < jSize - 1; j++) {
+            perimeter[n++] = (iSize - 1) + j * iSize;
+        }
+        for (int i = iSize - 1; i > 0; i--) {
+            perimeter[n++] = i + (jSize - 1) * iSize;
+        }
+        for (int j = jSize - 1; j > 0; j--) {
+            perimeter[n++] = j * iSize;
+        }
+        return perimeter;
+    }
+
+    //region Mappers, as BuildPrintSurface
+
+    private double mapX(int i, int iSize) {
+        return ((double) i / (iSize - 1) * xRange) + xMin;
+    }
+
+    private double mapY(int j, int jSize) {
+        return ((double) j / (jSize - 1) * yRange) + yMin;
+    }
+
+    private double mapZ(double k) {
+        return (k * zRange) + baseThickness + zMin;
+    }
+
+    //endregion
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("xMin", xMin)
+                .add("yMin", yMin)
+                .add("zMin", zMin)
+                .add("xRange", xRange)
+                .add("yRange", yRange)
+                .add("zRange", zRange)
+                .add("baseThickness", baseThickness)
+                .add("projectCentreSphere", projectCentreSphere)
+                .toString();
+    }
+}
@@ -0,0 +1,18 @@
+package com.codecritical.lib.model;
+
+/*
+ * Chisel3D, (C) 2024 Ben Clewett & Code Critical Ltd
+ */
+
+import javax.annotation.ParametersAreNonnullByDefault;
+
+/** A grid of occupied cells, indexed from zero. */
+@ParametersAreNonnullByDefault
+public interface IVoxels {
+    int getISize();
+    int getJSize();
+    int getKSize();
+
+    /** Occupied, false outside the grid. */
+    boolean isSet(int i, int j, int k);
+}
@@ -0,0 +1,96 @@
+package com.codecritical.lib.model;
+
+/*
+ * Chisel3D, (C) 2024 Ben Clewett & Code Critical Ltd
+ */
+
+import com.google.common.base.MoreObjects;
+
+import javax.annotation.ParametersAreNonnullByDefault;
+import java.util.Arrays;
+
+/**
+ * Triangle mesh with shared vertices.
+ * <br>
+ * Vertices are held as x, y, z triplets, triangles as three vertex indexes, anti-clockwise when seen from outside.
+ */
+@ParametersAreNonnullByDefault
+public class IndexedMesh {
+
+    private final float[] vertices;
+    private final int[] indices;
+
+    private IndexedMesh(float[] vertices, int[] indices) {
+        this.vertices = vertices;
+        this.indices = indices;
+    }
+
+    public int getVertexCount() {
+        return vertices.length / 3;
+    }
+
+    public int getTriangleCount() {
+        return indices.length / 3;
+    }
+
+    /** Coordinate, 0 = x, 1 = y, 2 = z, of a vertex. */
+    public float getVertex(int vertex, int axis) {
+        return vertices[vertex * 3 + axis];
+    }
+
+    /** Vertex index, 0 to 2, of a triangle. */
+    public int getIndex(int triangle, int corner) {
+        return indices[triangle * 3 + corner];
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("vertices", getVertexCount())
+                .add("triangles", getTriangleCount())
+                .toString();
+    }
+
+    public static class Builder {
+        private float[] vertices = new float[3 * 1024];
+        private int[] indices = new int[3 * 1024];
+        private int vertexLength = 0, indexLength = 0;
+
+        private Builder() {}
+
+        /** Returns the index of the new vertex. */
+        public int addVertex(double x, double y, double z) {
+            if (vertexLength + 3 > vertices.length) {
+                vertices = Arrays.copyOf(vertices, vertices.length * 2);
+            }
+            vertices[vertexLength++] = (float) x;
+            vertices[vertexLength++] = (float) y;
+            vertices[vertexLength++] = (float) z;
+            return vertexLength / 3 - 1;
+        }
+
+        /** Anti-clockwise when seen from outside.  Triangles which repeat a vertex have no area and are dropped. */
+        public Builder addTriangle(int v0, int v1, int v2) {
+            if (v0 == v1 || v1 == v2 || v2 == v0) {
+                return this;
+            }
+            if (indexLength + 3 > indices.length) {
+                indices = Arrays.copyOf(indices, indices.length * 2);
+            }
+            indices[indexLength++] = v0;
+            indices[indexLength++] = v1;
+            indices[indexLength++] = v2;
+            return this;
+        }
+
+        public IndexedMesh build() {
+            return new IndexedMesh(
+                    Arrays.copyOf(vertices, vertexLength),
+                    Arrays.copyOf(indices, indexLength));
+        }
+    }
+}
@@ -6,13 +6,20 @@ package com.codecritical.lib.model;
 
 import com.codecritical.lib.config.Config;
 import com.codecritical.lib.config.ConfigReader;
+import com.codecritical.lib.mapping.HeightmapFile;
 import com.codecritical.lib.mapping.IMapArray;
 import com.codecritical.lib.mapping.MapArray;
+import com.codecritical.lib.mapping.Parallel;
+import com.codecritical.lib.mapping.Subdivision;
 import com.google.common.base.MoreObjects;
 import com.google.common.collect.ImmutableList;
 
 import javax.annotation.ParametersAreNonnullByDefault;
-import java.util.function.Function;
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.function.DoubleUnaryOperator;
 import java.util.logging.Logger;
 
 @ParametersAreNonnullByDefault
@@ -20,13 +27,63 @@ public abstract class JuliaSet {
 
     protected static final Logger logger = Logger.getLogger("");
 
+    /** How pixels are calculated.  AUTO picks by the width of the window. */
+    public enum Precision {
+        AUTO, DOUBLE, DOUBLE_DOUBLE, PERTURBATION
+    }
+
+    /**
+     * How the map is filled.  SUBDIVIDE skips the inside of tiles with a border of one value.  VECTOR_ROWS iterates
+     * several pixels of a row at once, where the fractal has an EscapeFormula.
+     */
+    public enum Renderer {
+        ROWS, SUBDIVIDE, VECTOR_ROWS
+    }
+
+    /** True where the JVM was started with --add-modules jdk.incubator.vector. */
+    private static final boolean VECTOR_AVAILABLE = ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent();
+
+    /** Below this window width AUTO uses perturbation, where the fractal has it. */
+    static final double PERTURBATION_WIDTH = 1e-10;
+
+    /** Below this window width AUTO uses double-double, where the fractal has it. */
+    static final double DOUBLE_DOUBLE_WIDTH = 1e-13;
+
+    /** Below this window width pixels are too close for double-double. */
+    static final double DOUBLE_DOUBLE_LIMIT = 1e-28;
+
+    /** Size of the work passed to buildPoint(DoubleDouble, DoubleDouble, DoubleDouble[]). */
+    protected static final int DOUBLE_DOUBLE_WORK = 8;
+
     protected final int maxIterations;
     protected final double i0, i1, j0, j1, iScale, jScale, iShift, jShift;
     protected final int iCount, jCount;
     protected final double iDelta, jDelta;
 
+    /** Null where the map is built by tile, with buildRows(). */
     protected final MapArray map;
     protected final boolean polarCoordinates, insideOut;
+    protected final boolean buildByTile;
+    protected final int threadCount;
+    protected final Precision precision;
+    protected final Renderer renderer;
+
+    /** Window with every digit of the config, for zooms too deep for i0, i1 etc. */
+    protected final BigDecimal i0Exact, i1Exact, j0Exact, j1Exact;
+
+    /** Decided on first use. */
+    private Precision resolvedPrecision;
+    private Renderer resolvedRenderer;
+
+    /** Window for double-double pixels, set when building with them. */
+    private DoubleDouble i0DoubleDouble, iDeltaDoubleDouble, j0DoubleDouble, jDeltaDoubleDouble;
+
+    /** Values a double-double pixel is worked in, made once for each thread, so a pixel makes none. */
+    private final ThreadLocal<DoubleDouble[]> doubleDoubleWork = ThreadLocal.withInitial(() -> {
+        var work = new DoubleDouble[DOUBLE_DOUBLE_WORK];
+        Arrays.setAll(work, n -> new DoubleDouble());
+        return work;
+    });
 
     protected ImmutableList<ITranslate> translates;
 
@@ -56,6 +113,15 @@ public abstract class JuliaSet {
 
         logger.info(String.format("Width: i=%.20f j=%.20f", iLen, jLen));
 
+        BigDecimal[] iExact = getExactRange(config, Config.Fractal.Model.I0, Config.Fractal.Model.I1,
+                Config.Fractal.Model.I_SCALE, Config.Fractal.Model.I_SHIFT);
+        BigDecimal[] jExact = getExactRange(config, Config.Fractal.Model.J0, Config.Fractal.Model.J1,
+                Config.Fractal.Model.J_SCALE, Config.Fractal.Model.J_SHIFT);
+        this.i0Exact = iExact[0];
+        this.i1Exact = iExact[1];
+        this.j0Exact = jExact[0];
+        this.j1Exact = jExact[1];
+
         logger.info(String.format("Using:\r\n" +
                 "Config.Fractal.Model.I0=%.20f\r\n" +
                 "Config.Fractal.Model.I1=%.20f\r\n" +
@@ -76,8 +142,13 @@ public abstract class JuliaSet {
 
         this.polarCoordinates = config.asBoolean(Config.Fractal.Model.POLAR_COORDINATES);
         this.insideOut = config.asBoolean(Config.Fractal.Model.INSIDE_OUT);
+        this.threadCount = Parallel.getThreadCount(config, Config.Fractal.Model.THREAD_COUNT);
+        this.precision = (Precision) config.asEnum(Precision.class, Config.Fractal.Model.PRECISION);
+        this.renderer = (Renderer) config.asEnum(Renderer.class, Config.Fractal.Model.RENDERER);
 
-        this.map = new MapArray(iCount, jCount);
+        // Tiled prints build the map a band of rows at a time, unless pixels write outside their own.
+        this.buildByTile = config.asOptionalInt(Config.StlPrint.TILE_ROWS).isPresent() && isParallelSafe();
+        this.map = (buildByTile) ? null : new MapArray(iCount, jCount);
 
         this.translates = getMappings();
 
@@ -87,6 +158,82 @@ public abstract class JuliaSet {
         }
     }
 
+    /** As i0 and i1 above, without rounding to doubles. */
+    private static BigDecimal[] getExactRange(ConfigReader config, Enum min, Enum max, Enum scale, Enum shift) {
+        BigDecimal v0 = config.asBigDecimal(min);
+        BigDecimal v1 = config.asBigDecimal(max);
+        BigDecimal two = BigDecimal.valueOf(2);
+        BigDecimal width = v1.subtract(v0);
+        BigDecimal halfLen = width.multiply(config.asBigDecimal(scale)).divide(two);
+        BigDecimal mid = v1.add(v0).divide(two).add(width.multiply(config.asBigDecimal(shift)));
+        return new BigDecimal[] {mid.subtract(halfLen), mid.add(halfLen)};
+    }
+
+    /** Real part of pixel column i, exact to far below the pixel size. */
+    protected BigDecimal getExactI(int i) {
+        return i0Exact.add(i1Exact.subtract(i0Exact).multiply(BigDecimal.valueOf(i))
+                .divide(BigDecimal.valueOf(iCount), MathContext.DECIMAL128));
+    }
+
+    /** Imaginary part of pixel row j, exact to far below the pixel size. */
+    protected BigDecimal getExactJ(int j) {
+        return j0Exact.add(j1Exact.subtract(j0Exact).multiply(BigDecimal.valueOf(j))
+                .divide(BigDecimal.valueOf(jCount), MathContext.DECIMAL128));
+    }
+
+    /**
+     * The precision to build with, where AUTO is decided by the window width.  Perturbation and double-double need
+     * the fractal to support them, and the plain one to one mapping of pixels.
+     */
+    protected Precision getPrecision() {
+        if (resolvedPrecision == null) {
+            resolvedPrecision = resolvePrecision();
+            logger.info("Precision: " + resolvedPrecision);
+        }
+        return resolvedPrecision;
+    }
+
+    private Precision resolvePrecision() {
+        double width = Math.min(i1Exact.subtract(i0Exact).doubleValue(), j1Exact.subtract(j0Exact).doubleValue());
+        Precision p = precision;
+        if (p == Precision.AUTO) {
+            if (hasPerturbation() && width < PERTURBATION_WIDTH) {
+                p = Precision.PERTURBATION;
+            } else if (hasDoubleDouble() && width < DOUBLE_DOUBLE_WIDTH) {
+                p = Precision.DOUBLE_DOUBLE;
+            } else {
+                p = Precision.DOUBLE;
+            }
+        }
+        if ((p == Precision.PERTURBATION && !hasPerturbation()) || (p == Precision.DOUBLE_DOUBLE && !hasDoubleDouble())) {
+            logger.warning("No " + p + " for " + getClass().getSimpleName() + ", using " + Precision.DOUBLE);
+            p = Precision.DOUBLE;
+        }
+        if (p != Precision.DOUBLE && translates.size() > 1) {
+            logger.warning(p + " can't be used with polar or inside out, using " + Precision.DOUBLE);
+            p = Precision.DOUBLE;
+        }
+        if (p == Precision.DOUBLE_DOUBLE && width < DOUBLE_DOUBLE_LIMIT) {
+            logger.warning("Window width " + width + " is beyond " + p);
+        }
+        return p;
+    }
+
+    /** True where the fractal overrides buildPixel() with perturbation. */
+    protected boolean hasPerturbation() {
+        return false;
+    }
+
+    /** The formula of buildPoint(), where the vector kernel can run it. */
+    protected Optional<EscapeFormula> getEscapeFormula() {
+        return Optional.empty();
+    }
+
+    /** True where the fractal overrides buildPoint(DoubleDouble, DoubleDouble, DoubleDouble[]). */
+    protected boolean hasDoubleDouble() {
+        return false;
+    }
+
     private ImmutableList<ITranslate> getMappings() {
         ImmutableList.Builder<ITranslate> builder = new ImmutableList.Builder<>();
         builder.add(ITranslate.ONE_TO_ONE);
@@ -99,27 +246,158 @@ public abstract class JuliaSet {
         return builder.build();
     }
 
+    /** Rows are independent, so are shared over threads.  Each pixel is the same calculation whatever the thread count. */
     protected void buildMap() {
-        for (int j = 0; j < jCount; j++) {
-            for (int i = 0; i < iCount; i++) {
-                double[] p = new double[] {
-                        i * iDelta + i0,
-                        j * jDelta + j0
-                };
-                for (var translate : translates) {
-                    p = translate.translate(p);
-                }
-                Double z = buildPoint(p[0], p[1]);
-                if (z != null) {
-                    map.set(i, j, z);
+        if (buildByTile) {
+            logger.info("Map is built by tile.");
+            return;
+        }
+        logger.info("Building map " + getRenderer() + ", threads=" + threadCount);
+        buildRows(map, 0);
+    }
+
+    /**
+     * Rows jFrom to jTo - 1 of the map, for tiled prints.  These are built here, unless the whole map is held, in
+     * which case they are copied from it.
+     */
+    public MapArray buildRows(int jFrom, int jTo) {
+        MapArray rows = new MapArray(iCount, jTo - jFrom);
+        if (map == null) {
+            buildRows(rows, jFrom);
+        } else {
+            for (int j = jFrom; j < jTo; j++) {
+                for (int i = 0; i < iCount; i++) {
+                    rows.set(i, j - jFrom, map.get(i, j));
                 }
             }
         }
+        return rows;
+    }
+
+    /** Fill target with the rows of the map from jFrom. */
+    private void buildRows(MapArray target, int jFrom) {
+        if (getPrecision() == Precision.DOUBLE_DOUBLE && i0DoubleDouble == null) {
+            i0DoubleDouble = new DoubleDouble(i0Exact);
+            j0DoubleDouble = new DoubleDouble(j0Exact);
+            iDeltaDoubleDouble = new DoubleDouble(i1Exact.subtract(i0Exact)
+                    .divide(BigDecimal.valueOf(iCount), MathContext.DECIMAL128));
+            jDeltaDoubleDouble = new DoubleDouble(j1Exact.subtract(j0Exact)
+                    .divide(BigDecimal.valueOf(jCount), MathContext.DECIMAL128));
+        }
+        int rows = target.getJSize();
+        switch (getRenderer()) {
+            case SUBDIVIDE -> Subdivision.fill(threadCount, target, (i, j) -> buildSubdivisionPixel(i, j + jFrom));
+            case VECTOR_ROWS -> {
+                EscapeFormula formula = getEscapeFormula().orElseThrow();
+                Parallel.forEach(threadCount, rows, j -> buildVectorRow(formula, target, j, jFrom));
+            }
+            default -> {
+                int rowThreadCount = (isParallelSafe()) ? threadCount : 1;
+                Parallel.forEach(rowThreadCount, rows, j -> buildRow(target, j, jFrom));
+            }
+        }
+    }
+
+    /** The renderer to build with, where those which can't be used fall back to ROWS. */
+    private Renderer getRenderer() {
+        if (resolvedRenderer == null) {
+            resolvedRenderer = resolveRenderer();
+        }
+        return resolvedRenderer;
+    }
+
+    /** False where the JVM was run without jdk.incubator.vector, so VECTOR_ROWS falls back to ROWS. */
+    protected boolean isVectorAvailable() {
+        return VECTOR_AVAILABLE;
+    }
+
+    private Renderer resolveRenderer() {
+        if (renderer == Renderer.SUBDIVIDE && !isParallelSafe()) {
+            logger.warning(renderer + " can't be used with " + getClass().getSimpleName() + ", using " + Renderer.ROWS);
+            return Renderer.ROWS;
+        }
+        if (renderer == Renderer.VECTOR_ROWS) {
+            if (!isVectorAvailable()) {
+                logger.warning("No jdk.incubator.vector module, using " + Renderer.ROWS);
+                return Renderer.ROWS;
+            }
+            if (getEscapeFormula().isEmpty() || getPrecision() != Precision.DOUBLE || translates.size() > 1) {
+                logger.warning(renderer + " can't be used with " + getClass().getSimpleName()
+                        + " at this precision or mapping, using " + Renderer.ROWS);
+                return Renderer.ROWS;
+            }
+        }
+        return renderer;
+    }
+
+    private void buildVectorRow(EscapeFormula formula, MapArray target, int j, int jFrom) {
+        double[] r = new double[iCount];
+        for (int i = 0; i < iCount; i++) {
+            r[i] = i * iDelta + i0;
+        }
+        double[] row = new double[iCount];
+        VectorKernel.buildRow(formula, r, (j + jFrom) * jDelta + j0, maxIterations, row);
+        for (int i = 0; i < iCount; i++) {
+            target.set(i, j, row[i]);
+        }
+    }
+
+    /** As set on the map by buildRow(), where null is no point. */
+    private double buildSubdivisionPixel(int i, int j) {
+        Double z = buildPixel(i, j);
+        return (z == null) ? Double.NaN : z;
+    }
+
+    private void buildRow(MapArray target, int j, int jFrom) {
+        for (int i = 0; i < iCount; i++) {
+            Double z = buildPixel(i, j + jFrom);
+            if (z != null) {
+                target.set(i, j, z);
+            }
+        }
+    }
+
+    /** Value of pixel (i, j), by default buildPoint() at its translated position. */
+    protected Double buildPixel(int i, int j) {
+        if (i0DoubleDouble != null) {
+            DoubleDouble[] work = doubleDoubleWork.get();
+            return buildPoint(
+                    work[0].set(iDeltaDoubleDouble).multiply(i).add(i0DoubleDouble),
+                    work[1].set(jDeltaDoubleDouble).multiply(j).add(j0DoubleDouble),
+                    work);
+        }
+        double[] p = getPoint(i, j);
+        return buildPoint(p[0], p[1]);
+    }
+
+    /** Position of pixel (i, j) on the complex plane, after any polar or inside out mapping. */
+    protected double[] getPoint(int i, int j) {
+        double[] p = new double[] {
+                i * iDelta + i0,
+                j * jDelta + j0
+        };
+        for (var translate : translates) {
+            p = translate.translate(p);
+        }
+        return p;
+    }
+
+    /** False where buildPoint writes outside its own pixel, e.g. with plotOnMap(), so rows must be built on one thread. */
+    protected boolean isParallelSafe() {
+        return true;
     }
 
     protected abstract Double buildPoint(double i, double j);
 
-    protected void plotOnMap(double rZ, double iZ, Function<Double, Double> action) {
+    /**
+     * As buildPoint(double, double), to about 32 digits, where hasDoubleDouble().  i and j are work[0] and work[1],
+     * the rest of work is free for the iteration, so it makes no objects.
+     */
+    protected Double buildPoint(DoubleDouble i, DoubleDouble j, DoubleDouble[] work) {
+        throw new RuntimeException("No double-double for " + getClass().getSimpleName());
+    }
+
+    protected void plotOnMap(double rZ, double iZ, DoubleUnaryOperator action) {
         int i = (int)((rZ - i0) / iDelta);
         int j = (int)((iZ - j0) / jDelta);
 
@@ -132,9 +410,17 @@ public abstract class JuliaSet {
 
 
     public IMapArray getMap() {
+        if (map == null) {
+            throw new RuntimeException("Map is built by tile, with buildRows().");
+        }
         return map;
     }
 
+    /** What the map is of, for saving with it. */
+    public HeightmapFile.Header getHeader() {
+        return new HeightmapFile.Header(iCount, jCount, maxIterations, i0, i1, j0, j1);
+    }
+
     public String toString() {
         return MoreObjects.toStringHelper(this)
                 .add("maxIterations", maxIterations)
@@ -145,6 +431,10 @@ public abstract class JuliaSet {
                 .add("iCount", iCount)
                 .add("jCount", jCount)
                 .add("polarCoordinates", polarCoordinates)
+                .add("threadCount", threadCount)
+                .add("precision", precision)
+                .add("renderer", renderer)
+                .add("buildByTile", buildByTile)
                 .toString();
     }
 }
\ No newline at end of file
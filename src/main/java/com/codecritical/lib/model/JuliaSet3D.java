@@ -7,12 +7,11 @@ package com.codecritical.lib.model;
 
 import com.codecritical.lib.config.Config;
 import com.codecritical.lib.config.ConfigReader;
+import com.codecritical.lib.mapping.Parallel;
 import com.google.common.base.MoreObjects;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 
-import java.util.HashMap;
-import java.util.Map;
 import java.util.logging.Logger;
 import java.util.stream.Stream;
 
@@ -24,8 +23,13 @@ public abstract class JuliaSet3D {
     protected final double iScale, jScale, iShift, jShift, kScale, kShift;
     protected final int iCount, jCount, kCount;
     protected final double iDelta, jDelta, kDelta;
+    protected final int threadCount;
 
-    protected ImmutableSet<MapPoint3D> map;
+    /** Pillars in coordinates, made from the voxels when first asked for. */
+    private ImmutableSet<MapPoint3D> map;
+
+    /** Occupied cells, by index, after removal of unjoined points.  Made when first asked for. */
+    private VoxelGrid voxels;
 
 
     protected JuliaSet3D(ConfigReader config) {
@@ -89,148 +93,96 @@ public abstract class JuliaSet3D {
         this.jDelta = (j1 - j0) / (double) jCount;
         this.kDelta = (k1 - k0) / (double) kCount;
 
-        logger.info(this.toString());
+        this.threadCount = Parallel.getThreadCount(config, Config.Fractal.Model.THREAD_COUNT);
 
-        build();
+        logger.info(this.toString());
     }
 
-    void build() {
-
-        map = buildMap();
-
-        logger.info("Points created: " + map.size());
-
-        map = map.stream()
-                .filter(p -> !unjoinedPoint(p, map))
-                .collect(ImmutableSet.toImmutableSet());
-        logger.info("Points after removal of unjoined: " + map.size());
+    private void build() {
 
-        map = extendToPillars(map);
-        logger.info("Points converted to pillars: " + map.size());
+        VoxelGrid grid = buildMap();
+        logger.info("Points created: " + grid.count());
 
-        map = map.stream()
-                .map(this::pointToCoordinates)
-                .collect(ImmutableSet.toImmutableSet());
+        voxels = grid.withoutUnjoined();
+        logger.info("Points after removal of unjoined: " + voxels.count());
     }
 
-    private ImmutableSet<MapPoint3D> extendToPillars(ImmutableSet<MapPoint3D> map) {
-
-        Map<MapPoint3D, MapPoint3D> pillars = new HashMap<>();
-        map.forEach(p -> pillars.put(p, p));
-
-        double i0, i1, j0, j1, k0, k1;
-        i0 = j0 = k0 = Double.MAX_VALUE;
-        i1 = j1 = k1 = Double.MIN_VALUE;
-        for (var p : map) {
-            i0 = Math.min(i0, p.i);
-            i1 = Math.max(i1, p.i);
-            j0 = Math.min(j0, p.j);
-            j1 = Math.max(j1, p.j);
-            k0 = Math.min(k0, p.k);
-            k1 = Math.max(k1, p.k);
-        };
-
-        for (double j = j0; j <= j1; j += 1.0) {
-            for (double k = k0; k <= k1; k += 1.0) {
-                for (double i = i0; i <= i1; i += 1.0) {
-                    MapPoint3D p = pillars.get(new MapPoint3D(i, j, k));
-                    if (p == null || p.iLength != 1.0) {
-                        continue;
-                    }
-                    MapPoint3D iStart, iEnd;
-                    iStart = iEnd = p;
-
-                    MapPoint3D iTest = p.mutate().decI().build();
-                    while (pillars.containsKey(iTest) && pillars.get(iTest).iLength == 1.0) {
-                        iTest = iTest.mutate().decI().build();
-                        iStart = iTest;
-                    }
-
-                    iTest = p.mutate().incI().build();
-                    while (pillars.containsKey(iTest) && pillars.get(iTest).iLength == 1.0) {
-                        iTest = iTest.mutate().incI().build();
-                        iEnd = iTest;
-                    }
+    /** Each run of cells along i as one pillar, in coordinates. */
+    private ImmutableSet<MapPoint3D> buildPillars() {
+        ImmutableSet.Builder<MapPoint3D> builder = ImmutableSet.builder();
+        getVoxels().forEachRun((i, j, k, length) -> builder.add(new MapPoint3D(
+                i * iDelta + i0,
+                j * jDelta + j0,
+                k * kDelta + k0,
+                length)));
+        var pillars = builder.build();
+        logger.info("Points converted to pillars: " + pillars.size());
+        return pillars;
+    }
 
-                    if (iStart.i != iEnd.i) {
-                        // Hit, we have a pillar
-                        int iLength = (int)(iEnd.i - iStart.i);
-                        for (double iPillar = iStart.i; iPillar <= iEnd.i; iPillar += 1.0) {
-                            MapPoint3D pNew = iStart.mutate()
-                                    .setI(iPillar)
-                                    .setILength((iPillar == iStart.i) ? iLength : 0)
-                                    .build();
-                            pillars.put(pNew, pNew);
-                        }
+    /**
+     * Evaluate every cell, one j slice per work item.  Each slice sets only its own words of the grid, so the result
+     * does not depend on the thread count.
+     */
+    protected VoxelGrid buildMap() {
+        VoxelGrid grid = new VoxelGrid(iCount, jCount, kCount);
+        Parallel.forEach(threadCount, jCount, j -> {
+            for (int i = 0; i < iCount; i++) {
+                for (int k = 0; k < kCount; k++) {
+                    boolean b = buildPoint(i * iDelta + i0, j * jDelta + j0, k * kDelta + k0);
+                    if (b) {
+                        grid.set(i, j, k);
                     }
                 }
             }
-        }
-
-        return pillars.values().stream()
-                .filter(p -> p.iLength != 0)
-                .collect(ImmutableSet.toImmutableSet());
-    }
-
-    private MapPoint3D pointToCoordinates(MapPoint3D point) {
-        return point.mutate()
-                .setI(i -> i * iDelta + i0)
-                .setJ(j -> j * jDelta + j0)
-                .setK(k -> k * kDelta + k0)
-                .build();
+        });
+        return grid;
     }
 
-    final static int[] UNJOINED_RANGE = new int[] {-1, 1};
-
-    private boolean unjoinedPoint(MapPoint3D point, ImmutableSet<MapPoint3D> newMap) {
-
-        for (int i : UNJOINED_RANGE) {
-            MapPoint3D p = new MapPoint3D(point.i + i,point.j, point.k);
-            if (newMap.contains(p)) {
-                return false;
-            }
-        }
-
-        for (int j : UNJOINED_RANGE) {
-            MapPoint3D p = new MapPoint3D(point.i,point.j + j, point.k);
-            if (newMap.contains(p)) {
-                return false;
-            }
-        }
-
-        for (int k : UNJOINED_RANGE) {
-            MapPoint3D p = new MapPoint3D(point.i,point.j, point.k + k);
-            if (newMap.contains(p)) {
-                return false;
-            }
-        }
+    protected abstract boolean buildPoint(double i, double j, double k);
 
-        return true;
+    /**
+     * Density at a point, 1 inside falling towards 0 outside.  By default this is only inside or outside, a fractal
+     * can do better by using how soon the point escapes.
+     */
+    protected double buildDensity(double i, double j, double k) {
+        return buildPoint(i, j, k) ? 1.0 : 0.0;
     }
 
-    protected ImmutableSet<MapPoint3D> buildMap() {
-        ImmutableSet.Builder<MapPoint3D> builder = ImmutableSet.builder();
-        for (short j = 0; j < jCount; j++) {
-            for (short i = 0; i < iCount; i++) {
-                for (short k = 0; k < kCount; k++) {
-                    boolean b = buildPoint(i * iDelta + i0, j * jDelta + j0, k * kDelta + k0);
-                    if (b) {
-                        builder.add(new MapPoint3D(i, j, k));
-                    }
+    /** Density over the whole volume, with a count of samples in each direction from the first edge to the last. */
+    public DensityField sampleDensity(int iSamples, int jSamples, int kSamples) {
+        double iStep = (i1 - i0) / Math.max(1, iSamples - 1);
+        double jStep = (j1 - j0) / Math.max(1, jSamples - 1);
+        double kStep = (k1 - k0) / Math.max(1, kSamples - 1);
+        DensityField field = new DensityField(iSamples, jSamples, kSamples);
+        Parallel.forEach(threadCount, jSamples, j -> {
+            for (int i = 0; i < iSamples; i++) {
+                for (int k = 0; k < kSamples; k++) {
+                    field.set(i, j, k, buildDensity(i * iStep + i0, j * jStep + j0, k * kStep + k0));
                 }
             }
-        }
-        return builder.build();
+        });
+        logger.info("Density sampled: " + field);
+        return field;
     }
 
-    protected abstract boolean buildPoint(double i, double j, double k);
-
     public ImmutableSet<MapPoint3D> getMap() {
+        if (map == null) {
+            map = buildPillars();
+        }
         return map;
     }
 
     public Stream<MapPoint3D> stream() {
-        return map.stream();
+        return getMap().stream();
+    }
+
+    /** Occupied cells by index, which are at i * iDelta + i0 etc. */
+    public VoxelGrid getVoxels() {
+        if (voxels == null) {
+            build();
+        }
+        return voxels;
     }
 
     public double getISize() {
@@ -269,6 +221,7 @@ public abstract class JuliaSet3D {
                 .add("iCount", iCount)
                 .add("jCount", jCount)
                 .add("kCount", kCount)
+                .add("threadCount", threadCount)
                 .toString();
     }
 }
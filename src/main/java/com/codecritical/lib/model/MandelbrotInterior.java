@@ -0,0 +1,31 @@
+package com.codecritical.lib.model;
+
+/*
+ * Chisel3D, (C) 2024 Ben Clewett & Code Critical Ltd
+ */
+
+import javax.annotation.ParametersAreNonnullByDefault;
+
+/** Points known to be in the Mandelbrot set without iterating, z = z^2 + c from z = 0. */
+@ParametersAreNonnullByDefault
+public class MandelbrotInterior {
+
+    // Static Class
+    private MandelbrotInterior() {}
+
+    /** Inside the main cardioid or the period 2 bulb to its left. */
+    public static boolean isInterior(double rC, double iC) {
+        return isInMainCardioid(rC, iC) || isInPeriod2Bulb(rC, iC);
+    }
+
+    static boolean isInMainCardioid(double rC, double iC) {
+        double x = rC - 0.25;
+        double q = x * x + iC * iC;
+        return q * (q + x) <= 0.25 * iC * iC;
+    }
+
+    static boolean isInPeriod2Bulb(double rC, double iC) {
+        double x = rC + 1.0;
+        return x * x + iC * iC <= 0.0625;
+    }
+}
@@ -0,0 +1,216 @@
+package com.codecritical.lib.model;
+
+/*
+ * Chisel3D, (C) 2024 Ben Clewett & Code Critical Ltd
+ */
+
+import com.google.common.base.MoreObjects;
+
+import javax.annotation.ParametersAreNonnullByDefault;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.logging.Logger;
+
+/**
+ * Smooth mesh of the iso surface of a density field.
+ * <br>
+ * Each cube between eight samples is cut into six tetrahedra which all share the cube's main diagonal, so
+ * neighbouring cubes meet on the same triangles and the surface is closed without the ambiguous cases of marching
+ * cubes.  Where an edge crosses the iso level a vertex is placed by linear interpolation, and shared by every
+ * triangle on that edge.  Sample (i, j, k) is at origin + (i, j, k) * size.
+ */
+@ParametersAreNonnullByDefault
+public class MarchingTetrahedraMesher {
+    static final Logger logger = Logger.getLogger("");
+
+    /** Cube corners by bit, x = 1, y = 2, z = 4. */
+    private static final int[][] TETRAHEDRA = new int[][] {
+            {0, 1, 3, 7}, {0, 1, 5, 7}, {0, 2, 3, 7}, {0, 2, 6, 7}, {0, 4, 5, 7}, {0, 4, 6, 7}
+    };
+
+    private final double[] origin;
+    private final double[] size;
+    private final double zFloor;
+    private final double isoLevel;
+
+    /**
+     * @param zFloor nothing is made below this z, vertices below are moved up to it.
+     * @param isoLevel samples at or above this are inside.
+     */
+    public MarchingTetrahedraMesher(double x0, double y0, double z0, double xSize, double ySize, double zSize,
+                                    double zFloor, double isoLevel) {
+        this.origin = new double[] {x0, y0, z0};
+        this.size = new double[] {xSize, ySize, zSize};
+        this.zFloor = zFloor;
+        this.isoLevel = isoLevel;
+    }
+
+    public IndexedMesh mesh(DensityField field) {
+        return new Run(field).mesh();
+    }
+
+    /** State for one field. */
+    private class Run {
+        private final DensityField field;
+        private final IndexedMesh.Builder mesh = IndexedMesh.builder();
+        private final Map<Long, Integer> vertices = new HashMap<>();
+        private final long iPad, jPad, kPad;
+
+        // Corners of the tetrahedron in hand.
+        private final int[][] cell = new int[4][3];
+        private final double[] value = new double[4];
+        private final long[] key = new long[4];
+
+        Run(DensityField field) {
+            this.field = field;
+            // One sample of padding all round.
+            this.iPad = field.getISize() + 2;
+            this.jPad = field.getJSize() + 2;
+            this.kPad = field.getKSize() + 2;
+        }
+
+        IndexedMesh mesh() {
+            for (int k = -1; k < field.getKSize(); k++) {
+                for (int j = -1; j < field.getJSize(); j++) {
+                    for (int i = -1; i < field.getISize(); i++) {
+                        for (int[] tetrahedron : TETRAHEDRA) {
+                            for (int c = 0; c < 4; c++) {
+                                int corner = tetrahedron[c];
+                                cell[c][0] = i + (corner & 1);
+                                cell[c][1] = j + ((corner >> 1) & 1);
+                                cell[c][2] = k + ((corner >> 2) & 1);
+                                value[c] = field.get(cell[c][0], cell[c][1], cell[c][2]);
+                                key[c] = (cell[c][0] + 1) + ((cell[c][1] + 1) + (cell[c][2] + 1) * jPad) * iPad;
+                            }
+                            addTetrahedron();
+                        }
+                    }
+                }
+            }
+
+            var out = mesh.build();
+            logger.info("Iso surface mesh built: " + out);
+            return out;
+        }
+
+        private void addTetrahedron() {
+            int[] in = new int[4];
+            int[] out = new int[4];
+            int inCount = 0, outCount = 0;
+            for (int c = 0; c < 4; c++) {
+                if (value[c] >= isoLevel) {
+                    in[inCount++] = c;
+                } else {
+                    out[outCount++] = c;
+                }
+            }
+
+            switch (inCount) {
+                case 1 -> addPolygon(in, inCount, out, outCount, new int[][] {
+                        {in[0], out[0]}, {in[0], out[1]}, {in[0], out[2]}});
+                case 2 -> addPolygon(in, inCount, out, outCount, new int[][] {
+                        {in[0], out[0]}, {in[0], out[1]}, {in[1], out[1]}, {in[1], out[0]}});
+                case 3 -> addPolygon(in, inCount, out, outCount, new int[][] {
+                        {in[0], out[0]}, {in[1], out[0]}, {in[2], out[0]}});
+                default -> {
+                    // All in or all out, no surface.
+                }
+            }
+        }
+
+        /**
+         * Triangle or quad with a vertex on each edge, in order around it.
+         * <br>
+         * Which way it faces is found from the edge midpoints, not the vertices.  Sliding each vertex along its edge
+         * does not turn it over, and the midpoints are never clamped or coincident.
+         */
+        private void addPolygon(int[] in, int inCount, int[] out, int outCount, int[][] edges) {
+            int[] v = new int[edges.length];
+            for (int n = 0; n < edges.length; n++) {
+                v[n] = vertex(edges[n][0], edges[n][1]);
+            }
+
+            // With three edges the second diagonal is just the third side.
+            int last = edges.length - 1;
+            double[] normal = cross(edges[0], edges[last - 1], edges[1], edges[last]);
+            if (!facesOut(normal, in, inCount, out, outCount)) {
+                for (int n = 0, m = last; n < m; n++, m--) {
+                    int tmp = v[n];
+                    v[n] = v[m];
+                    v[m] = tmp;
+                }
+            }
+
+            mesh.addTriangle(v[0], v[1], v[2]);
+            if (edges.length == 4) {
+                mesh.addTriangle(v[0], v[2], v[3]);
+            }
+        }
+
+        /** Vertex on the edge from an inside corner to an outside corner. */
+        private int vertex(int inside, int outside) {
+            double t = (isoLevel - value[inside]) / (value[outside] - value[inside]);
+            long pointCount = iPad * jPad * kPad;
+            // At the inside corner exactly, every edge from it shares the one vertex.
+            long edgeKey = (t <= 0.0)
+                    ? key[inside] * pointCount + key[inside]
+                    : Math.min(key[inside], key[outside]) * pointCount + Math.max(key[inside], key[outside]);
+            double tClamped = Math.max(0.0, t);
+            return vertices.computeIfAbsent(edgeKey, e -> mesh.addVertex(
+                    position(inside, outside, tClamped, 0),
+                    position(inside, outside, tClamped, 1),
+                    Math.max(zFloor, position(inside, outside, tClamped, 2))));
+        }
+
+        private double position(int inside, int outside, double t, int axis) {
+            double index = cell[inside][axis] + (cell[outside][axis] - cell[inside][axis]) * t;
+            return origin[axis] + index * size[axis];
+        }
+
+        /** (b - a) x (d - c) over edge midpoints. */
+        private double[] cross(int[] a, int[] b, int[] c, int[] d) {
+            double[] u = new double[3];
+            double[] w = new double[3];
+            for (int axis = 0; axis < 3; axis++) {
+                u[axis] = midpoint(b, axis) - midpoint(a, axis);
+                w[axis] = midpoint(d, axis) - midpoint(c, axis);
+            }
+            return new double[] {
+                    u[1] * w[2] - u[2] * w[1],
+                    u[2] * w[0] - u[0] * w[2],
+                    u[0] * w[1] - u[1] * w[0]
+            };
+        }
+
+        private double midpoint(int[] edge, int axis) {
+            return (cell[edge[0]][axis] + cell[edge[1]][axis]) * size[axis] / 2.0;
+        }
+
+        /** True if the normal points from the inside corners towards the outside corners. */
+        private boolean facesOut(double[] normal, int[] in, int inCount, int[] out, int outCount) {
+            double dot = 0.0;
+            for (int axis = 0; axis < 3; axis++) {
+                double inMean = 0.0, outMean = 0.0;
+                for (int n = 0; n < inCount; n++) {
+                    inMean += cell[in[n]][axis] * size[axis];
+                }
+                for (int n = 0; n < outCount; n++) {
+                    outMean += cell[out[n]][axis] * size[axis];
+                }
+                dot += normal[axis] * (outMean / outCount - inMean / inCount);
+            }
+            return dot > 0.0;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("origin", Arrays.toString(origin))
+                .add("size", Arrays.toString(size))
+                .add("zFloor", zFloor)
+                .add("isoLevel", isoLevel)
+                .toString();
+    }
+}
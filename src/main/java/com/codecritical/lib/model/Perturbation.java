@@ -0,0 +1,206 @@
+package com.codecritical.lib.model;
+
+/*
+ * Chisel3D, (C) 2024 Ben Clewett & Code Critical Ltd
+ */
+
+import com.google.common.base.MoreObjects;
+
+import javax.annotation.ParametersAreNonnullByDefault;
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.util.logging.Logger;
+
+/**
+ * Mandelbrot escape counts by perturbation from one reference orbit.
+ * <br>
+ * The reference Z is iterated once with BigDecimal, and kept as doubles.  Each pixel then only iterates its small
+ * difference dz from the reference, dz' = 2 Z dz + dz^2 + dc, which a double holds well however deep the zoom.
+ * <br>
+ * Where the pixel passes closer to zero than its difference (a glitch, precision lost in Z + dz) or the reference
+ * runs out, the pixel is rebased: its full z becomes the new difference from the start of the reference.
+ */
+@ParametersAreNonnullByDefault
+public class Perturbation {
+    static final Logger logger = Logger.getLogger("");
+
+    /** Digits kept beyond those needed to tell pixels apart. */
+    private static final int GUARD_DIGITS = 20;
+
+    /** Largest cubic term of the series, as a fraction of its linear term. */
+    private static final double SERIES_TOLERANCE = 1e-8;
+
+    /** Largest difference of a probe from the series, as a fraction of the probe's own difference. */
+    private static final double PROBE_TOLERANCE = 1e-6;
+
+    private final int maxIterations;
+    private final double[] zRe, zIm;
+
+    /** Last index of the reference, where it escaped or gave up. */
+    private final int length;
+
+    /** Iterations skipped by the series dz = A dc + B dc^2 + C dc^3, none until approximateSeries(). */
+    private int skip = 0;
+
+    /** Series coefficients at skip, each {re, im}. */
+    private double[][] series = new double[3][2];
+
+    /**
+     * @param pixelSize distance between pixels, which sets the precision of the reference.
+     */
+    public Perturbation(BigDecimal cRe, BigDecimal cIm, double pixelSize, int maxIterations) {
+        this.maxIterations = maxIterations;
+        this.zRe = new double[maxIterations + 1];
+        this.zIm = new double[maxIterations + 1];
+
+        int digits = Math.max(MathContext.DECIMAL64.getPrecision(),
+                (int) Math.ceil(-Math.log10(pixelSize)) + GUARD_DIGITS);
+        MathContext mc = new MathContext(digits);
+        BigDecimal two = BigDecimal.valueOf(2);
+
+        BigDecimal re = BigDecimal.ZERO, im = BigDecimal.ZERO;
+        int n = 0;
+        while (n < maxIterations) {
+            BigDecimal reTmp = re.multiply(re, mc).subtract(im.multiply(im, mc), mc).add(cRe, mc);
+            im = two.multiply(re, mc).multiply(im, mc).add(cIm, mc);
+            re = reTmp;
+            n++;
+            zRe[n] = re.doubleValue();
+            zIm[n] = im.doubleValue();
+            if (zRe[n] * zRe[n] + zIm[n] * zIm[n] > 4) {
+                break;
+            }
+        }
+        this.length = n;
+
+        logger.info("Reference orbit: " + this + ", digits=" + digits);
+    }
+
+    /** Escape count of the point dc from the reference, as buildPoint would find with exact arithmetic. */
+    public int iterate(double dcRe, double dcIm) {
+        double dzRe = 0, dzIm = 0;
+        int n = skip, m = skip;
+        if (skip > 0) {
+            double[] dz = evaluate(series, dcRe, dcIm);
+            dzRe = dz[0];
+            dzIm = dz[1];
+        }
+        while (n < maxIterations) {
+            double re = zRe[m], im = zIm[m];
+            double dzReTmp = 2 * (re * dzRe - im * dzIm) + dzRe * dzRe - dzIm * dzIm + dcRe;
+            dzIm = 2 * (re * dzIm + im * dzRe) + 2 * dzRe * dzIm + dcIm;
+            dzRe = dzReTmp;
+            m++;
+            n++;
+
+            re = zRe[m] + dzRe;
+            im = zIm[m] + dzIm;
+            double z2 = re * re + im * im;
+            if (z2 > 4) {
+                return n;
+            }
+            if (m == length || z2 < dzRe * dzRe + dzIm * dzIm) {
+                dzRe = re;
+                dzIm = im;
+                m = 0;
+            }
+        }
+        return maxIterations;
+    }
+
+    /**
+     * Find how many iterations can be skipped for every pixel within radius of the reference.
+     * <br>
+     * The coefficients follow A' = 2ZA + 1, B' = 2ZB + A^2, C' = 2ZC + 2AB.  The series is used while its cubic term
+     * is small, while no pixel can have escaped, and while it agrees with each probe iterated in full.
+     *
+     * @param probes dc of points, usually the corners and edges of the window.
+     */
+    public void approximateSeries(double radius, double[][] probes) {
+        double r2 = radius * radius, r3 = r2 * radius;
+        double[][] coefficients = new double[3][2];
+        double[][] dz = new double[probes.length][2];
+
+        skip = 0;
+        for (int n = 0; n < length - 1; n++) {
+            coefficients = nextCoefficients(coefficients, zRe[n], zIm[n]);
+
+            double a = Math.hypot(coefficients[0][0], coefficients[0][1]);
+            double b = Math.hypot(coefficients[1][0], coefficients[1][1]);
+            double c = Math.hypot(coefficients[2][0], coefficients[2][1]);
+            double bound = a * radius + b * r2 + c * r3;
+            if (!Double.isFinite(bound)
+                    || c * r3 > SERIES_TOLERANCE * a * radius
+                    || Math.hypot(zRe[n + 1], zIm[n + 1]) + bound > 2) {
+                break;
+            }
+            if (!probesAgree(probes, dz, n, coefficients)) {
+                break;
+            }
+
+            skip = n + 1;
+            series = coefficients;
+        }
+
+        logger.info("Series approximation skips " + skip + " iterations");
+    }
+
+    private static double[][] nextCoefficients(double[][] coefficients, double re, double im) {
+        double[] a = coefficients[0], b = coefficients[1], c = coefficients[2];
+        return new double[][] {
+                {2 * (re * a[0] - im * a[1]) + 1,
+                        2 * (re * a[1] + im * a[0])},
+                {2 * (re * b[0] - im * b[1]) + a[0] * a[0] - a[1] * a[1],
+                        2 * (re * b[1] + im * b[0]) + 2 * a[0] * a[1]},
+                {2 * (re * c[0] - im * c[1]) + 2 * (a[0] * b[0] - a[1] * b[1]),
+                        2 * (re * c[1] + im * c[0]) + 2 * (a[0] * b[1] + a[1] * b[0])}
+        };
+    }
+
+    /** dz = dc (A + dc (B + dc C)). */
+    private static double[] evaluate(double[][] coefficients, double dcRe, double dcIm) {
+        double re = coefficients[2][0], im = coefficients[2][1];
+        for (int term = 1; term >= 0; term--) {
+            double tmp = coefficients[term][0] + dcRe * re - dcIm * im;
+            im = coefficients[term][1] + dcRe * im + dcIm * re;
+            re = tmp;
+        }
+        return new double[] {dcRe * re - dcIm * im, dcRe * im + dcIm * re};
+    }
+
+    /** Move each probe on from iteration n and compare it to the series at n + 1. */
+    private boolean probesAgree(double[][] probes, double[][] dz, int n, double[][] coefficients) {
+        double re = zRe[n], im = zIm[n];
+        for (int p = 0; p < probes.length; p++) {
+            double dzRe = dz[p][0], dzIm = dz[p][1];
+            dz[p][0] = 2 * (re * dzRe - im * dzIm) + dzRe * dzRe - dzIm * dzIm + probes[p][0];
+            dz[p][1] = 2 * (re * dzIm + im * dzRe) + 2 * dzRe * dzIm + probes[p][1];
+
+            double[] estimate = evaluate(coefficients, probes[p][0], probes[p][1]);
+            double error = Math.hypot(estimate[0] - dz[p][0], estimate[1] - dz[p][1]);
+            if (!(error <= PROBE_TOLERANCE * Math.hypot(dz[p][0], dz[p][1]))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Iterations skipped by the series. */
+    public int getSkip() {
+        return skip;
+    }
+
+    /** Iterations of the reference before it escaped, or maxIterations. */
+    public int getLength() {
+        return length;
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("maxIterations", maxIterations)
+                .add("length", length)
+                .add("skip", skip)
+                .toString();
+    }
+}
@@ -0,0 +1,106 @@
+package com.codecritical.lib.model;
+
+/*
+ * Chisel3D, (C) 2024 Ben Clewett & Code Critical Ltd
+ */
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+import javax.annotation.ParametersAreNonnullByDefault;
+
+/**
+ * Iterates a row of pixels several at a time, one per vector lane, with the Java Vector API.
+ * <br>
+ * Lanes stop counting as they escape, and the row moves on when all have.  The arithmetic is done in the same order
+ * as the scalar kernels, without fused multiply-add, so the counts are the same to the bit.
+ * <br>
+ * This class can't be loaded without the jdk.incubator.vector module, so is only used where JuliaSet finds it.
+ */
+@ParametersAreNonnullByDefault
+class VectorKernel {
+
+    private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+
+    // Static Class
+    private VectorKernel() {}
+
+    /** Iteration counts of pixels (r[n], im) into out[n]. */
+    static void buildRow(EscapeFormula formula, double[] r, double im, int maxIterations, double[] out) {
+        // Padded to whole vectors, as masks can't be part loaded.
+        boolean[] interior = new boolean[SPECIES.loopBound(r.length) + SPECIES.length()];
+        if (formula.kind == EscapeFormula.Kind.MANDELBROT) {
+            for (int n = 0; n < r.length; n++) {
+                interior[n] = MandelbrotInterior.isInterior(r[n], im);
+            }
+        }
+
+        for (int n = 0; n < r.length; n += SPECIES.length()) {
+            VectorMask<Double> inRange = SPECIES.indexInRange(n, r.length);
+            VectorMask<Double> isInterior = VectorMask.fromArray(SPECIES, interior, n).and(inRange);
+            buildLanes(formula, DoubleVector.fromArray(SPECIES, r, n, inRange), im, maxIterations,
+                    inRange.andNot(isInterior))
+                    .blend((double) maxIterations, isInterior)
+                    .intoArray(out, n, inRange);
+        }
+    }
+
+    private static DoubleVector buildLanes(
+            EscapeFormula formula, DoubleVector pixelR, double pixelI, int maxIterations, VectorMask<Double> active) {
+
+        DoubleVector rZ, iZ, rC, iC;
+        if (formula.kind == EscapeFormula.Kind.JULIA) {
+            rZ = pixelR;
+            iZ = DoubleVector.broadcast(SPECIES, pixelI);
+            rC = DoubleVector.broadcast(SPECIES, formula.rC);
+            iC = DoubleVector.broadcast(SPECIES, formula.iC);
+        } else {
+            rZ = DoubleVector.zero(SPECIES);
+            iZ = DoubleVector.zero(SPECIES);
+            rC = pixelR;
+            iC = DoubleVector.broadcast(SPECIES, pixelI);
+        }
+
+        DoubleVector iterations = DoubleVector.zero(SPECIES);
+
+        // Brent's cycle check as the scalar kernel, all lanes save at the same powers of two.
+        DoubleVector rSaved = rZ, iSaved = iZ;
+        int period = 0, power = 1;
+
+        for (int n = 0; n < maxIterations; n++) {
+            DoubleVector rZ2 = rZ.mul(rZ);
+            DoubleVector iZ2 = iZ.mul(iZ);
+            active = active.and(rZ2.add(iZ2).compare(VectorOperators.LE, 4.0));
+            if (!active.anyTrue()) {
+                break;
+            }
+
+            DoubleVector rZiZ = switch (formula.kind) {
+                case TRICORN -> rZ.mul(-2.0).mul(iZ);
+                case BURNING_SHIP -> rZ.mul(2.0).mul(iZ).abs();
+                default -> rZ.mul(2.0).mul(iZ);
+            };
+            rZ = rZ.blend(rZ2.sub(iZ2).add(rC), active);
+            iZ = iZ.blend(rZiZ.add(iC), active);
+            iterations = iterations.add(1.0, active);
+
+            VectorMask<Double> cycled = rZ.compare(VectorOperators.EQ, rSaved)
+                    .and(iZ.compare(VectorOperators.EQ, iSaved))
+                    .and(active);
+            if (cycled.anyTrue()) {
+                iterations = iterations.blend((double) maxIterations, cycled);
+                active = active.andNot(cycled);
+            }
+            if (++period == power) {
+                rSaved = rZ;
+                iSaved = iZ;
+                period = 0;
+                power *= 2;
+            }
+        }
+
+        return iterations;
+    }
+}
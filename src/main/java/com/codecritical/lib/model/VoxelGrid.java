@@ -0,0 +1,164 @@
+package com.codecritical.lib.model;
+
+/*
+ * Chisel3D, (C) 2024 Ben Clewett & Code Critical Ltd
+ */
+
+import com.google.common.base.MoreObjects;
+
+import javax.annotation.ParametersAreNonnullByDefault;
+
+/**
+ * Packed grid of occupied cells, one bit per cell.
+ * <br>
+ * Each row along i is held in whole longs, bit i % 64 of word i / 64, so neighbours along i are found by shifting
+ * words.  Rows for different (j, k) never share a word, so rows may be set from different threads.
+ */
+@ParametersAreNonnullByDefault
+public class VoxelGrid implements IVoxels {
+
+    private final int iSize, jSize, kSize;
+    private final int rowWords;
+    private final long[] bits;
+
+    public VoxelGrid(int iSize, int jSize, int kSize) {
+        this.iSize = iSize;
+        this.jSize = jSize;
+        this.kSize = kSize;
+        this.rowWords = (iSize + 63) >>> 6;
+        this.bits = new long[rowWords * jSize * kSize];
+    }
+
+    @Override
+    public int getISize() {
+        return iSize;
+    }
+
+    @Override
+    public int getJSize() {
+        return jSize;
+    }
+
+    @Override
+    public int getKSize() {
+        return kSize;
+    }
+
+    private int row(int j, int k) {
+        return (j + k * jSize) * rowWords;
+    }
+
+    public void set(int i, int j, int k) {
+        bits[row(j, k) + (i >>> 6)] |= 1L << i;
+    }
+
+    @Override
+    public boolean isSet(int i, int j, int k) {
+        if (i < 0 || i >= iSize || j < 0 || j >= jSize || k < 0 || k >= kSize) {
+            return false;
+        }
+        return (bits[row(j, k) + (i >>> 6)] & (1L << i)) != 0;
+    }
+
+    /** Number of occupied cells. */
+    public long count() {
+        long count = 0;
+        for (long word : bits) {
+            count += Long.bitCount(word);
+        }
+        return count;
+    }
+
+    /** A copy without any cell which has no occupied neighbour on any of its six faces. */
+    public VoxelGrid withoutUnjoined() {
+        VoxelGrid out = new VoxelGrid(iSize, jSize, kSize);
+        for (int k = 0; k < kSize; k++) {
+            for (int j = 0; j < jSize; j++) {
+                int row = row(j, k);
+                for (int w = 0; w < rowWords; w++) {
+                    long word = bits[row + w];
+                    if (word == 0) {
+                        continue;
+                    }
+                    // Neighbours at i - 1 and i + 1, carried over word boundaries.
+                    long neighbours = (word << 1) | (word >>> 1);
+                    if (w > 0) {
+                        neighbours |= bits[row + w - 1] >>> 63;
+                    }
+                    if (w < rowWords - 1) {
+                        neighbours |= bits[row + w + 1] << 63;
+                    }
+                    neighbours |= getWord(j - 1, k, w) | getWord(j + 1, k, w)
+                            | getWord(j, k - 1, w) | getWord(j, k + 1, w);
+                    out.bits[row + w] = word & neighbours;
+                }
+            }
+        }
+        return out;
+    }
+
+    private long getWord(int j, int k, int w) {
+        if (j < 0 || j >= jSize || k < 0 || k >= kSize) {
+            return 0;
+        }
+        return bits[row(j, k) + w];
+    }
+
+    @FunctionalInterface
+    public interface RunConsumer {
+        void accept(int i, int j, int k, int length);
+    }
+
+    /** Each maximal run of occupied cells along i, from its lowest i. */
+    public void forEachRun(RunConsumer action) {
+        for (int k = 0; k < kSize; k++) {
+            for (int j = 0; j < jSize; j++) {
+                int row = row(j, k);
+                int i = nextSet(row, 0);
+                while (i < iSize) {
+                    int end = nextClear(row, i);
+                    action.accept(i, j, k, end - i);
+                    i = nextSet(row, end);
+                }
+            }
+        }
+    }
+
+    /** First occupied i at or after from, or iSize. */
+    private int nextSet(int row, int from) {
+        for (int w = from >>> 6; w < rowWords; w++) {
+            long word = bits[row + w];
+            if (w == from >>> 6) {
+                word &= -1L << from;
+            }
+            if (word != 0) {
+                return Math.min(iSize, (w << 6) + Long.numberOfTrailingZeros(word));
+            }
+        }
+        return iSize;
+    }
+
+    /** First empty i at or after from, or iSize. */
+    private int nextClear(int row, int from) {
+        for (int w = from >>> 6; w < rowWords; w++) {
+            long word = ~bits[row + w];
+            if (w == from >>> 6) {
+                word &= -1L << from;
+            }
+            if (word != 0) {
+                return Math.min(iSize, (w << 6) + Long.numberOfTrailingZeros(word));
+            }
+        }
+        return iSize;
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("iSize", iSize)
+                .add("jSize", jSize)
+                .add("kSize", kSize)
+                .add("count", count())
+                .toString();
+    }
+}
@@ -4,13 +4,19 @@ package com.codecritical.parts;
  * Chisel3D, (C) 2024 Ben Clewett & Code Critical Ltd
  */
 
+import com.codecritical.lib.model.IndexedMesh;
+import com.google.errorprone.annotations.CanIgnoreReturnValue;
 import eu.printingin3d.javascad.vrl.CSG;
-import eu.printingin3d.javascad.vrl.export.StlBinaryFile;
+import eu.printingin3d.javascad.vrl.Polygon;
 
+import javax.annotation.CheckForNull;
 import javax.annotation.ParametersAreNonnullByDefault;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Collection;
+import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -18,16 +24,98 @@ import java.util.logging.Logger;
 public class ExportStl {
     static final Logger logger = Logger.getLogger("");
 
-    public static void export(String fileName, CSG csg) {
-        String path = "./output/" + fileName;
+    /** Each export returns whether the print was written, and leaves any earlier print in place where it wasn't. */
+    @CanIgnoreReturnValue
+    public static boolean export(String fileName, CSG csg) {
+        return export(fileName, List.of(csg));
+    }
+
+    /** Write parts as separate shells, one polygon at a time. */
+    @CanIgnoreReturnValue
+    public static boolean export(String fileName, Collection<CSG> parts) {
+        return write(fileName, stl -> writeParts(stl, parts));
+    }
+
+    /** Write a mesh, and any other parts as separate shells, as binary STL. */
+    @CanIgnoreReturnValue
+    public static boolean export(String fileName, IndexedMesh mesh, Collection<CSG> parts) {
+        return write(fileName, stl -> {
+            writeMesh(stl, mesh);
+            writeParts(stl, parts);
+        });
+    }
+
+    /** Writes triangles to the STL file as they are made. */
+    @FunctionalInterface
+    public interface TriangleSource {
+        void write(StlWriter stl) throws IOException;
+    }
+
+    /** Write triangles as they are made, and any other parts as separate shells, as binary STL. */
+    @CanIgnoreReturnValue
+    public static boolean export(String fileName, TriangleSource triangles, Collection<CSG> parts) {
+        return write(fileName, stl -> {
+            triangles.write(stl);
+            writeParts(stl, parts);
+        });
+    }
 
+    /**
+     * Written to a temporary file beside the print, and moved into place only once whole.  So a write that fails,
+     * by any exception, leaves no part written print.
+     */
+    private static boolean write(String fileName, TriangleSource triangles) {
+        Path path = getPath(fileName);
+        Path temp = null;
         try {
-            OutputStream outputStream = new FileOutputStream(path);
-            StlBinaryFile stl = new StlBinaryFile(outputStream);
-            stl.writeToFile(csg.toFacets());
-            outputStream.close();
+            temp = Files.createTempFile(path.toAbsolutePath().getParent(), path.getFileName() + ".", ".tmp");
+            try (StlWriter stl = new StlWriter(temp)) {
+                triangles.write(stl);
+                logger.info("Triangles written: " + stl.getTriangleCount());
+            }
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return true;
         } catch (IOException ex) {
             logger.log(Level.SEVERE, null, ex);
+            return false;
+        } finally {
+            deleteTemp(temp);
+        }
+    }
+
+    private static void deleteTemp(@CheckForNull Path temp) {
+        if (temp == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(temp);
+        } catch (IOException ex) {
+            logger.warning("Temporary print can't be removed: " + ex);
+        }
+    }
+
+    /** Where a print of the file name is written. */
+    public static Path getPath(String fileName) {
+        return Path.of("./output/", fileName);
+    }
+
+    private static void writeMesh(StlWriter stl, IndexedMesh mesh) throws IOException {
+        for (int t = 0; t < mesh.getTriangleCount(); t++) {
+            int v0 = mesh.getIndex(t, 0), v1 = mesh.getIndex(t, 1), v2 = mesh.getIndex(t, 2);
+            stl.write(
+                    mesh.getVertex(v0, 0), mesh.getVertex(v0, 1), mesh.getVertex(v0, 2),
+                    mesh.getVertex(v1, 0), mesh.getVertex(v1, 1), mesh.getVertex(v1, 2),
+                    mesh.getVertex(v2, 0), mesh.getVertex(v2, 1), mesh.getVertex(v2, 2));
+        }
+    }
+
+    private static void writeParts(StlWriter stl, Collection<CSG> parts) throws IOException {
+        for (CSG part : parts) {
+            for (Polygon polygon : part.getPolygons()) {
+                for (var facet : polygon.toFacets()) {
+                    stl.write(facet.getTriangle().getPoints());
+                }
+            }
         }
     }
 }
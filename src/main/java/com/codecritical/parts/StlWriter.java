@@ -0,0 +1,107 @@
+package com.codecritical.parts;
+
+/*
+ * Chisel3D, (C) 2024 Ben Clewett & Code Critical Ltd
+ */
+
+import eu.printingin3d.javascad.coords.Coords3d;
+
+import javax.annotation.ParametersAreNonnullByDefault;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * Streams triangles to a binary STL file, without holding them in memory.
+ * <br>
+ * Records are gathered in a direct buffer and written through a FileChannel.  The triangle count in the header
+ * is written on close.
+ */
+@ParametersAreNonnullByDefault
+public class StlWriter implements AutoCloseable {
+
+    private static final int HEADER_SIZE = 80;
+    private static final int TRIANGLE_SIZE = 50;
+    private static final int BUFFER_TRIANGLES = 8192;
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer;
+    private long triangleCount = 0;
+
+    public StlWriter(Path path) throws IOException {
+        this.channel = FileChannel.open(path,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        this.buffer = ByteBuffer.allocateDirect(TRIANGLE_SIZE * BUFFER_TRIANGLES).order(ByteOrder.LITTLE_ENDIAN);
+
+        // Header and count, the count is filled in on close.
+        buffer.put(new byte[HEADER_SIZE]);
+        buffer.putInt(0);
+    }
+
+    /** Corners anti-clockwise when seen from outside.  The normal is taken from the corners. */
+    public void write(float x0, float y0, float z0, float x1, float y1, float z1, float x2, float y2, float z2)
+            throws IOException {
+        if (buffer.remaining() < TRIANGLE_SIZE) {
+            flush();
+        }
+
+        float ax = x1 - x0, ay = y1 - y0, az = z1 - z0;
+        float bx = x2 - x0, by = y2 - y0, bz = z2 - z0;
+        float nx = ay * bz - az * by;
+        float ny = az * bx - ax * bz;
+        float nz = ax * by - ay * bx;
+        float length = (float) Math.sqrt(nx * nx + ny * ny + nz * nz);
+        if (length > 0) {
+            nx /= length;
+            ny /= length;
+            nz /= length;
+        }
+
+        buffer.putFloat(nx).putFloat(ny).putFloat(nz);
+        buffer.putFloat(x0).putFloat(y0).putFloat(z0);
+        buffer.putFloat(x1).putFloat(y1).putFloat(z1);
+        buffer.putFloat(x2).putFloat(y2).putFloat(z2);
+        buffer.putShort((short) 0);
+        triangleCount++;
+    }
+
+    public void write(List<Coords3d> triangle) throws IOException {
+        Coords3d v0 = triangle.get(0), v1 = triangle.get(1), v2 = triangle.get(2);
+        write((float) v0.getX(), (float) v0.getY(), (float) v0.getZ(),
+                (float) v1.getX(), (float) v1.getY(), (float) v1.getZ(),
+                (float) v2.getX(), (float) v2.getY(), (float) v2.getZ());
+    }
+
+    public long getTriangleCount() {
+        return triangleCount;
+    }
+
+    private void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+            if (triangleCount > 0xffffffffL) {
+                throw new IOException("Too many triangles for STL: " + triangleCount);
+            }
+            ByteBuffer count = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+            count.putInt((int) triangleCount).flip();
+            while (count.hasRemaining()) {
+                channel.write(count, HEADER_SIZE + count.position());
+            }
+        } finally {
+            channel.close();
+        }
+    }
+}
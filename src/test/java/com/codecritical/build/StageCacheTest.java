@@ -0,0 +1,151 @@
+package com.codecritical.build;
+
+/*
+ * Chisel3D, (C) 2024 Ben Clewett & Code Critical Ltd
+ */
+
+import com.codecritical.lib.config.ConfigReader;
+import com.codecritical.lib.mapping.IMapArray;
+import com.codecritical.lib.mapping.MapArray;
+import com.codecritical.lib.mapping.PlateauCollections;
+import com.codecritical.parts.ExportStl;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.testng.Assert;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+
+class StageCacheTest {
+
+    @ParameterizedTest
+    @CsvSource({
+            "Config.Fractal.Model.MAX_ITERATIONS, 77, RAW",
+            "Config.Fractal.Processing.SCALE_POWER, 3, NORMALISED",
+            "Config.Fractal.Processing.MIN_PLATEAU_COEFFICIENT, 0.5, PLATEAUS",
+            "Config.Fractal.Processing.GAUSSIAN_RADIUS, 9, PRINT",
+            "Config.StlPrint.BORDER_WIDTH, 9, PRINT"
+    })
+    void testChangeRebuildsFromItsStage(String name, String value, StageCache.Stage firstChanged) throws IOException {
+        Path directory = Files.createTempDirectory("cache");
+        StageCache before = new StageCache(getConfig(directory), "MANDELBROT");
+        StageCache after = new StageCache(getConfig(directory).add(name, value), "MANDELBROT");
+
+        for (StageCache.Stage stage : StageCache.Stage.values()) {
+            Assert.assertEquals(after.getPath(stage).equals(before.getPath(stage)), stage.compareTo(firstChanged) < 0,
+                    name + " at " + stage);
+        }
+    }
+
+    @Test
+    void testUnreadConfigKeepsCache() throws IOException {
+        Path directory = Files.createTempDirectory("cache");
+        StageCache before = new StageCache(getConfig(directory), "MANDELBROT");
+        StageCache after = new StageCache(getConfig(directory)
+                .add("Config.Fractal.Model.THREAD_COUNT", 3)
+                .add("Config.OUTPUT_FILENAME", "other"), "MANDELBROT");
+        StageCache otherModel = new StageCache(getConfig(directory), "BURNING_SHIP");
+
+        for (StageCache.Stage stage : StageCache.Stage.values()) {
+            Assert.assertEquals(after.getPath(stage), before.getPath(stage));
+            Assert.assertFalse(otherModel.getPath(stage).equals(before.getPath(stage)));
+        }
+    }
+
+    @Test
+    void testReplacedHeightmapRebuilds() throws IOException {
+        Path directory = Files.createTempDirectory("cache");
+        Path heightmap = directory.resolve("loaded.map");
+        Files.writeString(heightmap, "first");
+        ConfigReader config = getConfig(directory).add("Config.Fractal.Heightmap.LOAD", heightmap.toString());
+
+        StageCache before = new StageCache(config, "MANDELBROT");
+        Assert.assertEquals(new StageCache(config, "MANDELBROT").getPath(StageCache.Stage.RAW),
+                before.getPath(StageCache.Stage.RAW));
+
+        Files.writeString(heightmap, "second, replaced");
+        StageCache after = new StageCache(config, "MANDELBROT");
+        for (StageCache.Stage stage : StageCache.Stage.values()) {
+            Assert.assertFalse(after.getPath(stage).equals(before.getPath(stage)), stage.toString());
+        }
+    }
+
+    @Test
+    void testMapsAndFilesAreKept() throws IOException {
+        Path directory = Files.createTempDirectory("cache");
+        StageCache cache = new StageCache(getConfig(directory), "MANDELBROT");
+
+        MapArray map = new MapArray(5, 3);
+        map.streamPoints().forEach(p -> map.set(p.i, p.j, p.i * 0.1 + p.j));
+        IMapArray built = cache.map(StageCache.Stage.RAW, () -> map);
+        IMapArray cached = cache.map(StageCache.Stage.RAW, () -> {
+            throw new RuntimeException("Not cached");
+        });
+        Assert.assertTrue(built == map);
+        Assert.assertTrue(Arrays.equals(cached.doubleStream().toArray(), map.doubleStream().toArray()));
+
+        Path print = directory.resolve("print.stl");
+        Files.writeString(print, "solid");
+        Assert.assertFalse(cache.restoreFile(StageCache.Stage.PRINT, print));
+        cache.putFile(StageCache.Stage.PRINT, print);
+        Files.delete(print);
+        Assert.assertTrue(cache.restoreFile(StageCache.Stage.PRINT, print));
+        Assert.assertEquals(Files.readString(print), "solid");
+    }
+
+    @Test
+    void testPrintIsKeptWhereWritten() throws IOException {
+        Path directory = Files.createTempDirectory("cache");
+        ConfigReader config = getConfig(directory)
+                .add("Config.OUTPUT_FILENAME", directory.getFileName() + "-print");
+        StageCache cache = new StageCache(config, "MANDELBROT");
+
+        // As JuliaSetsBuilder, from where ExportStl writes the print.
+        Files.createDirectories(ExportStl.getPath(""));
+        ExportStl.export(Builder2D.getPrintFileName(config), List.of());
+        Path print = Builder2D.getPrintPath(config);
+        byte[] written = Files.readAllBytes(print);
+        cache.putFile(StageCache.Stage.PRINT, print);
+        Files.delete(print);
+
+        Assert.assertTrue(cache.restoreFile(StageCache.Stage.PRINT, print));
+        Assert.assertTrue(Arrays.equals(Files.readAllBytes(print), written));
+        Files.delete(print);
+    }
+
+    @Test
+    void testPlateausRoundTrip() {
+        MapArray map = new MapArray(6, 4);
+        map.streamPoints().forEach(p -> map.set(p.i, p.j, (p.i < 2 || p.j == 3) ? 1.0 : 0.5));
+        var plateaus = new PlateauCollections(map);
+
+        var restored = PlateauCollections.fromIdMap(plateaus.asIdMap(6, 4));
+        Assert.assertEquals(restored.size(), plateaus.size());
+        map.streamPoints().forEach(p -> Assert.assertEquals(restored.getPlateauId(p.i, p.j), plateaus.getPlateauId(p.i, p.j)));
+    }
+
+    @Test
+    void testEmptyDirectoryIsOff() throws IOException {
+        StageCache cache = new StageCache(loadDefault().add("Config.CACHE_DIRECTORY", ""), "MANDELBROT");
+        Assert.assertFalse(cache.isEnabled());
+        Assert.assertTrue(cache.getPath(StageCache.Stage.RAW).isEmpty());
+    }
+
+    private static ConfigReader getConfig(Path directory) throws IOException {
+        return loadDefault().add("Config.CACHE_DIRECTORY", directory.toString());
+    }
+
+    private static ConfigReader loadDefault() throws IOException {
+        var properties = new Properties();
+        try (var in = new FileInputStream("config.default")) {
+            properties.load(in);
+        }
+        return new ConfigReader(properties);
+    }
+}
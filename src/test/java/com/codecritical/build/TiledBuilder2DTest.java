@@ -0,0 +1,120 @@
+package com.codecritical.build;
+
+/*
+ * Chisel3D, (C) 2024 Ben Clewett & Code Critical Ltd
+ */
+
+import com.codecritical.lib.config.Config;
+import com.codecritical.lib.config.ConfigReader;
+import com.codecritical.lib.mapping.Gaussian;
+import com.codecritical.lib.mapping.IMapArray;
+import com.codecritical.lib.mapping.MapArray;
+import com.codecritical.lib.mapping.Mapping;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.testng.Assert;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Optional;
+
+class TiledBuilder2DTest {
+
+    @ParameterizedTest
+    @CsvSource({
+            "10, 5, '0 5 10'",
+            "11, 5, '0 5 11'",
+            "12, 5, '0 5 10 12'",
+            "4, 5, '0 4'",
+            "2, 2, '0 2'"
+    })
+    void testTileBounds(int jSize, int tileRows, String expected) {
+        int[] bounds = TiledBuilder2D.getTileBounds(jSize, tileRows);
+        Assert.assertEquals(Arrays.toString(bounds), Arrays.toString(
+                Arrays.stream(expected.split(" ")).mapToInt(Integer::parseInt).toArray()));
+    }
+
+    /** The same as the stages of Builder2D on the whole map, where there are no plateaus. */
+    @ParameterizedTest
+    @CsvSource({
+            "7, 0.01, NONE, 1",
+            "7, 0.05, LN, 4",
+            "9, 0.2, EXP, 4",
+            "50, 0.05, NONE, 2",
+            "7, '', LN, 1"
+    })
+    void testMatchesWholeMap(int tileRows, String gaussianRadius, String applyLog, int threadCount) {
+        IMapArray map = getMap();
+        ConfigReader config = getConfig(tileRows, gaussianRadius, applyLog, threadCount);
+
+        var scratchFiles = new ScratchFiles(config);
+        TiledBuilder2D tiled = TiledBuilder2D.create(config, map, scratchFiles)
+                .normalise()
+                .scale()
+                .applyLog()
+                .applyGaussian();
+
+        IMapArray expected = Builder2D.create(config, map)
+                .normalise()
+                .scale()
+                .applyLog()
+                .getMap();
+        expected = Mapping.normalise(Gaussian.applyToMap(expected,
+                config.asOptionalDouble(Config.Fractal.Processing.GAUSSIAN_RADIUS), null, Optional.empty(), false));
+
+        for (int j = 0; j < map.getJSize(); j++) {
+            double[] row = tiled.getRow(j);
+            for (int i = 0; i < map.getISize(); i++) {
+                Assert.assertEquals(row[i], expected.get(i, j), 1e-9, "i=" + i + " j=" + j);
+            }
+        }
+        scratchFiles.close();
+    }
+
+    @Test
+    void testScratchFilesDeletedOnClose() throws IOException {
+        Path directory = Files.createTempDirectory("scratch");
+        ConfigReader config = getConfig(7, "0.05", "NONE", 1)
+                .add("Config.SCRATCH_DIRECTORY", directory.toString());
+
+        try (var scratchFiles = new ScratchFiles(config)) {
+            TiledBuilder2D.create(config, getMap(), scratchFiles).applyGaussian();
+            try (var files = Files.list(directory)) {
+                Assert.assertEquals(files.count(), 1L);
+            }
+        }
+        try (var files = Files.list(directory)) {
+            Assert.assertEquals(files.count(), 0L);
+        }
+    }
+
+    @Test
+    void testNotSquare() {
+        ConfigReader config = getConfig(7, "", "NONE", 1)
+                .add("Config.StlPrint.SHAPE", "CIRCLE");
+        Assert.assertThrows(RuntimeException.class, () -> TiledBuilder2D.create(config, getMap(), new ScratchFiles(config)));
+    }
+
+    /** Rough terrain, with missing cells, as normalise() meets in a fractal. */
+    private static IMapArray getMap() {
+        MapArray map = new MapArray(43, 50);
+        map.streamPoints().forEach(p -> map.set(p.i, p.j,
+                (p.i * 7 + p.j * 3) % 29 == 0 ? Double.NaN : 100 + 40 * Math.sin(p.i * 0.3) * Math.cos(p.j * 0.2) + p.i));
+        return map;
+    }
+
+    private static ConfigReader getConfig(int tileRows, String gaussianRadius, String applyLog, int threadCount) {
+        return new ConfigReader()
+                .add("Config.StlPrint.SHAPE", "SQUARE")
+                .add("Config.StlPrint.TILE_ROWS", tileRows)
+                .add("Config.Fractal.Model.THREAD_COUNT", threadCount)
+                .add("Config.Fractal.Processing.PLATEAU_TEXTURE_MAP", "NONE")
+                .add("Config.Fractal.Processing.SCALE_POWER", 1.5)
+                .add("Config.Fractal.Processing.APPLY_LOG", applyLog)
+                .add("Config.Fractal.Processing.GAUSSIAN_RADIUS", gaussianRadius)
+                .add("Config.SCRATCH_DIRECTORY", System.getProperty("java.io.tmpdir"));
+    }
+}
@@ -40,7 +40,11 @@ class BasicMandelbrotTest {
                 .add("Config.StlPrint.X_SIZE", 100)
                 .add("Config.StlPrint.Y_SIZE", 20)
                 .add("Config.Fractal.Model.POLAR_COORDINATES", false)
-                .add("Config.Fractal.Model.INSIDE_OUT", false);
+                .add("Config.Fractal.Model.INSIDE_OUT", false)
+                .add("Config.Fractal.Model.THREAD_COUNT", "")
+                .add("Config.Fractal.Model.PRECISION", "AUTO")
+                .add("Config.Fractal.Model.RENDERER", "ROWS")
+                .add("Config.StlPrint.TILE_ROWS", "");
 
         var map = new MandelbrotStandardMap(config).getMap();
 
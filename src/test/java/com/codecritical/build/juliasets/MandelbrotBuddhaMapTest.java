@@ -0,0 +1,69 @@
+package com.codecritical.build.juliasets;
+
+/*
+ * Chisel3D, (C) 2024 Ben Clewett & Code Critical Ltd
+ */
+
+import com.codecritical.lib.config.ConfigReader;
+import com.codecritical.lib.mapping.IMapArray;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.testng.Assert;
+
+class MandelbrotBuddhaMapTest {
+
+    @ParameterizedTest
+    @CsvSource({"GRID, 2", "GRID, 4", "GRID, 7", "RANDOM, 4", "HALTON, 3", "METROPOLIS, 4"})
+    void testParallelMatchesSerial(String sampling, String threadCount) {
+        IMapArray serial = new MandelbrotBuddhaMap(getConfig(sampling, "1")).getMap();
+        IMapArray parallel = new MandelbrotBuddhaMap(getConfig(sampling, threadCount)).getMap();
+
+        double hits = 0;
+        for (int j = 0; j < serial.getJSize(); j++) {
+            for (int i = 0; i < serial.getISize(); i++) {
+                Assert.assertEquals(parallel.get(i, j), serial.get(i, j), "Differs at i=" + i + " j=" + j);
+                Assert.assertEquals(serial.get(i, j), Math.rint(serial.get(i, j)));
+                hits += serial.get(i, j);
+            }
+        }
+        Assert.assertTrue(hits > 1000);
+    }
+
+    @Test
+    void testRandomMatchesHalton() {
+        // Two samplings of the same density, allowing for noise, over the middle of the set.
+        IMapArray halton = new MandelbrotBuddhaMap(getConfig("HALTON", "4")
+                .add("Config.Fractal.Buddha.SAMPLE_COUNT", 400_000)).getMap();
+        IMapArray other = new MandelbrotBuddhaMap(getConfig("RANDOM", "4")
+                .add("Config.Fractal.Buddha.SAMPLE_COUNT", 400_000)
+                .add("Config.RANDOM_SEED", 7)).getMap();
+
+        double haltonSum = halton.doubleStream().sum();
+        double otherSum = other.doubleStream().sum();
+        Assert.assertTrue(Math.abs(haltonSum - otherSum) < haltonSum * 0.05, haltonSum + " vs " + otherSum);
+    }
+
+    @Test
+    void testMetropolisFindsZoomedWindow() {
+        // A small window off the main cardioid, which few uniform samples reach.
+        ConfigReader zoom = getConfig("METROPOLIS", "4")
+                .add("Config.Fractal.Model.I0", -0.80)
+                .add("Config.Fractal.Model.I1", -0.70)
+                .add("Config.Fractal.Model.J0", 0.10)
+                .add("Config.Fractal.Model.J1", 0.18)
+                .add("Config.Fractal.Buddha.SAMPLE_COUNT", 20_000);
+
+        double metropolis = new MandelbrotBuddhaMap(zoom).getMap().doubleStream().sum();
+        double random = new MandelbrotBuddhaMap(zoom.add("Config.Fractal.Buddha.SAMPLING", "RANDOM"))
+                .getMap().doubleStream().sum();
+        Assert.assertTrue(metropolis > random * 10, metropolis + " vs " + random);
+    }
+
+    private static ConfigReader getConfig(String sampling, String threadCount) {
+        return ParallelBuildTest.getConfig(threadCount)
+                .add("Config.RANDOM_SEED", 1)
+                .add("Config.Fractal.Buddha.SAMPLING", sampling)
+                .add("Config.Fractal.Buddha.SAMPLE_COUNT", "");
+    }
+}
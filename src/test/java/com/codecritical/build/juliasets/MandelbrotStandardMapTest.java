@@ -0,0 +1,44 @@
+package com.codecritical.build.juliasets;
+
+/*
+ * Chisel3D, (C) 2024 Ben Clewett & Code Critical Ltd
+ */
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.testng.Assert;
+
+class MandelbrotStandardMapTest {
+
+    @ParameterizedTest
+    @CsvSource({"50", "1000", "20000"})
+    void testInteriorChecksMatchPlainLoop(int maxIterations) {
+        var mandelbrot = new MandelbrotStandardMap(PrecisionTest.getConfig("DOUBLE", "-2.1", "1.0", "-1.3", "1.3")
+                .add("Config.Fractal.Model.MAX_ITERATIONS", maxIterations));
+
+        int size = 301;
+        int inside = 0;
+        for (int i = 0; i < size; i++) {
+            for (int j = 0; j < size; j++) {
+                double rC = -2.1 + 3.1 * i / (size - 1);
+                double iC = -1.3 + 2.6 * j / (size - 1);
+                double expected = iterate(rC, iC, maxIterations);
+                Assert.assertEquals(mandelbrot.buildPoint(rC, iC), expected, "At " + rC + ", " + iC);
+                inside += (expected == maxIterations) ? 1 : 0;
+            }
+        }
+        Assert.assertTrue(inside > 0);
+    }
+
+    private static double iterate(double rC, double iC, int maxIterations) {
+        int iterations = 0;
+        double rZ = 0, iZ = 0, iZtmp;
+        while (rZ * rZ + iZ * iZ <= 4 && iterations < maxIterations) {
+            iZtmp = rZ * rZ - iZ * iZ + rC;
+            iZ = 2 * rZ * iZ + iC;
+            rZ = iZtmp;
+            iterations++;
+        }
+        return iterations;
+    }
+}
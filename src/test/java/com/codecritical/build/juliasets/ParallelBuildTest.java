@@ -0,0 +1,173 @@
+package com.codecritical.build.juliasets;
+
+/*
+ * Chisel3D, (C) 2024 Ben Clewett & Code Critical Ltd
+ */
+
+import com.codecritical.lib.config.ConfigReader;
+import com.codecritical.lib.mapping.IMapArray;
+import com.codecritical.lib.model.JuliaSet;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.testng.Assert;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+class ParallelBuildTest {
+
+    static final int MAX_ITERATIONS = 200;
+
+    enum Fractal {
+        MANDELBROT(MandelbrotStandardMap::new),
+        MANDELBROT_CUBIC(MandelbrotCubicMap::new),
+        BURNING_SHIP(BurningShipMap::new),
+        MANDELBROT_TRICORN(MandelbrotTricorn::new),
+        JULIA_SET(JuliaSetStandardMap::new);
+
+        final Function<ConfigReader, ? extends JuliaSet> create;
+
+        Fractal(Function<ConfigReader, ? extends JuliaSet> create) {
+            this.create = create;
+        }
+    }
+
+    @ParameterizedTest
+    @CsvSource({"MANDELBROT", "MANDELBROT_CUBIC", "BURNING_SHIP", "MANDELBROT_TRICORN", "JULIA_SET"})
+    void testParallelMatchesSerial(Fractal fractal) {
+
+        IMapArray serial = fractal.create.apply(getConfig("1")).getMap();
+        IMapArray parallel = fractal.create.apply(getConfig("4")).getMap();
+
+        Assert.assertEquals(parallel.getISize(), serial.getISize());
+        Assert.assertEquals(parallel.getJSize(), serial.getJSize());
+        for (int j = 0; j < serial.getJSize(); j++) {
+            for (int i = 0; i < serial.getISize(); i++) {
+                Assert.assertEquals(
+                        Double.doubleToRawLongBits(parallel.get(i, j)),
+                        Double.doubleToRawLongBits(serial.get(i, j)),
+                        fractal + " differs at i=" + i + " j=" + j);
+            }
+        }
+    }
+
+    @ParameterizedTest
+    @CsvSource({"MANDELBROT", "MANDELBROT_CUBIC", "BURNING_SHIP", "MANDELBROT_TRICORN", "JULIA_SET"})
+    void testSubdivisionMatchesRows(Fractal fractal) {
+
+        IMapArray rows = fractal.create.apply(getConfig("4")).getMap();
+        IMapArray subdivided = fractal.create.apply(getConfig("4")
+                .add("Config.Fractal.Model.RENDERER", "SUBDIVIDE")).getMap();
+
+        // Only detail smaller than a tile may be lost.
+        int same = 0;
+        for (int j = 0; j < rows.getJSize(); j++) {
+            for (int i = 0; i < rows.getISize(); i++) {
+                same += (subdivided.get(i, j) == rows.get(i, j)) ? 1 : 0;
+            }
+        }
+        Assert.assertTrue(same >= rows.getISize() * rows.getJSize() * 0.99, fractal + " same: " + same);
+    }
+
+    @ParameterizedTest
+    @CsvSource({"MANDELBROT", "MANDELBROT_CUBIC", "BURNING_SHIP", "MANDELBROT_TRICORN", "JULIA_SET"})
+    void testVectorRowsMatchRows(Fractal fractal) {
+
+        // Cubic has no vector kernel, so falls back to rows.  An odd width leaves a part filled vector at the end.
+        IMapArray rows = fractal.create.apply(getConfig("1")
+                .add("Config.StlPrint.X_SIZE", 61)).getMap();
+        IMapArray vectorRows = fractal.create.apply(getConfig("4")
+                .add("Config.StlPrint.X_SIZE", 61)
+                .add("Config.Fractal.Model.RENDERER", "VECTOR_ROWS")).getMap();
+
+        for (int j = 0; j < rows.getJSize(); j++) {
+            for (int i = 0; i < rows.getISize(); i++) {
+                Assert.assertEquals(
+                        Double.doubleToRawLongBits(vectorRows.get(i, j)),
+                        Double.doubleToRawLongBits(rows.get(i, j)),
+                        fractal + " differs at i=" + i + " j=" + j);
+            }
+        }
+    }
+
+    /** Pixels built by buildPoint(double, double), so by ROWS rather than the vector kernel. */
+    static final AtomicInteger scalarPixels = new AtomicInteger();
+
+    @Test
+    void testVectorRowsWithoutModuleUseRows() {
+        IMapArray rows = new MandelbrotStandardMap(getConfig("4")).getMap();
+
+        scalarPixels.set(0);
+        IMapArray fallback = new MandelbrotStandardMap(getConfig("4")
+                .add("Config.Fractal.Model.RENDERER", "VECTOR_ROWS")) {
+            @Override
+            protected boolean isVectorAvailable() {
+                return false;
+            }
+
+            @Override
+            protected Double buildPoint(double rC, double iC) {
+                scalarPixels.incrementAndGet();
+                return super.buildPoint(rC, iC);
+            }
+        }.getMap();
+
+        Assert.assertEquals(scalarPixels.get(), rows.getISize() * rows.getJSize());
+        for (int j = 0; j < rows.getJSize(); j++) {
+            for (int i = 0; i < rows.getISize(); i++) {
+                Assert.assertEquals(
+                        Double.doubleToRawLongBits(fallback.get(i, j)),
+                        Double.doubleToRawLongBits(rows.get(i, j)),
+                        "differs at i=" + i + " j=" + j);
+            }
+        }
+    }
+
+    @ParameterizedTest
+    @CsvSource({"MANDELBROT", "MANDELBROT_CUBIC", "BURNING_SHIP", "MANDELBROT_TRICORN", "JULIA_SET"})
+    void testTilesMatchMap(Fractal fractal) {
+
+        IMapArray map = fractal.create.apply(getConfig("4")).getMap();
+        JuliaSet tiled = fractal.create.apply(getConfig("4")
+                .add("Config.StlPrint.TILE_ROWS", 8));
+
+        Assert.assertThrows(RuntimeException.class, tiled::getMap);
+        for (int jFrom = 0; jFrom < map.getJSize(); jFrom += 8) {
+            int jTo = Math.min(map.getJSize(), jFrom + 8);
+            IMapArray rows = tiled.buildRows(jFrom, jTo);
+            for (int j = jFrom; j < jTo; j++) {
+                for (int i = 0; i < map.getISize(); i++) {
+                    Assert.assertEquals(
+                            Double.doubleToRawLongBits(rows.get(i, j - jFrom)),
+                            Double.doubleToRawLongBits(map.get(i, j)),
+                            fractal + " differs at i=" + i + " j=" + j);
+                }
+            }
+        }
+    }
+
+    static ConfigReader getConfig(String threadCount) {
+        return new ConfigReader()
+                .add("Config.Fractal.Model.MAX_ITERATIONS", MAX_ITERATIONS)
+                .add("Config.Fractal.Model.I0", -2.1)
+                .add("Config.Fractal.Model.I1", 1.0)
+                .add("Config.Fractal.Model.J0", -1.3)
+                .add("Config.Fractal.Model.J1", 1.3)
+                .add("Config.Fractal.Model.I_SCALE", 1)
+                .add("Config.Fractal.Model.J_SCALE", 1)
+                .add("Config.Fractal.Model.I_SHIFT", 0)
+                .add("Config.Fractal.Model.J_SHIFT", 0)
+                .add("Config.StlPrint.PIXEL_SIZE_XY", 1)
+                .add("Config.StlPrint.X_SIZE", 60)
+                .add("Config.StlPrint.Y_SIZE", 50)
+                .add("Config.Fractal.Model.POLAR_COORDINATES", false)
+                .add("Config.Fractal.Model.INSIDE_OUT", false)
+                .add("Config.Fractal.Model.THREAD_COUNT", threadCount)
+                .add("Config.Fractal.Model.PRECISION", "AUTO")
+                .add("Config.Fractal.Model.RENDERER", "ROWS")
+                .add("Config.StlPrint.TILE_ROWS", "")
+                .add("Config.Fractal.JuliaSet.RC", -0.8)
+                .add("Config.Fractal.JuliaSet.IC", 0.156);
+    }
+}
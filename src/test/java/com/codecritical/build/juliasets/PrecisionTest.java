@@ -0,0 +1,75 @@
+package com.codecritical.build.juliasets;
+
+/*
+ * Chisel3D, (C) 2024 Ben Clewett & Code Critical Ltd
+ */
+
+import com.codecritical.lib.config.ConfigReader;
+import com.codecritical.lib.mapping.IMapArray;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.testng.Assert;
+
+import java.util.HashSet;
+import java.util.Set;
+
+class PrecisionTest {
+
+    @ParameterizedTest
+    @CsvSource({"MANDELBROT", "MANDELBROT_CUBIC", "BURNING_SHIP", "MANDELBROT_TRICORN", "JULIA_SET"})
+    void testDoubleDoubleMatchesDouble(ParallelBuildTest.Fractal fractal) {
+        // Wide enough that doubles are exact, so only chaotic pixels may differ.
+        IMapArray doubles = fractal.create.apply(getConfig("DOUBLE", "-2.1", "1.0", "-1.3", "1.3")).getMap();
+        IMapArray doubleDoubles = fractal.create.apply(getConfig("DOUBLE_DOUBLE", "-2.1", "1.0", "-1.3", "1.3")).getMap();
+
+        Assert.assertTrue(getSame(doubles, doubleDoubles) >= doubles.getISize() * doubles.getJSize() * 0.99);
+    }
+
+    @ParameterizedTest
+    @CsvSource({
+            "-1.99998588122200000000015, -1.99998588122199999999985, -0.0000000000000000000001, 0.0000000000000000000001, 1000",
+            "-1.9999858812220001, -1.9999858812219999, -0.00000000000000007, 0.00000000000000007, 3000"
+    })
+    void testDeepZoomDoubleDoubleMatchesPerturbation(String i0, String i1, String j0, String j1, int maxIterations) {
+        IMapArray perturbation = new MandelbrotStandardMap(getConfig("PERTURBATION", i0, i1, j0, j1)
+                .add("Config.Fractal.Model.MAX_ITERATIONS", maxIterations)).getMap();
+        IMapArray doubleDoubles = new MandelbrotStandardMap(getConfig("DOUBLE_DOUBLE", i0, i1, j0, j1)
+                .add("Config.Fractal.Model.MAX_ITERATIONS", maxIterations)).getMap();
+        IMapArray doubles = new MandelbrotStandardMap(getConfig("DOUBLE", i0, i1, j0, j1)
+                .add("Config.Fractal.Model.MAX_ITERATIONS", maxIterations)).getMap();
+
+        int size = perturbation.getISize() * perturbation.getJSize();
+        Assert.assertTrue(getSame(perturbation, doubleDoubles) >= size * 0.95);
+
+        // Doubles can't tell these pixels apart.
+        Set<Double> values = new HashSet<>();
+        doubleDoubles.doubleStream().forEach(values::add);
+        Set<Double> doubleValues = new HashSet<>();
+        doubles.doubleStream().forEach(doubleValues::add);
+        Assert.assertTrue(values.size() > doubleValues.size());
+    }
+
+    private static int getSame(IMapArray a, IMapArray b) {
+        int same = 0;
+        for (int j = 0; j < a.getJSize(); j++) {
+            for (int i = 0; i < a.getISize(); i++) {
+                if (a.get(i, j) == b.get(i, j)) {
+                    same++;
+                }
+            }
+        }
+        return same;
+    }
+
+    static ConfigReader getConfig(String precision, String i0, String i1, String j0, String j1) {
+        return ParallelBuildTest.getConfig("4")
+                .add("Config.Fractal.Model.MAX_ITERATIONS", 1000)
+                .add("Config.StlPrint.X_SIZE", 30)
+                .add("Config.StlPrint.Y_SIZE", 20)
+                .add("Config.Fractal.Model.I0", i0)
+                .add("Config.Fractal.Model.I1", i1)
+                .add("Config.Fractal.Model.J0", j0)
+                .add("Config.Fractal.Model.J1", j1)
+                .add("Config.Fractal.Model.PRECISION", precision);
+    }
+}
@@ -0,0 +1,41 @@
+package com.codecritical.build.juliasets3d;
+
+/*
+ * Chisel3D, (C) 2024 Ben Clewett & Code Critical Ltd
+ */
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.testng.Assert;
+
+class MandelbrotStandard3dMapTest {
+
+    @ParameterizedTest
+    @CsvSource({"0.0, 50", "0.0, 5000", "0.3, 5000", "-0.7, 5000"})
+    void testInteriorChecksMatchPlainLoop(double k, int maxIterations) {
+        var mandelbrot = new MandelbrotStandard3dMap(ParallelBuild3dTest.getConfig("1")
+                .add("Config.Fractal.Model.MAX_ITERATIONS", maxIterations));
+
+        int size = 151;
+        for (int i = 0; i < size; i++) {
+            for (int j = 0; j < size; j++) {
+                double rC = -2.1 + 3.1 * i / (size - 1);
+                double iC = -1.3 + 2.6 * j / (size - 1);
+                Assert.assertEquals(mandelbrot.buildPoint(rC, iC, k), isInside(rC, iC, k, maxIterations),
+                        "At " + rC + ", " + iC);
+            }
+        }
+    }
+
+    private static boolean isInside(double rC, double iC, double k, int maxIterations) {
+        int iterations = 0;
+        double rZ = 0, iZ = k, iZtmp;
+        while (rZ * rZ + iZ * iZ <= 4 && iterations < maxIterations) {
+            iZtmp = rZ * rZ - iZ * iZ + rC;
+            iZ = 2 * rZ * iZ + iC;
+            rZ = iZtmp;
+            iterations++;
+        }
+        return iterations == maxIterations;
+    }
+}
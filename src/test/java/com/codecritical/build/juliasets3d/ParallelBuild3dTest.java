@@ -0,0 +1,57 @@
+package com.codecritical.build.juliasets3d;
+
+/*
+ * Chisel3D, (C) 2024 Ben Clewett & Code Critical Ltd
+ */
+
+import com.codecritical.lib.config.ConfigReader;
+import com.codecritical.lib.model.IVoxels;
+import org.junit.jupiter.api.Test;
+import org.testng.Assert;
+
+class ParallelBuild3dTest {
+
+    @Test
+    void testParallelMatchesSerial() {
+
+        IVoxels serial = new MandelbrotStandard3dMap(getConfig("1")).getVoxels();
+        IVoxels parallel = new MandelbrotStandard3dMap(getConfig("4")).getVoxels();
+
+        Assert.assertEquals(parallel.getISize(), serial.getISize());
+        Assert.assertEquals(parallel.getJSize(), serial.getJSize());
+        Assert.assertEquals(parallel.getKSize(), serial.getKSize());
+        int count = 0;
+        for (int k = 0; k < serial.getKSize(); k++) {
+            for (int j = 0; j < serial.getJSize(); j++) {
+                for (int i = 0; i < serial.getISize(); i++) {
+                    Assert.assertEquals(parallel.isSet(i, j, k), serial.isSet(i, j, k),
+                            "Differs at i=" + i + " j=" + j + " k=" + k);
+                    count += serial.isSet(i, j, k) ? 1 : 0;
+                }
+            }
+        }
+        Assert.assertTrue(count > 0);
+    }
+
+    static ConfigReader getConfig(String threadCount) {
+        return new ConfigReader()
+                .add("Config.Fractal.Model.MAX_ITERATIONS", 50)
+                .add("Config.Fractal.Model.I0", -2.1)
+                .add("Config.Fractal.Model.I1", 1.0)
+                .add("Config.Fractal.Model.J0", -1.3)
+                .add("Config.Fractal.Model.J1", 1.3)
+                .add("Config.Fractal.Model.K0", -1.0)
+                .add("Config.Fractal.Model.K1", 1.0)
+                .add("Config.Fractal.Model.I_SCALE", 1)
+                .add("Config.Fractal.Model.J_SCALE", 1)
+                .add("Config.Fractal.Model.K_SCALE", 1)
+                .add("Config.Fractal.Model.I_SHIFT", 0)
+                .add("Config.Fractal.Model.J_SHIFT", 0)
+                .add("Config.Fractal.Model.K_SHIFT", 0)
+                .add("Config.StlPrint.BLOCK_SIZE_3D", 1)
+                .add("Config.StlPrint.X_SIZE", 40)
+                .add("Config.StlPrint.Y_SIZE", 30)
+                .add("Config.StlPrint.Z_SIZE", 20)
+                .add("Config.Fractal.Model.THREAD_COUNT", threadCount);
+    }
+}
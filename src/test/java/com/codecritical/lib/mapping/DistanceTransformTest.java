@@ -0,0 +1,45 @@
+package com.codecritical.lib.mapping;
+
+/*
+ * Chisel3D, (C) 2024 Ben Clewett & Code Critical Ltd
+ */
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.testng.Assert;
+
+import java.util.Random;
+
+class DistanceTransformTest {
+
+    @ParameterizedTest
+    @CsvSource({
+            "1, 1, 0.5",
+            "17, 9, 0.05",
+            "30, 40, 0.01",
+            "25, 25, 0.0"
+    })
+    void testMatchesBruteForce(int iSize, int jSize, double featureChance) {
+        Random random = new Random(iSize * 31L + jSize);
+        boolean[] feature = new boolean[iSize * jSize];
+        for (int n = 0; n < feature.length; n++) {
+            feature[n] = random.nextDouble() < featureChance;
+        }
+
+        double[] d = DistanceTransform.squared(feature, iSize, jSize);
+
+        for (int j = 0; j < jSize; j++) {
+            for (int i = 0; i < iSize; i++) {
+                double expected = DistanceTransform.INFINITY;
+                for (int fj = 0; fj < jSize; fj++) {
+                    for (int fi = 0; fi < iSize; fi++) {
+                        if (feature[fi + fj * iSize]) {
+                            expected = Math.min(expected, (i - fi) * (i - fi) + (j - fj) * (j - fj));
+                        }
+                    }
+                }
+                Assert.assertEquals(d[i + j * iSize], expected);
+            }
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package com.codecritical.lib.mapping;
+
+/*
+ * Chisel3D, (C) 2024 Ben Clewett & Code Critical Ltd
+ */
+
+import eu.printingin3d.javascad.coords.Coords3d;
+import eu.printingin3d.javascad.models.Cube;
+import eu.printingin3d.javascad.tranform.TransformationFactory;
+import eu.printingin3d.javascad.vrl.CSG;
+import org.junit.jupiter.api.Test;
+import org.testng.Assert;
+
+import java.util.ArrayList;
+import java.util.List;
+
+class FastUnionTest {
+
+    @Test
+    void testParallelMatchesSerial() {
+        List<CSG> parts = new ArrayList<>();
+        for (int n = 0; n < 11; n++) {
+            parts.add(new Cube(10).toCSG()
+                    .transformed(TransformationFactory.getTranlationMatrix(Coords3d.xOnly(n * 8))));
+        }
+
+        var serial = FastUnion.fastUnion(parts, 1);
+        var parallel = FastUnion.fastUnion(parts, 4);
+
+        Assert.assertEquals(parallel.getPolygons().size(), serial.getPolygons().size());
+        Assert.assertFalse(parallel.getPolygons().isEmpty());
+    }
+
+    @Test
+    void testDisjointPartsAreJoined() {
+        CSG cube1 = new Cube(10).toCSG();
+        CSG cube2 = new Cube(10).toCSG().transformed(TransformationFactory.getTranlationMatrix(Coords3d.xOnly(50)));
+
+        var union = FastUnion.fastUnion(List.of(cube1, cube2));
+
+        Assert.assertEquals(union.getPolygons().size(), cube1.getPolygons().size() + cube2.getPolygons().size());
+    }
+}
@@ -0,0 +1,86 @@
+package com.codecritical.lib.mapping;
+
+/*
+ * Chisel3D, (C) 2024 Ben Clewett & Code Critical Ltd
+ */
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.testng.Assert;
+
+import java.util.Optional;
+import java.util.OptionalDouble;
+import java.util.Random;
+
+class GaussianTest {
+
+    /** Compare with the full 2D kernel, over both the direct and FFT convolution. */
+    @ParameterizedTest
+    @CsvSource({
+            "0.01, false",
+            "0.05, false",
+            "0.05, true",
+            "0.3, false",
+            "0.3, true"
+    })
+    void testMatchesFullKernel(double gaussianRadius, boolean smoothTextureHollowInside) {
+
+        MapArray map = new MapArray(40, 30);
+        Random random = new Random(1);
+        map.streamPoints().forEach(p -> map.set(p.i, p.j, random.nextDouble()));
+        // Plateau, half high and half low texture
+        MapArray texture = new MapArray(40, 30);
+        for (int i = 10; i < 20; i++) {
+            for (int j = 10; j < 20; j++) {
+                map.set(i, j, 2.0);
+                texture.set(i, j, (i < 15) ? 1.0 : 0.5);
+            }
+        }
+        PlateauCollections plateaus = new PlateauCollections(map);
+
+        var radius = OptionalDouble.of(gaussianRadius);
+        var actual = Gaussian.applyToMap(map, radius, plateaus, Optional.of(texture), smoothTextureHollowInside);
+        var expected = fullKernel(map, gaussianRadius, plateaus, texture, smoothTextureHollowInside);
+
+        map.streamPoints().forEach(p -> Assert.assertEquals(actual.get(p.i, p.j), expected.get(p.i, p.j), 1e-9));
+    }
+
+    private static IMapArray fullKernel(IMapArray map, double gaussianRadius, PlateauCollections plateaus,
+                                        IMapArray texture, boolean smoothTextureHollowInside) {
+        double radiusConst = gaussianRadius * Math.sqrt(map.getISize() * map.getISize() + map.getJSize() * map.getJSize());
+        var kernel = Gaussian.createGaussianMap(radiusConst);
+        int r = kernel.getISize() / 2;
+
+        MapArray out = new MapArray(map);
+        map.streamPoints().forEach(p -> {
+            boolean high = false, low = false;
+            double mean = 0;
+            int count = 0;
+            for (int i = p.i - r; i <= p.i + r; i++) {
+                for (int j = p.j - r; j <= p.j + r; j++) {
+                    if (map.isInRange(i, j)) {
+                        mean += map.get(i, j);
+                        count++;
+                        if (plateaus.isPlateau(i, j)) {
+                            high |= texture.get(i, j) == 1.0;
+                            low |= texture.get(i, j) != 1.0;
+                        }
+                    }
+                }
+            }
+            if (plateaus.isPlateau(p) && !(smoothTextureHollowInside && high && low)) {
+                return;
+            }
+            mean /= count;
+            double sum = 0;
+            for (int i = -r; i <= r; i++) {
+                for (int j = -r; j <= r; j++) {
+                    double z = map.isInRange(i + p.i, j + p.j) ? map.get(i + p.i, j + p.j) : mean;
+                    sum += z * kernel.get(i + r, j + r);
+                }
+            }
+            out.set(p.i, p.j, sum);
+        });
+        return out;
+    }
+}
@@ -0,0 +1,136 @@
+package com.codecritical.lib.mapping;
+
+/*
+ * Chisel3D, (C) 2024 Ben Clewett & Code Critical Ltd
+ */
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.testng.Assert;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+class HeightmapFileTest {
+
+    // More rows than a deflated tile, and not a multiple of one.
+    static final int I_SIZE = 37;
+    static final int J_SIZE = HeightmapFile.TILE_ROWS * 2 + 5;
+
+    @ParameterizedTest
+    @CsvSource({
+            "DOUBLE, true, 0.0",
+            "FLOAT, true, 1e-4",
+            "DOUBLE_DEFLATE, false, 0.0",
+            "FLOAT_DEFLATE, false, 1e-4"
+    })
+    void testRoundTrip(HeightmapFile.Encoding encoding, boolean isMapped, double tolerance) throws IOException {
+        Path path = Files.createTempFile("heightmap", ".map");
+        IMapArray map = getMap();
+        var header = new HeightmapFile.Header(I_SIZE, J_SIZE, 250, -2.0, 0.5, -1.25, 1.25);
+
+        HeightmapFile.write(path, header, map, encoding);
+        IMapArray read = HeightmapFile.read(path);
+
+        Assert.assertEquals(read instanceof MappedMapArray, isMapped);
+        Assert.assertEquals(read.getISize(), I_SIZE);
+        Assert.assertEquals(read.getJSize(), J_SIZE);
+        for (int j = 0; j < J_SIZE; j++) {
+            for (int i = 0; i < I_SIZE; i++) {
+                if (map.isNull(i, j)) {
+                    Assert.assertTrue(read.isNull(i, j), i + "," + j);
+                } else {
+                    Assert.assertEquals(read.get(i, j), map.get(i, j), Math.abs(map.get(i, j)) * tolerance);
+                }
+            }
+        }
+        Files.delete(path);
+    }
+
+    @Test
+    void testPointsInMapArrayOrder() throws IOException {
+        Path path = Files.createTempFile("heightmap", ".map");
+        MapArray map = new MapArray(getMap());
+
+        HeightmapFile.write(path, HeightmapFile.Header.of(map), map, HeightmapFile.Encoding.DOUBLE);
+        var expected = map.streamPoints().iterator();
+        HeightmapFile.read(path).streamPoints().forEach(p -> {
+            var q = expected.next();
+            Assert.assertEquals(p.i + "," + p.j, q.i + "," + q.j);
+        });
+        Assert.assertFalse(expected.hasNext());
+        Files.delete(path);
+    }
+
+    @Test
+    void testHeader() throws IOException {
+        Path path = Files.createTempFile("heightmap", ".map");
+        var header = new HeightmapFile.Header(I_SIZE, J_SIZE, 250, -2.0, 0.5, -1.25, 1.25);
+
+        HeightmapFile.write(path, header, getMap(), HeightmapFile.Encoding.FLOAT_DEFLATE);
+        var read = HeightmapFile.readHeader(path);
+
+        Assert.assertEquals(read.iSize, I_SIZE);
+        Assert.assertEquals(read.jSize, J_SIZE);
+        Assert.assertEquals(read.maxIterations, 250);
+        Assert.assertEquals(read.i0, -2.0);
+        Assert.assertEquals(read.i1, 0.5);
+        Assert.assertEquals(read.j0, -1.25);
+        Assert.assertEquals(read.j1, 1.25);
+        Files.delete(path);
+    }
+
+    @ParameterizedTest
+    @CsvSource({"DOUBLE", "FLOAT_DEFLATE"})
+    void testWriterByBands(HeightmapFile.Encoding encoding) throws IOException {
+        Path whole = Files.createTempFile("heightmap", ".map");
+        Path bands = Files.createTempFile("heightmap", ".map");
+        IMapArray map = getMap();
+        var header = HeightmapFile.Header.of(map);
+
+        HeightmapFile.write(whole, header, map, encoding);
+        try (var writer = new HeightmapFile.Writer(bands, header, encoding)) {
+            // Bands which don't line up with the deflated tiles.
+            for (int jFrom = 0; jFrom < J_SIZE; jFrom += 10) {
+                int jTo = Math.min(J_SIZE, jFrom + 10);
+                MapArray rows = new MapArray(I_SIZE, jTo - jFrom);
+                int offset = jFrom;
+                rows.streamPoints().forEach(p -> rows.set(p.i, p.j, map.get(p.i, p.j + offset)));
+                writer.writeRows(rows);
+            }
+        }
+
+        Assert.assertTrue(Arrays.equals(Files.readAllBytes(bands), Files.readAllBytes(whole)));
+        Files.delete(whole);
+        Files.delete(bands);
+    }
+
+    @Test
+    void testWriterClosedShort() throws IOException {
+        Path path = Files.createTempFile("heightmap", ".map");
+        IMapArray map = getMap();
+
+        var writer = new HeightmapFile.Writer(path, HeightmapFile.Header.of(map), HeightmapFile.Encoding.DOUBLE);
+        writer.writeRows(new MapArray(I_SIZE, 2));
+        Assert.assertThrows(RuntimeException.class, writer::close);
+        Files.delete(path);
+    }
+
+    @Test
+    void testNotAHeightmap() throws IOException {
+        Path path = Files.createTempFile("heightmap", ".map");
+        Files.writeString(path, "solid print\n".repeat(10));
+
+        Assert.assertThrows(RuntimeException.class, () -> HeightmapFile.read(path));
+        Files.delete(path);
+    }
+
+    private static IMapArray getMap() {
+        return new MapArray(I_SIZE, J_SIZE, IntStream.range(0, I_SIZE * J_SIZE)
+                .mapToDouble(n -> (n % 11 == 0) ? Double.NaN : Math.sin(n) * 1000.0 + n));
+    }
+}
@@ -0,0 +1,57 @@
+package com.codecritical.lib.mapping;
+
+/*
+ * Chisel3D, (C) 2024 Ben Clewett & Code Critical Ltd
+ */
+
+import org.junit.jupiter.api.Test;
+import org.testng.Assert;
+
+import java.util.stream.DoubleStream;
+
+class MapArrayTest {
+
+    @Test
+    void testNullIsNaN() {
+        MapArray map = new MapArray(3, 2);
+        map.set(1, 1, 5.0);
+        map.set(2, 1, -1.0);
+        map.set(0, 0, (Double) null);
+
+        Assert.assertTrue(map.isNull(0, 0));
+        Assert.assertFalse(map.isNull(1, 0));
+        Assert.assertEquals(map.getMax(), 5.0);
+        Assert.assertEquals(map.getMin(), -1.0);
+        Assert.assertEquals(map.getMean(), 0.8, 1e-9);
+
+        // Copies keep the null
+        Assert.assertTrue(new MapArray(map).isNull(0, 0));
+    }
+
+    @Test
+    void testIndexAccess() {
+        MapArray map = new MapArray(4, 3, DoubleStream.iterate(0.0, z -> z + 1.0).limit(12));
+        for (int j = 0; j < map.getJSize(); j++) {
+            for (int i = 0; i < map.getISize(); i++) {
+                int index = map.indexOf(i, j);
+                Assert.assertEquals(map.get(index), map.get(i, j));
+                Assert.assertEquals(map.get(i, j), (double)(i + j * 4));
+            }
+        }
+        map.set(map.indexOf(3, 2), 100.0);
+        Assert.assertEquals(map.get(3, 2), 100.0);
+    }
+
+    @Test
+    void testStreamPoints() {
+        MapArray map = new MapArray(4, 3, DoubleStream.iterate(0.0, z -> z + 1.0).limit(12));
+        var points = map.streamPoints().toList();
+
+        Assert.assertEquals(points.size(), map.size());
+        // Order is i then j
+        Assert.assertEquals(points.get(0).i, 0);
+        Assert.assertEquals(points.get(1).i, 0);
+        Assert.assertEquals(points.get(1).j, 1);
+        points.forEach(p -> Assert.assertEquals(p.z, map.get(p.i, p.j)));
+    }
+}
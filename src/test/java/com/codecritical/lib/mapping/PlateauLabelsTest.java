@@ -0,0 +1,85 @@
+package com.codecritical.lib.mapping;
+
+/*
+ * Chisel3D, (C) 2024 Ben Clewett & Code Critical Ltd
+ */
+
+import org.junit.jupiter.api.Test;
+import org.testng.Assert;
+
+class PlateauLabelsTest {
+
+    private static final double MIN = 0.0, MAX = 1.0;
+
+    @Test
+    void testLabels() {
+        MapArray map = new MapArray(10, 8);
+        map.setAllValues(MIN);
+        // 3x3 plateau
+        fill(map, 0, 3, 0, 3);
+        // Single cell and a line, no 2x2 square
+        map.set(8, 0, MAX);
+        fill(map, 5, 10, 2, 3);
+        // 2x2 plateau
+        fill(map, 6, 8, 5, 7);
+
+        var labels = new PlateauLabels(map);
+
+        Assert.assertEquals(labels.count(), 2);
+        Assert.assertEquals(labels.get(0, 0), 1);
+        Assert.assertEquals(labels.get(2, 2), 1);
+        Assert.assertEquals(labels.size(1), 9);
+        Assert.assertEquals(labels.get(7, 6), 2);
+        Assert.assertEquals(labels.size(2), 4);
+        Assert.assertEquals(labels.get(8, 0), PlateauLabels.NONE);
+        Assert.assertEquals(labels.get(6, 2), PlateauLabels.NONE);
+        Assert.assertEquals(labels.sizeCoefficient(2), 4.0 / 80.0);
+
+        var plateaus = new PlateauCollections(map);
+        Assert.assertEquals(plateaus.getPlateauId(1, 1), 0);
+        Assert.assertEquals(plateaus.getPlateauId(6, 5), 1);
+        Assert.assertEquals(plateaus.getPlateauId(8, 0), PlateauCollections.NONE);
+        Assert.assertFalse(plateaus.isPlateau(-1, 0));
+        Assert.assertFalse(plateaus.isPlateau(0, 8));
+
+        // Index is rebuilt for a clone
+        var sorted = new PlateauCollections(plateaus.stream().sorted((a, b) -> a.size() - b.size()));
+        Assert.assertEquals(sorted.getPlateauId(1, 1), 1);
+        Assert.assertEquals(sorted.getPlateauId(6, 5), 0);
+    }
+
+    @Test
+    void testSharedCornerJoins() {
+        MapArray map = new MapArray(5, 5);
+        map.setAllValues(MIN);
+        fill(map, 0, 2, 0, 2);
+        fill(map, 1, 3, 1, 3);
+
+        var labels = new PlateauLabels(map);
+
+        Assert.assertEquals(labels.count(), 1);
+        Assert.assertEquals(labels.size(1), 7);
+    }
+
+    @Test
+    void testLargeFlatMap() {
+        MapArray map = new MapArray(1000, 1000);
+        map.setAllValues(MAX);
+
+        var labels = new PlateauLabels(map);
+        Assert.assertEquals(labels.count(), 1);
+        Assert.assertEquals(labels.size(1), 1000 * 1000);
+
+        var plateaus = new PlateauCollections(map, 0.5);
+        Assert.assertEquals(plateaus.size(), 1);
+        Assert.assertTrue(plateaus.isPlateau(999, 999));
+    }
+
+    private static void fill(MapArray map, int i0, int i1, int j0, int j1) {
+        for (int i = i0; i < i1; i++) {
+            for (int j = j0; j < j1; j++) {
+                map.set(i, j, MAX);
+            }
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package com.codecritical.lib.mapping;
+
+/*
+ * Chisel3D, (C) 2024 Ben Clewett & Code Critical Ltd
+ */
+
+import org.junit.jupiter.api.Test;
+import org.testng.Assert;
+
+import java.util.Random;
+import java.util.TreeSet;
+
+class PlateauTest {
+
+    @Test
+    void testCellsInAnyOrder() {
+        var plateau = new Plateau(40, 30);
+        var expected = new TreeSet<Integer>();
+        Random random = new Random(1);
+
+        for (int n = 0; n < 500; n++) {
+            int i = random.nextInt(40);
+            int j = random.nextInt(30);
+            Assert.assertEquals(plateau.add(i, j), expected.add(i + j * 40));
+        }
+
+        Assert.assertEquals(plateau.size(), expected.size());
+        Assert.assertEquals(plateau.indexStream().boxed().toList(), expected.stream().toList());
+        for (int j = -1; j <= 30; j++) {
+            for (int i = -1; i <= 40; i++) {
+                boolean inRange = i >= 0 && i < 40 && j >= 0 && j < 30;
+                Assert.assertEquals(plateau.isSet(i, j), inRange && expected.contains(i + j * 40), i + "," + j);
+            }
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package com.codecritical.lib.mapping;
+
+/*
+ * Chisel3D, (C) 2024 Ben Clewett & Code Critical Ltd
+ */
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.testng.Assert;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+class SubdivisionTest {
+
+    @ParameterizedTest
+    @CsvSource({"1, 200, 150", "4, 200, 150", "4, 2, 2", "3, 97, 5"})
+    void testRingsMatchEveryPixel(int threadCount, int iSize, int jSize) {
+        // Rings about a point, every level joined and without holes.
+        Subdivision.Pixel rings = (i, j) -> Math.min(3, (int)(Math.hypot(i - iSize / 3.0, j - jSize / 2.0) / 30));
+
+        AtomicInteger calls = new AtomicInteger();
+        MapArray map = new MapArray(iSize, jSize);
+        Subdivision.fill(threadCount, map, (i, j) -> {
+            calls.incrementAndGet();
+            return rings.get(i, j);
+        });
+
+        for (int j = 0; j < jSize; j++) {
+            for (int i = 0; i < iSize; i++) {
+                Assert.assertEquals(map.get(i, j), rings.get(i, j), "At i=" + i + " j=" + j);
+            }
+        }
+        Assert.assertTrue(calls.get() <= iSize * jSize);
+        if (iSize * jSize > 10000) {
+            Assert.assertTrue(calls.get() < iSize * jSize / 2, "Calls: " + calls.get());
+        }
+    }
+}
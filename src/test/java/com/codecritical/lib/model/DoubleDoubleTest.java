@@ -0,0 +1,63 @@
+package com.codecritical.lib.model;
+
+/*
+ * Chisel3D, (C) 2024 Ben Clewett & Code Critical Ltd
+ */
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.testng.Assert;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.util.Random;
+
+class DoubleDoubleTest {
+
+    static final MathContext MC = new MathContext(60);
+
+    @ParameterizedTest
+    @CsvSource({"1, 1", "2, 1e-10", "3, 1e10"})
+    void testArithmetic(int seed, double scale) {
+        Random random = new Random(seed);
+        for (int n = 0; n < 100; n++) {
+            BigDecimal a = randomDecimal(random, scale);
+            BigDecimal b = randomDecimal(random, scale);
+            DoubleDouble x = new DoubleDouble(a);
+            DoubleDouble y = new DoubleDouble(b);
+
+            assertClose(new DoubleDouble(x).add(y), exact(x).add(exact(y), MC));
+            assertClose(new DoubleDouble(x).subtract(y), exact(x).subtract(exact(y), MC));
+            assertClose(new DoubleDouble(x).multiply(y), exact(x).multiply(exact(y), MC));
+            assertClose(new DoubleDouble(x).square(), exact(x).multiply(exact(x), MC));
+            assertClose(new DoubleDouble(x).multiply(3.0), exact(x).multiply(BigDecimal.valueOf(3), MC));
+            assertClose(new DoubleDouble(x).add(0.5), exact(x).add(new BigDecimal("0.5"), MC));
+        }
+    }
+
+    @ParameterizedTest
+    @CsvSource({"0.1", "-1.999985881222000000012345", "0.3333333333333333333333333333"})
+    void testFromBigDecimal(String value) {
+        BigDecimal d = new BigDecimal(value);
+        DoubleDouble x = new DoubleDouble(d);
+        Assert.assertEquals(x.doubleValue(), d.doubleValue());
+        Assert.assertTrue(x.toBigDecimal().subtract(d).abs().doubleValue() <= Math.abs(d.doubleValue()) * 1e-31);
+    }
+
+    private static BigDecimal randomDecimal(Random random, double scale) {
+        return new BigDecimal(random.nextDouble() * 2 - 1)
+                .add(new BigDecimal(random.nextDouble() * 1e-17))
+                .multiply(new BigDecimal(scale), MC);
+    }
+
+    private static BigDecimal exact(DoubleDouble x) {
+        return x.toBigDecimal();
+    }
+
+    /** Rounded to about 104 bits of the larger of the result and its parts. */
+    private static void assertClose(DoubleDouble actual, BigDecimal expected) {
+        double error = actual.toBigDecimal().subtract(expected).abs().doubleValue();
+        double size = Math.max(Math.abs(expected.doubleValue()), Double.MIN_NORMAL);
+        Assert.assertTrue(error <= size * 1e-30, "Error " + error + " for " + expected);
+    }
+}
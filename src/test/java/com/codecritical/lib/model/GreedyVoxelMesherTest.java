@@ -0,0 +1,203 @@
+package com.codecritical.lib.model;
+
+/*
+ * Chisel3D, (C) 2024 Ben Clewett & Code Critical Ltd
+ */
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.testng.Assert;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+class GreedyVoxelMesherTest {
+
+    @Test
+    void testBoxIsTwelveTriangles() {
+        var voxels = new TestVoxels(5, 4, 3);
+        for (int i = 0; i < 5; i++) {
+            for (int j = 0; j < 4; j++) {
+                for (int k = 0; k < 3; k++) {
+                    voxels.set(i, j, k);
+                }
+            }
+        }
+
+        var mesh = new GreedyVoxelMesher(0, 0, 0, 1, 1, 1, -10).mesh(voxels);
+
+        Assert.assertEquals(mesh.getTriangleCount(), 12);
+        Assert.assertEquals(getVolume(mesh), 60.0, 1e-6);
+    }
+
+    @ParameterizedTest
+    @CsvSource({"1, 0.5", "2, 0.3", "3, 0.8"})
+    void testVolumeAndClosed(int seed, double fill) {
+        var voxels = new TestVoxels(8, 7, 6);
+        Random random = new Random(seed);
+        int count = 0;
+        for (int i = 0; i < 8; i++) {
+            for (int j = 0; j < 7; j++) {
+                for (int k = 0; k < 6; k++) {
+                    if (random.nextDouble() < fill) {
+                        voxels.set(i, j, k);
+                        count++;
+                    }
+                }
+            }
+        }
+
+        var mesh = new GreedyVoxelMesher(1, 2, 3, 0.5, 0.25, 2.0, -10).mesh(voxels);
+
+        // Outward faces, so the volume is that of the cells.
+        Assert.assertEquals(getVolume(mesh), count * 0.5 * 0.25 * 2.0, 1e-6);
+
+        // Closed, so the area facing each way along each axis cancels.
+        double[] area = new double[3];
+        for (int t = 0; t < mesh.getTriangleCount(); t++) {
+            double[] n = getCross(mesh, t);
+            for (int axis = 0; axis < 3; axis++) {
+                area[axis] += n[axis];
+            }
+        }
+        for (double a : area) {
+            Assert.assertEquals(a, 0.0, 1e-6);
+        }
+    }
+
+    /** Shapes with no cells meeting only at an edge, so every edge is used by exactly two triangles. */
+    @ParameterizedTest
+    @CsvSource({"PYRAMID", "NOTCHED", "STAIRS"})
+    void testEdgesSharedByTwoTriangles(String shape) {
+        var voxels = new TestVoxels(9, 9, 5);
+        for (int i = 0; i < 9; i++) {
+            for (int j = 0; j < 9; j++) {
+                for (int k = 0; k < 5; k++) {
+                    boolean isSet = switch (shape) {
+                        case "PYRAMID" -> k <= Math.min(Math.min(i, j), Math.min(8 - i, 8 - j));
+                        case "NOTCHED" -> !(i >= 3 && j >= 4 && k >= 2) && !(i == 4 && k == 0);
+                        case "STAIRS" -> k <= i / 2 && j >= k;
+                        default -> throw new RuntimeException("Unhandled Option: " + shape);
+                    };
+                    if (isSet) {
+                        voxels.set(i, j, k);
+                    }
+                }
+            }
+        }
+
+        var mesh = new GreedyVoxelMesher(0, 0, 0, 1, 1, 1, -10).mesh(voxels);
+
+        var edges = getDirectedEdges(mesh);
+        for (var edge : edges.entrySet()) {
+            long reverse = (edge.getKey() >>> 32) | (edge.getKey() << 32);
+            Assert.assertEquals((int) edge.getValue(), 1, shape + " edge used twice the same way");
+            Assert.assertEquals(edges.get(reverse), Integer.valueOf(1), shape + " edge with no other triangle");
+        }
+    }
+
+    /** Cells meeting at an edge use it four times, so each edge is used as often one way as the other. */
+    @ParameterizedTest
+    @CsvSource({"1, 0.5", "2, 0.3", "3, 0.8"})
+    void testEdgesPaired(int seed, double fill) {
+        var voxels = new TestVoxels(8, 7, 6);
+        Random random = new Random(seed);
+        for (int i = 0; i < 8; i++) {
+            for (int j = 0; j < 7; j++) {
+                for (int k = 0; k < 6; k++) {
+                    if (random.nextDouble() < fill) {
+                        voxels.set(i, j, k);
+                    }
+                }
+            }
+        }
+
+        var mesh = new GreedyVoxelMesher(1, 2, 3, 0.5, 0.25, 2.0, -10).mesh(voxels);
+
+        var edges = getDirectedEdges(mesh);
+        for (var edge : edges.entrySet()) {
+            long reverse = (edge.getKey() >>> 32) | (edge.getKey() << 32);
+            Assert.assertEquals(edges.get(reverse), edge.getValue());
+        }
+    }
+
+    /** Times each edge from vertex a to b is used, keyed by a << 32 | b. */
+    private static Map<Long, Integer> getDirectedEdges(IndexedMesh mesh) {
+        Map<Long, Integer> edges = new HashMap<>();
+        for (int t = 0; t < mesh.getTriangleCount(); t++) {
+            for (int corner = 0; corner < 3; corner++) {
+                long a = mesh.getIndex(t, corner);
+                long b = mesh.getIndex(t, (corner + 1) % 3);
+                edges.merge(a << 32 | b, 1, Integer::sum);
+            }
+        }
+        return edges;
+    }
+
+    private static double[] getCross(IndexedMesh mesh, int t) {
+        double[][] v = getTriangle(mesh, t);
+        double ax = v[1][0] - v[0][0], ay = v[1][1] - v[0][1], az = v[1][2] - v[0][2];
+        double bx = v[2][0] - v[0][0], by = v[2][1] - v[0][1], bz = v[2][2] - v[0][2];
+        return new double[] {ay * bz - az * by, az * bx - ax * bz, ax * by - ay * bx};
+    }
+
+    private static double getVolume(IndexedMesh mesh) {
+        double volume = 0;
+        for (int t = 0; t < mesh.getTriangleCount(); t++) {
+            double[][] v = getTriangle(mesh, t);
+            volume += (v[0][0] * (v[1][1] * v[2][2] - v[1][2] * v[2][1])
+                    - v[0][1] * (v[1][0] * v[2][2] - v[1][2] * v[2][0])
+                    + v[0][2] * (v[1][0] * v[2][1] - v[1][1] * v[2][0])) / 6.0;
+        }
+        return volume;
+    }
+
+    private static double[][] getTriangle(IndexedMesh mesh, int t) {
+        double[][] v = new double[3][3];
+        for (int corner = 0; corner < 3; corner++) {
+            for (int axis = 0; axis < 3; axis++) {
+                v[corner][axis] = mesh.getVertex(mesh.getIndex(t, corner), axis);
+            }
+        }
+        return v;
+    }
+
+    private static class TestVoxels implements IVoxels {
+        private final int iSize, jSize, kSize;
+        private final boolean[] cells;
+
+        TestVoxels(int iSize, int jSize, int kSize) {
+            this.iSize = iSize;
+            this.jSize = jSize;
+            this.kSize = kSize;
+            this.cells = new boolean[iSize * jSize * kSize];
+        }
+
+        void set(int i, int j, int k) {
+            cells[i + (j + k * jSize) * iSize] = true;
+        }
+
+        @Override
+        public int getISize() {
+            return iSize;
+        }
+
+        @Override
+        public int getJSize() {
+            return jSize;
+        }
+
+        @Override
+        public int getKSize() {
+            return kSize;
+        }
+
+        @Override
+        public boolean isSet(int i, int j, int k) {
+            return i >= 0 && i < iSize && j >= 0 && j < jSize && k >= 0 && k < kSize
+                    && cells[i + (j + k * jSize) * iSize];
+        }
+    }
+}
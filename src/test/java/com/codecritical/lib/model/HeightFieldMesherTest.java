@@ -0,0 +1,119 @@
+package com.codecritical.lib.model;
+
+/*
+ * Chisel3D, (C) 2024 Ben Clewett & Code Critical Ltd
+ */
+
+import com.codecritical.lib.config.ConfigReader;
+import com.codecritical.lib.mapping.MapArray;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.testng.Assert;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+class HeightFieldMesherTest {
+
+    @ParameterizedTest
+    @CsvSource({
+            "2, 2, ''",
+            "7, 5, ''",
+            "20, 30, ''",
+            "20, 30, '0,0,-100'"
+    })
+    void testWatertight(int iSize, int jSize, String projectCentreSphere) {
+        MapArray map = new MapArray(iSize, jSize);
+        Random random = new Random(iSize);
+        // Include cells at zero, where the surface sits on the base.
+        map.streamPoints().forEach(p -> map.set(p.i, p.j, (random.nextInt(4) == 0) ? 0.0 : random.nextDouble()));
+
+        var mesh = new HeightFieldMesher(getConfig(projectCentreSphere)).mesh(map);
+
+        // Each edge is used once in each direction.
+        Map<Long, Integer> edges = new HashMap<>();
+        for (int t = 0; t < mesh.getTriangleCount(); t++) {
+            for (int corner = 0; corner < 3; corner++) {
+                long a = mesh.getIndex(t, corner);
+                long b = mesh.getIndex(t, (corner + 1) % 3);
+                edges.merge(a << 32 | b, 1, Integer::sum);
+            }
+        }
+        edges.forEach((edge, count) -> {
+            Assert.assertEquals((int) count, 1);
+            Assert.assertEquals(edges.get((edge & 0xffffffffL) << 32 | edge >>> 32), Integer.valueOf(1));
+        });
+
+        // Faces outwards, so the volume is positive, and at least the base.
+        Assert.assertTrue(getVolume(mesh) > 10.0 * 10.0 * 2.0 * 0.99);
+    }
+
+    @ParameterizedTest
+    @CsvSource({"0.0", "0.5", "1.0"})
+    void testFlatVolume(double z) {
+        MapArray map = new MapArray(10, 10);
+        map.setAllValues(z);
+
+        var mesh = new HeightFieldMesher(getConfig("")).mesh(map);
+
+        Assert.assertEquals(getVolume(mesh), 10.0 * 10.0 * (2.0 + z * 5.0), 1e-3);
+    }
+
+    @ParameterizedTest
+    @CsvSource({
+            "2, 2, ''",
+            "7, 5, ''",
+            "20, 30, '0,0,-100'"
+    })
+    void testWriteMatchesMesh(int iSize, int jSize, String projectCentreSphere) throws IOException {
+        MapArray map = new MapArray(iSize, jSize);
+        Random random = new Random(iSize);
+        map.streamPoints().forEach(p -> map.set(p.i, p.j, (random.nextInt(4) == 0) ? 0.0 : random.nextDouble()));
+        var mesher = new HeightFieldMesher(getConfig(projectCentreSphere));
+
+        var mesh = mesher.mesh(map);
+        List<float[]> written = new ArrayList<>();
+        mesher.write((x0, y0, z0, x1, y1, z1, x2, y2, z2) -> written.add(new float[] {x0, y0, z0, x1, y1, z1, x2, y2, z2}),
+                iSize, jSize, j -> IntStream.range(0, iSize).mapToDouble(i -> map.get(i, j)).toArray());
+
+        Assert.assertEquals(written.size(), mesh.getTriangleCount());
+        for (int t = 0; t < mesh.getTriangleCount(); t++) {
+            for (int corner = 0; corner < 3; corner++) {
+                for (int axis = 0; axis < 3; axis++) {
+                    Assert.assertEquals(written.get(t)[corner * 3 + axis], mesh.getVertex(mesh.getIndex(t, corner), axis),
+                            0.0, "triangle " + t);
+                }
+            }
+        }
+    }
+
+    private static double getVolume(IndexedMesh mesh) {
+        double volume = 0;
+        for (int t = 0; t < mesh.getTriangleCount(); t++) {
+            double[][] v = new double[3][3];
+            for (int corner = 0; corner < 3; corner++) {
+                for (int axis = 0; axis < 3; axis++) {
+                    v[corner][axis] = mesh.getVertex(mesh.getIndex(t, corner), axis);
+                }
+            }
+            volume += (v[0][0] * (v[1][1] * v[2][2] - v[1][2] * v[2][1])
+                    - v[0][1] * (v[1][0] * v[2][2] - v[1][2] * v[2][0])
+                    + v[0][2] * (v[1][0] * v[2][1] - v[1][1] * v[2][0])) / 6.0;
+        }
+        return volume;
+    }
+
+    private static ConfigReader getConfig(String projectCentreSphere) {
+        return new ConfigReader()
+                .add("Config.StlPrint.X_SIZE", 10)
+                .add("Config.StlPrint.Y_SIZE", 10)
+                .add("Config.StlPrint.Z_SIZE", 5)
+                .add("Config.StlPrint.BASE_THICKNESS", 2)
+                .add("Config.Fractal.Processing.PROJECT_CENTRE_SPHERE", projectCentreSphere);
+    }
+}
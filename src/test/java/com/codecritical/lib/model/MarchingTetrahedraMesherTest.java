@@ -0,0 +1,97 @@
+package com.codecritical.lib.model;
+
+/*
+ * Chisel3D, (C) 2024 Ben Clewett & Code Critical Ltd
+ */
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.testng.Assert;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+class MarchingTetrahedraMesherTest {
+
+    @ParameterizedTest
+    @CsvSource({"20, 0.02", "40, 0.005"})
+    void testSphereVolume(int samples, double tolerance) {
+        // Radius 1 sphere in a box of side 3, density 1 at the centre and 0.5 on the sphere.
+        double step = 3.0 / (samples - 1);
+        var field = new DensityField(samples, samples, samples);
+        for (int i = 0; i < samples; i++) {
+            for (int j = 0; j < samples; j++) {
+                for (int k = 0; k < samples; k++) {
+                    double x = i * step - 1.5, y = j * step - 1.5, z = k * step - 1.5;
+                    field.set(i, j, k, 1.0 - Math.sqrt(x * x + y * y + z * z) / 2.0);
+                }
+            }
+        }
+
+        var mesh = new MarchingTetrahedraMesher(-1.5, -1.5, -1.5, step, step, step, -10, 0.5).mesh(field);
+
+        double expected = 4.0 / 3.0 * Math.PI;
+        Assert.assertEquals(getVolume(mesh), expected, expected * tolerance);
+        assertClosed(mesh);
+    }
+
+    @ParameterizedTest
+    @CsvSource({"1, 0.3", "2, 0.6", "3, 0.9"})
+    void testRandomFieldClosed(int seed, double fill) {
+        var field = new DensityField(7, 6, 5);
+        Random random = new Random(seed);
+        for (int i = 0; i < 7; i++) {
+            for (int j = 0; j < 6; j++) {
+                for (int k = 0; k < 5; k++) {
+                    field.set(i, j, k, (random.nextDouble() < fill) ? random.nextDouble() * 0.5 + 0.5 : 0.0);
+                }
+            }
+        }
+
+        var mesh = new MarchingTetrahedraMesher(1, 2, 3, 0.5, 0.25, 2.0, -10, 0.5).mesh(field);
+
+        // Surfaces round each part face out, so the volume is positive.
+        Assert.assertTrue(getVolume(mesh) > 0.0);
+        assertClosed(mesh);
+    }
+
+    @Test
+    void testEmptyField() {
+        var mesh = new MarchingTetrahedraMesher(0, 0, 0, 1, 1, 1, -10, 0.5).mesh(new DensityField(3, 3, 3));
+        Assert.assertEquals(mesh.getTriangleCount(), 0);
+    }
+
+    /** Every edge is used once in each direction. */
+    private static void assertClosed(IndexedMesh mesh) {
+        Map<Long, Integer> edges = new HashMap<>();
+        for (int t = 0; t < mesh.getTriangleCount(); t++) {
+            for (int corner = 0; corner < 3; corner++) {
+                long a = mesh.getIndex(t, corner);
+                long b = mesh.getIndex(t, (corner + 1) % 3);
+                edges.merge((a << 32) | b, 1, Integer::sum);
+                edges.merge((b << 32) | a, -1, Integer::sum);
+            }
+        }
+        for (var count : edges.values()) {
+            Assert.assertEquals((int) count, 0);
+        }
+    }
+
+    private static double getVolume(IndexedMesh mesh) {
+        double volume = 0;
+        for (int t = 0; t < mesh.getTriangleCount(); t++) {
+            double[][] v = new double[3][3];
+            for (int corner = 0; corner < 3; corner++) {
+                for (int axis = 0; axis < 3; axis++) {
+                    v[corner][axis] = mesh.getVertex(mesh.getIndex(t, corner), axis);
+                }
+            }
+            volume += (v[0][0] * (v[1][1] * v[2][2] - v[1][2] * v[2][1])
+                    - v[0][1] * (v[1][0] * v[2][2] - v[1][2] * v[2][0])
+                    + v[0][2] * (v[1][0] * v[2][1] - v[1][1] * v[2][0])) / 6.0;
+        }
+        return volume;
+    }
+}
@@ -0,0 +1,111 @@
+package com.codecritical.lib.model;
+
+/*
+ * Chisel3D, (C) 2024 Ben Clewett & Code Critical Ltd
+ */
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.testng.Assert;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.util.HashSet;
+import java.util.Set;
+
+class PerturbationTest {
+
+    @ParameterizedTest
+    @CsvSource({
+            "-0.743643887037151, 0.131825904205330, 1e-13, 8000",
+            "-1.999985881222, 0, 1e-13, 3000",
+            "-1.9999858812220000001, 0, 1e-20, 3000",
+            "-1.7497219817, 0.0000000000, 1e-11, 1000"
+    })
+    void testDeepZoomMatchesExact(String re, String im, double width, int maxIterations) {
+        BigDecimal cRe = new BigDecimal(re);
+        BigDecimal cIm = new BigDecimal(im);
+        int size = 9;
+        double pixel = width / size;
+        var perturbation = new Perturbation(cRe, cIm, pixel, maxIterations);
+        var series = new Perturbation(cRe, cIm, pixel, maxIterations);
+        double edge = (size / 2) * pixel;
+        series.approximateSeries(Math.hypot(edge, edge), new double[][] {
+                {-edge, -edge}, {-edge, edge}, {edge, -edge}, {edge, edge}, {0, edge}, {edge, 0}});
+
+        MathContext mc = new MathContext(50);
+        Set<Integer> counts = new HashSet<>();
+        int same = 0, seriesSame = 0;
+        for (int i = -size / 2; i <= size / 2; i++) {
+            for (int j = -size / 2; j <= size / 2; j++) {
+                BigDecimal pRe = cRe.add(new BigDecimal(i * pixel), mc);
+                BigDecimal pIm = cIm.add(new BigDecimal(j * pixel), mc);
+                int expected = iterateExact(pRe, pIm, maxIterations, mc);
+                counts.add(expected);
+                if (perturbation.iterate(i * pixel, j * pixel) == expected) {
+                    same++;
+                }
+                if (series.iterate(i * pixel, j * pixel) == expected) {
+                    seriesSame++;
+                }
+            }
+        }
+
+        // Chaotic points may differ by the last bit, but almost all agree.
+        Assert.assertTrue(counts.size() > 1, "Flat window");
+        Assert.assertTrue(same >= size * size - 2, "Same: " + same);
+
+        // Deep windows start many iterations in, with the same result.
+        Assert.assertTrue(series.getSkip() > 0);
+        Assert.assertTrue(seriesSame >= size * size - 2, "Same with series: " + seriesSame);
+    }
+
+    @ParameterizedTest
+    @CsvSource({"-0.5, 0.0, 200", "0.3, 0.5, 300"})
+    void testShallowMatchesDouble(double re, double im, int maxIterations) {
+        // The whole set, where doubles are exact enough.
+        int size = 61;
+        double pixel = 3.0 / size;
+        var perturbation = new Perturbation(new BigDecimal(re), new BigDecimal(im), pixel, maxIterations);
+
+        int same = 0;
+        for (int i = -size / 2; i <= size / 2; i++) {
+            for (int j = -size / 2; j <= size / 2; j++) {
+                double rC = re + i * pixel, iC = im + j * pixel;
+                if (perturbation.iterate(i * pixel, j * pixel) == iterateDouble(rC, iC, maxIterations)) {
+                    same++;
+                }
+            }
+        }
+
+        Assert.assertTrue(same >= size * size * 0.99, "Same: " + same);
+    }
+
+    private static int iterateExact(BigDecimal cRe, BigDecimal cIm, int maxIterations, MathContext mc) {
+        BigDecimal re = BigDecimal.ZERO, im = BigDecimal.ZERO;
+        BigDecimal four = BigDecimal.valueOf(4);
+        int n = 0;
+        while (n < maxIterations) {
+            BigDecimal reTmp = re.multiply(re, mc).subtract(im.multiply(im, mc), mc).add(cRe, mc);
+            im = re.multiply(im, mc).multiply(BigDecimal.valueOf(2), mc).add(cIm, mc);
+            re = reTmp;
+            n++;
+            if (re.multiply(re, mc).add(im.multiply(im, mc), mc).compareTo(four) > 0) {
+                break;
+            }
+        }
+        return n;
+    }
+
+    private static int iterateDouble(double rC, double iC, int maxIterations) {
+        int iterations = 0;
+        double rZ = 0, iZ = 0, iZtmp;
+        while (rZ * rZ + iZ * iZ <= 4 && iterations < maxIterations) {
+            iZtmp = rZ * rZ - iZ * iZ + rC;
+            iZ = 2 * rZ * iZ + iC;
+            rZ = iZtmp;
+            iterations++;
+        }
+        return iterations;
+    }
+}
@@ -0,0 +1,89 @@
+package com.codecritical.lib.model;
+
+/*
+ * Chisel3D, (C) 2024 Ben Clewett & Code Critical Ltd
+ */
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.testng.Assert;
+
+import java.util.Random;
+
+class VoxelGridTest {
+
+    @Test
+    void testSetAcrossWords() {
+        var grid = new VoxelGrid(130, 2, 2);
+        grid.set(0, 0, 0);
+        grid.set(63, 1, 0);
+        grid.set(64, 1, 0);
+        grid.set(129, 1, 1);
+
+        Assert.assertTrue(grid.isSet(0, 0, 0));
+        Assert.assertTrue(grid.isSet(63, 1, 0));
+        Assert.assertTrue(grid.isSet(64, 1, 0));
+        Assert.assertTrue(grid.isSet(129, 1, 1));
+        Assert.assertFalse(grid.isSet(129, 1, 0));
+        Assert.assertFalse(grid.isSet(130, 1, 1));
+        Assert.assertFalse(grid.isSet(-1, 0, 0));
+        Assert.assertEquals(grid.count(), 4);
+    }
+
+    @ParameterizedTest
+    @CsvSource({"1, 10, 0.1", "2, 64, 0.2", "3, 130, 0.05", "4, 70, 0.5"})
+    void testWithoutUnjoined(int seed, int iSize, double fill) {
+        var grid = randomGrid(seed, iSize, 5, 4, fill);
+
+        var joined = grid.withoutUnjoined();
+
+        for (int i = 0; i < iSize; i++) {
+            for (int j = 0; j < 5; j++) {
+                for (int k = 0; k < 4; k++) {
+                    boolean expected = grid.isSet(i, j, k) && (
+                            grid.isSet(i - 1, j, k) || grid.isSet(i + 1, j, k) ||
+                            grid.isSet(i, j - 1, k) || grid.isSet(i, j + 1, k) ||
+                            grid.isSet(i, j, k - 1) || grid.isSet(i, j, k + 1));
+                    Assert.assertEquals(joined.isSet(i, j, k), expected, "at " + i + "," + j + "," + k);
+                }
+            }
+        }
+    }
+
+    @ParameterizedTest
+    @CsvSource({"1, 10, 0.5", "2, 64, 0.8", "3, 130, 0.9", "4, 200, 1.0"})
+    void testRuns(int seed, int iSize, double fill) {
+        var grid = randomGrid(seed, iSize, 3, 3, fill);
+        var copy = new VoxelGrid(iSize, 3, 3);
+        long[] total = new long[1];
+
+        grid.forEachRun((i, j, k, length) -> {
+            Assert.assertFalse(grid.isSet(i - 1, j, k));
+            Assert.assertFalse(grid.isSet(i + length, j, k));
+            for (int n = i; n < i + length; n++) {
+                Assert.assertTrue(grid.isSet(n, j, k));
+                copy.set(n, j, k);
+            }
+            total[0] += length;
+        });
+
+        Assert.assertEquals(total[0], grid.count());
+        Assert.assertEquals(copy.count(), grid.count());
+    }
+
+    private static VoxelGrid randomGrid(int seed, int iSize, int jSize, int kSize, double fill) {
+        var grid = new VoxelGrid(iSize, jSize, kSize);
+        Random random = new Random(seed);
+        for (int i = 0; i < iSize; i++) {
+            for (int j = 0; j < jSize; j++) {
+                for (int k = 0; k < kSize; k++) {
+                    if (random.nextDouble() < fill) {
+                        grid.set(i, j, k);
+                    }
+                }
+            }
+        }
+        return grid;
+    }
+}
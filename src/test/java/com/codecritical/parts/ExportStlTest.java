@@ -0,0 +1,42 @@
+package com.codecritical.parts;
+
+/*
+ * Chisel3D, (C) 2024 Ben Clewett & Code Critical Ltd
+ */
+
+import org.junit.jupiter.api.Test;
+import org.testng.Assert;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+class ExportStlTest {
+
+    @Test
+    void testFailedPrintLeavesEarlierOne() throws IOException {
+        String fileName = "export-stl-test-" + ProcessHandle.current().pid() + ".stl";
+        Path print = ExportStl.getPath(fileName);
+        Files.createDirectories(print.getParent());
+
+        Assert.assertTrue(ExportStl.export(fileName, stl -> stl.write(0, 0, 0, 1, 0, 0, 0, 1, 0), List.of()));
+        byte[] earlier = Files.readAllBytes(print);
+
+        Assert.assertFalse(ExportStl.export(fileName, stl -> {
+            stl.write(0, 0, 0, 2, 0, 0, 0, 2, 0);
+            throw new IOException("Disk full");
+        }, List.of()));
+        Assert.assertThrows(IllegalStateException.class, () -> ExportStl.export(fileName, stl -> {
+            stl.write(0, 0, 0, 2, 0, 0, 0, 2, 0);
+            throw new IllegalStateException("Mesher failed");
+        }, List.of()));
+
+        Assert.assertTrue(Arrays.equals(Files.readAllBytes(print), earlier));
+        try (var files = Files.list(print.getParent())) {
+            Assert.assertEquals(files.filter(f -> f.getFileName().toString().startsWith(fileName)).count(), 1L);
+        }
+        Files.delete(print);
+    }
+}
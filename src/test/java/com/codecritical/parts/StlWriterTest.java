@@ -0,0 +1,44 @@
+package com.codecritical.parts;
+
+/*
+ * Chisel3D, (C) 2024 Ben Clewett & Code Critical Ltd
+ */
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.testng.Assert;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+class StlWriterTest {
+
+    @ParameterizedTest
+    @CsvSource({"0", "1", "20000"})
+    void testWrite(int count) throws IOException {
+        Path path = Files.createTempFile("stl-writer", ".stl");
+        try {
+            try (StlWriter stl = new StlWriter(path)) {
+                for (int n = 0; n < count; n++) {
+                    stl.write(n, 0, 0, n + 1, 0, 0, n, 1, 0);
+                }
+            }
+
+            ByteBuffer bytes = ByteBuffer.wrap(Files.readAllBytes(path)).order(ByteOrder.LITTLE_ENDIAN);
+            Assert.assertEquals(bytes.capacity(), 84 + 50 * count);
+            Assert.assertEquals(bytes.getInt(80), count);
+            if (count > 0) {
+                int last = 84 + 50 * (count - 1);
+                // Normal is +z
+                Assert.assertEquals(bytes.getFloat(last + 8), 1.0f);
+                Assert.assertEquals(bytes.getFloat(last + 12), (float) (count - 1));
+                Assert.assertEquals(bytes.getFloat(last + 24), (float) count);
+            }
+        } finally {
+            Files.delete(path);
+        }
+    }
+}